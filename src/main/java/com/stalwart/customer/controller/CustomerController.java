@@ -1,14 +1,30 @@
 package com.stalwart.customer.controller;
 import com.stalwart.customer.jwt.JWTUtil;
 import com.stalwart.customer.model.Customer;
+import com.stalwart.customer.model.CustomerBatchRequest;
+import com.stalwart.customer.model.CustomerBatchResult;
 import com.stalwart.customer.model.CustomerDTO;
+import com.stalwart.customer.model.CustomerImportResult;
+import com.stalwart.customer.model.CustomerLookup;
+import com.stalwart.customer.model.CustomerPage;
 import com.stalwart.customer.model.CustomerRegistrationRequest;
+import com.stalwart.customer.model.CustomerUpdateRequest;
+import com.stalwart.customer.model.DataFormat;
+import com.stalwart.customer.service.CustomerBatchService;
+import com.stalwart.customer.service.CustomerExportService;
+import com.stalwart.customer.service.CustomerImportService;
 import com.stalwart.customer.service.CustomerService;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @RestController
@@ -17,10 +33,20 @@ public class CustomerController {
 
     private final CustomerService customerService;
     private final JWTUtil jwtUtil;
+    private final CustomerExportService customerExportService;
+    private final CustomerImportService customerImportService;
+    private final CustomerBatchService customerBatchService;
 
-    public CustomerController(CustomerService customerService, JWTUtil jwtUtil) {
+    public CustomerController(CustomerService customerService,
+                              JWTUtil jwtUtil,
+                              CustomerExportService customerExportService,
+                              CustomerImportService customerImportService,
+                              CustomerBatchService customerBatchService) {
         this.customerService = customerService;
         this.jwtUtil = jwtUtil;
+        this.customerExportService = customerExportService;
+        this.customerImportService = customerImportService;
+        this.customerBatchService = customerBatchService;
     }
 
     @GetMapping("/all")
@@ -28,10 +54,47 @@ public class CustomerController {
         return customerService.getAllCustomers();
     }
 
+    @GetMapping
+    public CustomerPage getCustomers(
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "" + CustomerService.DEFAULT_PAGE_SIZE) int limit){
+        return customerService.getCustomersPage(after, limit);
+    }
+
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportCustomers(
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(defaultValue = "false") boolean gzip){
+
+        DataFormat dataFormat = DataFormat.from(format);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(dataFormat.getContentType()));
+        headers.setContentDisposition(ContentDisposition.attachment()
+                .filename("customers." + dataFormat.getFileExtension())
+                .build());
+        if(gzip)
+            headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+
+        StreamingResponseBody body = outputStream ->
+                customerExportService.export(dataFormat, gzip, outputStream);
+        return ResponseEntity.ok()
+                .headers(headers)
+                .body(body);
+    }
+
+    @PostMapping(value = "/import", consumes = {"text/csv", "application/x-ndjson"})
+    public CustomerImportResult importCustomers(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+            @RequestHeader(value = HttpHeaders.CONTENT_ENCODING, required = false) String contentEncoding,
+            InputStream body) throws IOException {
+        boolean gzip = "gzip".equalsIgnoreCase(contentEncoding);
+        return customerImportService.importCustomers(DataFormat.fromContentType(contentType), gzip, body);
+    }
+
     @PostMapping
     public ResponseEntity<?> addCustomer(@RequestBody CustomerRegistrationRequest customer){
-        customerService.addCustomer(customer);
-        String jwtToken = jwtUtil.issueToken(customer.getEmail(),"ROLE_USER");
+        int id = customerService.addCustomer(customer);
+        String jwtToken = jwtUtil.issueToken(customer.getEmail(), id, List.of("ROLE_USER"));
         return ResponseEntity.ok()
                 .header(HttpHeaders.AUTHORIZATION,jwtToken)
                 .build();
@@ -42,6 +105,26 @@ public class CustomerController {
         return customerService.getCustomerById(id);
     }
 
+    @PostMapping("/batch")
+    public CustomerBatchResult executeBatch(@RequestBody CustomerBatchRequest request){
+        return customerBatchService.execute(request);
+    }
+
+    @PostMapping("/batch/ids")
+    public List<CustomerLookup<Integer>> getCustomersByIds(@RequestBody List<Integer> ids){
+        return customerService.getCustomersByIds(ids);
+    }
+
+    @PostMapping("/batch/emails")
+    public List<CustomerLookup<String>> getCustomersByEmails(@RequestBody List<String> emails){
+        return customerService.getCustomersByEmails(emails);
+    }
+
+    @PostMapping("/batch/exists")
+    public Map<String, Boolean> existsWithEmails(@RequestBody List<String> emails){
+        return customerService.existsWithEmails(emails);
+    }
+
     @DeleteMapping("/{id}")
     public void deleteCustomerById(@PathVariable int id){
         customerService.deleteCustomerById(id);
@@ -65,4 +148,9 @@ public class CustomerController {
         customerService.updateCustomer(customer);
     }
 
+    @PatchMapping("/{id}")
+    public CustomerDTO patchCustomer(@PathVariable int id, @RequestBody CustomerUpdateRequest request){
+        return customerService.patchCustomer(id, request);
+    }
+
 }
@@ -0,0 +1,119 @@
+package com.stalwart.customer.controller;
+
+import com.stalwart.customer.exceptions.InvalidRequestException;
+import com.stalwart.customer.jwt.JWTUtil;
+import com.stalwart.customer.model.CustomerDTO;
+import com.stalwart.customer.model.CustomerRegistrationRequest;
+import com.stalwart.customer.model.CustomerUpdateRequest;
+import com.stalwart.customer.service.CustomerService;
+import com.stalwart.customer.service.ReactiveCustomerService;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * WebFlux handlers for the routes of {@link CustomerController}, minus import and export:
+ * {@code /all} already streams.
+ */
+@Component
+@Profile("reactive")
+public class ReactiveCustomerHandler {
+
+    private final ReactiveCustomerService customerService;
+    private final JWTUtil jwtUtil;
+
+    public ReactiveCustomerHandler(ReactiveCustomerService customerService, JWTUtil jwtUtil) {
+        this.customerService = customerService;
+        this.jwtUtil = jwtUtil;
+    }
+
+    /**
+     * Streams rows as the client reads them, as a JSON array or, when asked for, as NDJSON.
+     */
+    public Mono<ServerResponse> getAllCustomers(ServerRequest request) {
+        MediaType mediaType = request.headers().accept().contains(MediaType.APPLICATION_NDJSON)
+                ? MediaType.APPLICATION_NDJSON
+                : MediaType.APPLICATION_JSON;
+        return ServerResponse.ok()
+                .contentType(mediaType)
+                .body(customerService.getAllCustomers(), CustomerDTO.class);
+    }
+
+    public Mono<ServerResponse> getCustomers(ServerRequest request) {
+        String after = request.queryParam("after").orElse(null);
+        int limit = request.queryParam("limit")
+                .map(ReactiveCustomerHandler::parseInt)
+                .orElse(CustomerService.DEFAULT_PAGE_SIZE);
+        return customerService.getCustomersPage(after, limit)
+                .flatMap(page -> ServerResponse.ok().bodyValue(page));
+    }
+
+    public Mono<ServerResponse> addCustomer(ServerRequest request) {
+        return request.bodyToMono(CustomerRegistrationRequest.class)
+                .flatMap(customer -> customerService.addCustomer(customer)
+                        .map(id -> jwtUtil.issueToken(customer.getEmail(), id, List.of("ROLE_USER"))))
+                .flatMap(jwtToken -> ServerResponse.ok()
+                        .header(HttpHeaders.AUTHORIZATION, jwtToken)
+                        .build());
+    }
+
+    public Mono<ServerResponse> getCustomerById(ServerRequest request) {
+        return customerService.getCustomerById(id(request))
+                .flatMap(customer -> ServerResponse.ok().bodyValue(customer));
+    }
+
+    public Mono<ServerResponse> deleteCustomerById(ServerRequest request) {
+        return customerService.deleteCustomerById(id(request))
+                .then(ServerResponse.ok().build());
+    }
+
+    public Mono<ServerResponse> getCustomerByEmail(ServerRequest request) {
+        return customerService.getCustomerByEmail(request.pathVariable("email"))
+                .flatMap(customer -> ServerResponse.ok().bodyValue(customer));
+    }
+
+    public Mono<ServerResponse> deleteCustomerByEmail(ServerRequest request) {
+        return customerService.deleteCustomerWithEmail(request.pathVariable("email"))
+                .then(ServerResponse.ok().build());
+    }
+
+    /**
+     * Same effect as the servlet PUT: the given non-null fields (age when non-zero) are applied.
+     */
+    public Mono<ServerResponse> updateCustomer(ServerRequest request) {
+        int id = id(request);
+        return request.bodyToMono(CustomerRegistrationRequest.class)
+                .map(update -> new CustomerUpdateRequest(
+                        update.getName(),
+                        update.getEmail(),
+                        update.getAge()==0 ? null : update.getAge(),
+                        null))
+                .flatMap(update -> customerService.patchCustomer(id, update))
+                .then(ServerResponse.ok().build());
+    }
+
+    public Mono<ServerResponse> patchCustomer(ServerRequest request) {
+        int id = id(request);
+        return request.bodyToMono(CustomerUpdateRequest.class)
+                .flatMap(update -> customerService.patchCustomer(id, update))
+                .flatMap(customer -> ServerResponse.ok().bodyValue(customer));
+    }
+
+    private static int id(ServerRequest request) {
+        return parseInt(request.pathVariable("id"));
+    }
+
+    private static int parseInt(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new InvalidRequestException("Invalid number %s".formatted(value));
+        }
+    }
+}
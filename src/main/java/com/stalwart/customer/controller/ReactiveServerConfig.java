@@ -0,0 +1,107 @@
+package com.stalwart.customer.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stalwart.customer.exceptions.ReactiveExceptionHandler;
+import com.stalwart.customer.jwt.ReactiveJWTAuthenticationFilter;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.boot.web.server.WebServer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.adapter.WebHttpHandlerBuilder;
+
+import static org.springframework.web.reactive.function.server.RouterFunctions.route;
+import static org.springframework.web.reactive.function.server.RouterFunctions.toWebHandler;
+
+/**
+ * Enabled by the {@code reactive} profile: serves the customer API from
+ * {@link ReactiveCustomerHandler} on a separate Netty server at {@code customer.reactive.port},
+ * next to the servlet endpoints, with R2DBC underneath. The pool is sized by
+ * {@code customer.reactive.pool.max-size} and connects to {@code customer.reactive.r2dbc-url},
+ * which defaults to {@code spring.datasource.url} with the {@code jdbc:} prefix swapped for
+ * {@code r2dbc:}, using the same credentials.
+ * <p>
+ * Authentication is {@link ReactiveJWTAuthenticationFilter}; the servlet rate and concurrency
+ * limits do not apply on this port.
+ */
+@Configuration
+@Profile("reactive")
+public class ReactiveServerConfig {
+
+    private static final String CUSTOMER_ROUTES = "/api/customer";
+
+    // kept out of the context: a ConnectionFactory bean would make Boot back off the JDBC DataSource
+    private ConnectionPool connectionPool;
+
+    @Bean
+    public DatabaseClient databaseClient(
+            @Value("${customer.reactive.r2dbc-url:}") String r2dbcUrl,
+            @Value("${spring.datasource.url}") String jdbcUrl,
+            @Value("${spring.datasource.username}") String username,
+            @Value("${spring.datasource.password}") String password,
+            @Value("${customer.reactive.pool.max-size:20}") int maxSize) {
+        String url = r2dbcUrl.isEmpty() ? jdbcUrl.replaceFirst("^jdbc:", "r2dbc:") : r2dbcUrl;
+        ConnectionFactory connectionFactory = ConnectionFactories.get(ConnectionFactoryOptions.parse(url)
+                .mutate()
+                .option(ConnectionFactoryOptions.USER, username)
+                .option(ConnectionFactoryOptions.PASSWORD, password)
+                .build());
+        connectionPool = new ConnectionPool(ConnectionPoolConfiguration.builder(connectionFactory)
+                .maxSize(maxSize)
+                .build());
+        return DatabaseClient.create(connectionPool);
+    }
+
+    @PreDestroy
+    public void closeConnectionPool() {
+        if (connectionPool != null)
+            connectionPool.dispose();
+    }
+
+    @Bean
+    public RouterFunction<ServerResponse> customerRoutes(ReactiveCustomerHandler handler) {
+        return route()
+                .GET(CUSTOMER_ROUTES + "/all", handler::getAllCustomers)
+                .GET(CUSTOMER_ROUTES + "/email/{email}", handler::getCustomerByEmail)
+                .DELETE(CUSTOMER_ROUTES + "/email/{email}", handler::deleteCustomerByEmail)
+                .GET(CUSTOMER_ROUTES + "/{id}", handler::getCustomerById)
+                .DELETE(CUSTOMER_ROUTES + "/{id}", handler::deleteCustomerById)
+                .PUT(CUSTOMER_ROUTES + "/{id}", handler::updateCustomer)
+                .PATCH(CUSTOMER_ROUTES + "/{id}", handler::patchCustomer)
+                .GET(CUSTOMER_ROUTES, handler::getCustomers)
+                .POST(CUSTOMER_ROUTES, handler::addCustomer)
+                .build();
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public WebServer reactiveWebServer(RouterFunction<ServerResponse> customerRoutes,
+                                       ReactiveJWTAuthenticationFilter reactiveJWTAuthenticationFilter,
+                                       ReactiveExceptionHandler reactiveExceptionHandler,
+                                       ObjectMapper objectMapper,
+                                       @Value("${customer.reactive.port:8081}") int port) {
+        HandlerStrategies strategies = HandlerStrategies.builder()
+                .codecs(codecs -> {
+                    codecs.defaultCodecs().jackson2JsonEncoder(new Jackson2JsonEncoder(objectMapper));
+                    codecs.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(objectMapper));
+                })
+                .build();
+        return new NettyReactiveWebServerFactory(port).getWebServer(
+                WebHttpHandlerBuilder.webHandler(toWebHandler(customerRoutes, strategies))
+                        .filter(reactiveJWTAuthenticationFilter)
+                        .exceptionHandler(reactiveExceptionHandler)
+                        .build());
+    }
+}
@@ -1,13 +1,34 @@
 package com.stalwart.customer.dao;
 
-import com.stalwart.customer.model.OTPObject;
 import org.springframework.stereotype.Repository;
 
-import java.util.Optional;
+import java.time.Duration;
 
 @Repository
 public interface AuthenticationDao {
-    public void storeOTP(String email, String otp);
 
-    Optional<OTPObject> validateOTP(String email, String otp, long ts);
+    /**
+     * Stores the code for the email, replacing any earlier one, valid for {@code ttl}.
+     */
+    public void storeOTP(String email, String otp, Duration ttl);
+
+    /**
+     * Checks the code and deletes it in the same statement, so a code can be used once.
+     *
+     * @return false when the code is wrong, expired or already used
+     */
+    public boolean consumeOTP(String email, String otp);
+
+    /**
+     * Deletes at most {@code limit} expired codes.
+     *
+     * @return number of codes deleted
+     */
+    public int deleteExpiredOTPs(int limit);
+
+    /**
+     * Switches the OTP table between logged and unlogged. Unlogged tables skip the WAL but
+     * are emptied after a crash, which only costs users a resend.
+     */
+    public void setOTPTableUnlogged(boolean unlogged);
 }
@@ -1,25 +1,114 @@
 package com.stalwart.customer.dao;
 
 import com.stalwart.customer.model.Customer;
+import com.stalwart.customer.model.CustomerDTO;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 @Repository
 public interface CustomerDao {
 
     public List<Customer> getAllCustomers();
+
+    /**
+     * Returns at most {@code limit} customers with an id greater than {@code afterId},
+     * ordered by id, so callers can walk the table page by page.
+     */
+    public List<Customer> getCustomersAfterId(int afterId, int limit);
     public Optional<Customer> getCustomerById(int id);
-    public void deleteCustomerById(int id);
+    /**
+     * @return false when no customer with the given id existed
+     */
+    public boolean deleteCustomerById(int id);
     public Optional<Customer> getCustomerByEmail(String email);
-    public void deleteCustomerByEmail(String email);
 
-    public void addCustomer(Customer customer);
+    /**
+     * Loads only what authentication needs: id, email and the password hash.
+     */
+    public Optional<Customer> getCustomerCredentialsByEmail(String email);
+
+    // projections for the read endpoints, without the password column
+
+    public List<CustomerDTO> getAllCustomerDTOs();
+    public List<CustomerDTO> getCustomerDTOsAfterId(int afterId, int limit);
+    public Optional<CustomerDTO> getCustomerDTOById(int id);
+    public Optional<CustomerDTO> getCustomerDTOByEmail(String email);
+
+    /**
+     * Loads every customer whose id is in {@code ids} with a single query. Ids without a
+     * customer are simply missing from the result, which is in no particular order.
+     */
+    public List<CustomerDTO> getCustomerDTOsByIds(Collection<Integer> ids);
+
+    /**
+     * Same as {@link #getCustomerDTOsByIds(Collection)}, keyed by email.
+     */
+    public List<CustomerDTO> getCustomerDTOsByEmails(Collection<String> emails);
+
+    /**
+     * @return id of the deleted customer, empty when no customer had the given email
+     */
+    public Optional<Integer> deleteCustomerByEmail(String email);
+
+    /**
+     * Inserts the customer and sets its generated id.
+     *
+     * @return false when the email is already taken
+     */
+    public boolean addCustomer(Customer customer);
 
     public void updateCustomer(Customer customer);
 
+    /**
+     * Applies the non-null fields of {@code changes} (age when non-zero) in one statement,
+     * bumping the version. When {@code expectedVersion} is given the update only happens
+     * if the stored version still matches.
+     *
+     * @return the updated row, empty when the customer is missing or the version did not match
+     */
+    public Optional<Customer> updateCustomer(Customer changes, Integer expectedVersion);
+
+    /**
+     * Replaces the password hash only while it still equals {@code currentPassword}, so a
+     * rehash never overwrites a password changed in the meantime. The version is left alone
+     * because the profile did not change.
+     *
+     * @return false when the customer is gone or its password no longer matches
+     */
+    public boolean updatePassword(int id, String currentPassword, String newPassword);
+
+    // batch writes, each a single round trip; element i of the result belongs to element i of the input
+
+    /**
+     * Inserts the customers with one multi-row statement and sets the generated ids of those
+     * that were inserted. When an email appears more than once only its first occurrence is inserted.
+     *
+     * @return per customer, false when its email was already taken
+     */
+    public boolean[] addCustomers(List<Customer> customers);
+
+    /**
+     * Applies the non-null fields of each customer (age when non-zero), bumping the version.
+     *
+     * @return per customer, false when no customer had its id
+     */
+    public boolean[] updateCustomers(List<Customer> changes);
+
+    /**
+     * @return per id, false when no customer had it
+     */
+    public boolean[] deleteCustomersById(List<Integer> ids);
+
     public boolean existsWithEmail(String email);
 
+    /**
+     * @return the subset of {@code emails} that belong to a customer, checked with one query
+     */
+    public Set<String> existingEmails(Collection<String> emails);
+
     boolean existsCustomerWithId(int id);
 }
@@ -0,0 +1,26 @@
+package com.stalwart.customer.dao;
+
+import com.stalwart.customer.model.OutboxMessage;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.util.List;
+
+@Repository
+public interface OutboxDao {
+
+    public void enqueue(String recipient, String subject, String body);
+
+    /**
+     * Takes up to {@code limit} messages that are due and hides them from other dispatchers
+     * for {@code lease}, after which they become due again unless deleted or rescheduled.
+     */
+    public List<OutboxMessage> claim(int limit, Duration lease);
+
+    public void delete(List<Long> ids);
+
+    /**
+     * Records a failed attempt and makes the message due again after {@code delay}.
+     */
+    public void reschedule(long id, String error, Duration delay);
+}
@@ -0,0 +1,42 @@
+package com.stalwart.customer.dao;
+
+import com.stalwart.customer.model.Customer;
+import com.stalwart.customer.model.CustomerDTO;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking counterpart of the read and write operations in {@link CustomerDao} that the
+ * customer endpoints use. Empty results take the place of {@code Optional.empty()} and
+ * {@code false}.
+ */
+public interface ReactiveCustomerDao {
+
+    /**
+     * Rows are fetched as the subscriber requests them.
+     */
+    public Flux<CustomerDTO> getAllCustomerDTOs();
+    public Flux<CustomerDTO> getCustomerDTOsAfterId(int afterId, int limit);
+    public Mono<CustomerDTO> getCustomerDTOById(int id);
+    public Mono<CustomerDTO> getCustomerDTOByEmail(String email);
+
+    /**
+     * @return true when a customer with the given id existed
+     */
+    public Mono<Boolean> deleteCustomerById(int id);
+
+    /**
+     * @return id of the deleted customer, empty when no customer had the given email
+     */
+    public Mono<Integer> deleteCustomerByEmail(String email);
+
+    /**
+     * @return id of the new customer, empty when the email is already taken
+     */
+    public Mono<Integer> addCustomer(Customer customer);
+
+    /**
+     * Same contract as {@link CustomerDao#updateCustomer(Customer, Integer)}.
+     */
+    public Mono<CustomerDTO> updateCustomer(Customer changes, Integer expectedVersion);
+}
@@ -0,0 +1,61 @@
+package com.stalwart.customer.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Enabled by listing replica JDBC URLs in {@code customer.datasource.replicas}. Replicas share
+ * the primary's credentials and are bound to the same {@code spring.datasource.hikari} pool
+ * settings, apart from the URL, pool name and read-only flag.
+ */
+@Configuration
+@ConditionalOnProperty("customer.datasource.replicas")
+public class ReadReplicaConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties dataSourceProperties) {
+        return dataSourceProperties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariDataSource primaryDataSource,
+                                 DataSourceProperties dataSourceProperties,
+                                 MeterRegistry meterRegistry,
+                                 Environment environment,
+                                 @Value("${customer.datasource.replicas}") List<String> replicaUrls,
+                                 @Value("${customer.datasource.max-replica-lag:PT5S}") Duration maxLag,
+                                 @Value("${customer.datasource.replica-lag-check-interval:PT1S}") Duration lagCheckInterval) {
+        Binder binder = Binder.get(environment);
+        List<DataSource> replicas = new ArrayList<>();
+        for (int i = 0; i < replicaUrls.size(); i++) {
+            HikariDataSource replica = dataSourceProperties.initializeDataSourceBuilder()
+                    .type(HikariDataSource.class)
+                    .build();
+            binder.bind("spring.datasource.hikari", Bindable.ofInstance(replica));
+            replica.setJdbcUrl(replicaUrls.get(i).trim());
+            replica.setPoolName("replica-" + i);
+            replica.setReadOnly(true);
+            replicas.add(replica);
+        }
+        return new ReplicaRoutingDataSource(primaryDataSource, replicas, maxLag, lagCheckInterval, meterRegistry);
+    }
+}
@@ -0,0 +1,65 @@
+package com.stalwart.customer.datasource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.function.Supplier;
+
+/**
+ * Thread-bound routing hints for {@link ReplicaRoutingDataSource}.
+ * <p>
+ * Only connections opened inside {@link #read(Supplier)} may go to a replica. Any write marks
+ * the thread, and reads that follow it stay on the primary until the replica lag threshold has
+ * passed or the request ends, so a caller always sees its own writes.
+ */
+public final class ReplicaRoutingContext {
+
+    private static final ThreadLocal<Boolean> READ_ONLY = new ThreadLocal<>();
+    private static final ThreadLocal<Long> LAST_WRITE_NANOS = new ThreadLocal<>();
+
+    private ReplicaRoutingContext() {
+    }
+
+    public static <T> T read(Supplier<T> query) {
+        if (Boolean.TRUE.equals(READ_ONLY.get()))
+            return query.get();
+        READ_ONLY.set(Boolean.TRUE);
+        try {
+            return query.get();
+        } finally {
+            READ_ONLY.remove();
+        }
+    }
+
+    /**
+     * Opens a connection that may be served by a replica, for callers that manage JDBC directly.
+     */
+    public static Connection openForRead(DataSource dataSource) throws SQLException {
+        if (Boolean.TRUE.equals(READ_ONLY.get()))
+            return dataSource.getConnection();
+        READ_ONLY.set(Boolean.TRUE);
+        try {
+            return dataSource.getConnection();
+        } finally {
+            READ_ONLY.remove();
+        }
+    }
+
+    public static void markWrite() {
+        LAST_WRITE_NANOS.set(System.nanoTime());
+    }
+
+    public static void clear() {
+        READ_ONLY.remove();
+        LAST_WRITE_NANOS.remove();
+    }
+
+    static boolean isReadOnly() {
+        return Boolean.TRUE.equals(READ_ONLY.get());
+    }
+
+    static boolean wroteWithin(long nanos) {
+        Long lastWrite = LAST_WRITE_NANOS.get();
+        return lastWrite != null && System.nanoTime() - lastWrite < nanos;
+    }
+}
@@ -0,0 +1,131 @@
+package com.stalwart.customer.datasource;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends connections opened inside {@link ReplicaRoutingContext#read} to a healthy replica and
+ * everything else to the primary. Replica lag is sampled in the background; replicas that are
+ * unreachable, disconnected from the primary or further behind than the threshold are skipped,
+ * and with none left reads fall back to the primary.
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    // an idle primary produces no replay timestamps, so only count lag while WAL is outstanding;
+    // without a WAL receiver nothing new arrives and replay looks caught up, so report null
+    private static final String LAG_QUERY =
+            "select case when not exists (select from pg_stat_wal_receiver) then null " +
+            "when pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() then 0 " +
+            "else coalesce(extract(epoch from now() - pg_last_xact_replay_timestamp()) * 1000, 0) end";
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final long maxLagNanos;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ScheduledExecutorService lagChecker;
+
+    private volatile Replica[] healthy = new Replica[0];
+
+    public ReplicaRoutingDataSource(DataSource primary,
+                                    List<DataSource> replicas,
+                                    Duration maxLag,
+                                    Duration lagCheckInterval,
+                                    MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.maxLagNanos = maxLag.toNanos();
+        this.replicas = new ArrayList<>();
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = new Replica(i, replicas.get(i));
+            this.replicas.add(replica);
+            Gauge.builder("customer.datasource.replica.lag", replica, r -> r.lagMillis)
+                    .tag("replica", String.valueOf(i))
+                    .baseUnit("milliseconds")
+                    .register(meterRegistry);
+        }
+        this.lagChecker = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("replica-lag-"));
+        this.lagChecker.scheduleWithFixedDelay(this::checkLag, 0, lagCheckInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return determineTarget().getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return determineTarget().getConnection(username, password);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        lagChecker.shutdownNow();
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof AutoCloseable closeable)
+                closeable.close();
+        }
+    }
+
+    private DataSource determineTarget() {
+        if (!ReplicaRoutingContext.isReadOnly() || ReplicaRoutingContext.wroteWithin(maxLagNanos))
+            return primary;
+        Replica[] candidates = healthy;
+        if (candidates.length == 0)
+            return primary;
+        return candidates[Math.floorMod(next.getAndIncrement(), candidates.length)].dataSource;
+    }
+
+    private void checkLag() {
+        List<Replica> usable = new ArrayList<>(replicas.size());
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection();
+                 Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery(LAG_QUERY)) {
+                rs.next();
+                double lagMillis = rs.getDouble(1);
+                if (rs.wasNull()) {
+                    replica.lagMillis = Double.NaN;
+                    log.warn("replica {} is not receiving WAL from the primary, skipping it for reads", replica.index);
+                    continue;
+                }
+                replica.lagMillis = lagMillis;
+                if (TimeUnit.MILLISECONDS.toNanos((long) replica.lagMillis) <= maxLagNanos)
+                    usable.add(replica);
+            } catch (SQLException e) {
+                replica.lagMillis = Double.NaN;
+                log.warn("replica {} is unavailable for reads", replica.index, e);
+            }
+        }
+        healthy = usable.toArray(new Replica[0]);
+    }
+
+    private static final class Replica {
+        final int index;
+        final DataSource dataSource;
+        volatile double lagMillis = Double.NaN;
+
+        Replica(int index, DataSource dataSource) {
+            this.index = index;
+            this.dataSource = dataSource;
+        }
+    }
+}
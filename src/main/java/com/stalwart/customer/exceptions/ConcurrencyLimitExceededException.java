@@ -0,0 +1,21 @@
+package com.stalwart.customer.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.time.Duration;
+
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class ConcurrencyLimitExceededException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public ConcurrencyLimitExceededException(Duration retryAfter){
+        super("Too many requests in progress, retry in %s seconds".formatted(Math.max(1, retryAfter.toSeconds())));
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,12 @@
+package com.stalwart.customer.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.CONFLICT)
+public class CustomerVersionConflictException extends RuntimeException {
+
+    public CustomerVersionConflictException(String message){
+        super(message);
+    }
+}
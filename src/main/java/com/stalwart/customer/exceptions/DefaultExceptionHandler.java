@@ -2,18 +2,40 @@ package com.stalwart.customer.exceptions;
 
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.InsufficientAuthenticationException;
+import org.springframework.security.authentication.InternalAuthenticationServiceException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.time.LocalDateTime;
 
 @ControllerAdvice
 public class DefaultExceptionHandler {
 
+    /**
+     * Status for an exception without a dedicated handler, shared by the catch-all below and
+     * the reactive endpoints: the status of a {@link ResponseStatusException}, the
+     * {@link ResponseStatus} of our own exceptions, the authentication statuses used below,
+     * and 500 for anything else.
+     */
+    public static HttpStatus statusOf(Throwable exception) {
+        if(exception instanceof ResponseStatusException responseStatusException)
+            return HttpStatus.valueOf(responseStatusException.getStatusCode().value());
+        if(exception instanceof BadCredentialsException)
+            return HttpStatus.UNAUTHORIZED;
+        if(exception instanceof InsufficientAuthenticationException)
+            return HttpStatus.FORBIDDEN;
+        ResponseStatus responseStatus = AnnotatedElementUtils.findMergedAnnotation(exception.getClass(), ResponseStatus.class);
+        return responseStatus != null ? responseStatus.code() : HttpStatus.INTERNAL_SERVER_ERROR;
+    }
+
     @ExceptionHandler(UserNotFoundException.class)
     public ResponseEntity<APIError> handleException(
             UserNotFoundException exception,
@@ -28,6 +50,48 @@ public class DefaultExceptionHandler {
         return new ResponseEntity<>(apiError, HttpStatus.NOT_FOUND);
     }
 
+    @ExceptionHandler({UserAlreadyExistsException.class, CustomerVersionConflictException.class})
+    public ResponseEntity<APIError> handleException(
+            RuntimeException exception,
+            HttpServletRequest request,
+            HttpServletResponse response ) {
+        APIError apiError = new APIError(
+                request.getRequestURI(),
+                exception.getMessage(),
+                HttpStatus.CONFLICT.value(),
+                LocalDateTime.now()
+        );
+        return new ResponseEntity<>(apiError, HttpStatus.CONFLICT);
+    }
+
+    @ExceptionHandler(InvalidRequestException.class)
+    public ResponseEntity<APIError> handleException(
+            InvalidRequestException exception,
+            HttpServletRequest request,
+            HttpServletResponse response ) {
+        APIError apiError = new APIError(
+                request.getRequestURI(),
+                exception.getMessage(),
+                HttpStatus.BAD_REQUEST.value(),
+                LocalDateTime.now()
+        );
+        return new ResponseEntity<>(apiError, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(PayloadTooLargeException.class)
+    public ResponseEntity<APIError> handleException(
+            PayloadTooLargeException exception,
+            HttpServletRequest request,
+            HttpServletResponse response ) {
+        APIError apiError = new APIError(
+                request.getRequestURI(),
+                exception.getMessage(),
+                HttpStatus.PAYLOAD_TOO_LARGE.value(),
+                LocalDateTime.now()
+        );
+        return new ResponseEntity<>(apiError, HttpStatus.PAYLOAD_TOO_LARGE);
+    }
+
     @ExceptionHandler(InsufficientAuthenticationException.class)
     public ResponseEntity<APIError> handleException(
             InsufficientAuthenticationException exception,
@@ -56,17 +120,79 @@ public class DefaultExceptionHandler {
         return new ResponseEntity<>(apiError, HttpStatus.UNAUTHORIZED);
     }
 
+    @ExceptionHandler(PasswordHashingOverloadedException.class)
+    public ResponseEntity<APIError> handleException(
+            PasswordHashingOverloadedException exception,
+            HttpServletRequest request,
+            HttpServletResponse response ) {
+        APIError apiError = new APIError(
+                request.getRequestURI(),
+                exception.getMessage(),
+                HttpStatus.SERVICE_UNAVAILABLE.value(),
+                LocalDateTime.now()
+        );
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, exception.getRetryAfter().toSeconds())))
+                .body(apiError);
+    }
+
+    @ExceptionHandler(ConcurrencyLimitExceededException.class)
+    public ResponseEntity<APIError> handleException(
+            ConcurrencyLimitExceededException exception,
+            HttpServletRequest request,
+            HttpServletResponse response ) {
+        APIError apiError = new APIError(
+                request.getRequestURI(),
+                exception.getMessage(),
+                HttpStatus.SERVICE_UNAVAILABLE.value(),
+                LocalDateTime.now()
+        );
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, exception.getRetryAfter().toSeconds())))
+                .body(apiError);
+    }
+
+    @ExceptionHandler(RateLimitExceededException.class)
+    public ResponseEntity<APIError> handleException(
+            RateLimitExceededException exception,
+            HttpServletRequest request,
+            HttpServletResponse response ) {
+        APIError apiError = new APIError(
+                request.getRequestURI(),
+                exception.getMessage(),
+                HttpStatus.TOO_MANY_REQUESTS.value(),
+                LocalDateTime.now()
+        );
+        // round up so a client that waits exactly Retry-After is let through
+        long retryAfterSeconds = (exception.getRetryAfter().toMillis() + 999) / 1000;
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, retryAfterSeconds)))
+                .body(apiError);
+    }
+
+    // DaoAuthenticationProvider wraps failures raised while looking up the user
+    @ExceptionHandler(InternalAuthenticationServiceException.class)
+    public ResponseEntity<APIError> handleException(
+            InternalAuthenticationServiceException exception,
+            HttpServletRequest request,
+            HttpServletResponse response ) {
+        if(exception.getCause() instanceof PasswordHashingOverloadedException overloaded)
+            return handleException(overloaded, request, response);
+        return handleException((Exception) exception, request, response);
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<APIError> handleException(
             Exception exception,
             HttpServletRequest request,
             HttpServletResponse response ) {
+        HttpStatus status = statusOf(exception);
         APIError apiError = new APIError(
                 request.getRequestURI(),
                 exception.getMessage(),
-                HttpStatus.INTERNAL_SERVER_ERROR.value(),
+                status.value(),
                 LocalDateTime.now()
         );
-        return new ResponseEntity<>(apiError, HttpStatus.INTERNAL_SERVER_ERROR);
+        return new ResponseEntity<>(apiError, status);
     }
 }
@@ -0,0 +1,12 @@
+package com.stalwart.customer.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.PAYLOAD_TOO_LARGE)
+public class PayloadTooLargeException extends RuntimeException {
+
+    public PayloadTooLargeException(long maxBytes){
+        super("Request body exceeds %d bytes".formatted(maxBytes));
+    }
+}
@@ -0,0 +1,69 @@
+package com.stalwart.customer.exceptions;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebExceptionHandler;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Writes the same {@link APIError} bodies as {@link DefaultExceptionHandler} for the reactive
+ * endpoints, with statuses from {@link DefaultExceptionHandler#statusOf(Throwable)}.
+ */
+@Component
+@Profile("reactive")
+public class ReactiveExceptionHandler implements WebExceptionHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(ReactiveExceptionHandler.class);
+
+    private final ObjectMapper objectMapper;
+
+    public ReactiveExceptionHandler(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public @NonNull Mono<Void> handle(@NonNull ServerWebExchange exchange, @NonNull Throwable exception) {
+        ServerHttpResponse response = exchange.getResponse();
+        if (response.isCommitted())
+            return Mono.error(exception);
+
+        HttpStatus status = DefaultExceptionHandler.statusOf(exception);
+        if (status.is5xxServerError() && status != HttpStatus.SERVICE_UNAVAILABLE)
+            log.error("Request to {} failed", exchange.getRequest().getPath(), exception);
+
+        APIError apiError = new APIError(
+                exchange.getRequest().getPath().value(),
+                exception.getMessage(),
+                status.value(),
+                LocalDateTime.now()
+        );
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(apiError);
+        } catch (JsonProcessingException e) {
+            return Mono.error(e);
+        }
+        response.setStatusCode(status);
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        if (exception instanceof PasswordHashingOverloadedException overloaded)
+            response.getHeaders().set(HttpHeaders.RETRY_AFTER, retryAfter(overloaded.getRetryAfter()));
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(body)));
+    }
+
+    private static String retryAfter(Duration retryAfter) {
+        return String.valueOf(Math.max(1, retryAfter.toSeconds()));
+    }
+}
@@ -0,0 +1,30 @@
+package com.stalwart.customer.jwt;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.security.Principal;
+import java.util.List;
+
+/**
+ * Principal built from verified token claims alone, used when
+ * {@code jwt.claims-only.enabled} is set. The id is null for tokens issued before it was
+ * added to the claims.
+ */
+public record CustomerPrincipal(Integer id, String email, List<String> roles) implements Principal {
+
+    public CustomerPrincipal {
+        roles = List.copyOf(roles);
+    }
+
+    public List<GrantedAuthority> authorities() {
+        return roles.stream()
+                .<GrantedAuthority>map(SimpleGrantedAuthority::new)
+                .toList();
+    }
+
+    @Override
+    public String getName() {
+        return email;
+    }
+}
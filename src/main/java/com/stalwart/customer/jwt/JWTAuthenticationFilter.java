@@ -1,10 +1,12 @@
 package com.stalwart.customer.jwt;
 
+import com.stalwart.customer.service.ActiveCustomerCheck;
 import com.stalwart.customer.service.CustomerUserDetailsService;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -20,10 +22,22 @@ public class JWTAuthenticationFilter extends OncePerRequestFilter {
 
     private final JWTUtil jwtUtil;
     private final CustomerUserDetailsService customerUserDetailsService;
+    private final ActiveCustomerCheck activeCustomerCheck;
+    private final boolean claimsOnly;
 
-    public JWTAuthenticationFilter(JWTUtil jwtUtil, CustomerUserDetailsService customerUserDetailsService) {
+    /**
+     * @param claimsOnly build the principal from the verified token instead of loading the
+     *                   customer on every request; {@link ActiveCustomerCheck} still cuts off
+     *                   deleted customers within its recheck interval
+     */
+    public JWTAuthenticationFilter(JWTUtil jwtUtil,
+                                   CustomerUserDetailsService customerUserDetailsService,
+                                   ActiveCustomerCheck activeCustomerCheck,
+                                   @Value("${jwt.claims-only.enabled:false}") boolean claimsOnly) {
         this.jwtUtil = jwtUtil;
         this.customerUserDetailsService = customerUserDetailsService;
+        this.activeCustomerCheck = activeCustomerCheck;
+        this.claimsOnly = claimsOnly;
     }
 
     @Override
@@ -39,18 +53,16 @@ public class JWTAuthenticationFilter extends OncePerRequestFilter {
         }
         else{
             String jwt = authHeader.substring(7);
-            String subject = jwtUtil.getSubject(jwt);
+            // one verification covers signature, expiry and subject
+            VerifiedToken token = jwtUtil.verify(jwt);
+            String subject = token.subject();
 
             if(subject!=null &&
                     SecurityContextHolder.getContext().getAuthentication()==null){
-                UserDetails userDetails = customerUserDetailsService.loadUserByUsername(subject);
-                if(jwtUtil.isTokenValid(jwt,userDetails.getUsername())){
-                    UsernamePasswordAuthenticationToken authenticationToken =
-                            new UsernamePasswordAuthenticationToken(
-                                    userDetails,
-                                    null,
-                                    userDetails.getAuthorities()
-                            );
+                UsernamePasswordAuthenticationToken authenticationToken = claimsOnly
+                        ? authenticateFromClaims(token)
+                        : authenticateFromDatabase(subject);
+                if(authenticationToken!=null){
                     authenticationToken.setDetails(
                             new WebAuthenticationDetailsSource().buildDetails(request)
                     );
@@ -61,4 +73,22 @@ public class JWTAuthenticationFilter extends OncePerRequestFilter {
         }
 
     }
+
+    private UsernamePasswordAuthenticationToken authenticateFromClaims(VerifiedToken token){
+        if(!activeCustomerCheck.isActive(token.subject()))
+            return null;
+        CustomerPrincipal principal = new CustomerPrincipal(token.customerId(), token.subject(), token.scopes());
+        return new UsernamePasswordAuthenticationToken(principal, null, principal.authorities());
+    }
+
+    private UsernamePasswordAuthenticationToken authenticateFromDatabase(String subject){
+        UserDetails userDetails = customerUserDetailsService.loadCredentialsByUsername(subject);
+        if(!subject.equals(userDetails.getUsername()))
+            return null;
+        return new UsernamePasswordAuthenticationToken(
+                userDetails,
+                null,
+                userDetails.getAuthorities()
+        );
+    }
 }
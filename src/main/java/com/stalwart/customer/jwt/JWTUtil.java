@@ -1,23 +1,79 @@
 package com.stalwart.customer.jwt;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.Base64;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * Issues and verifies the HS256 tokens handed out at login and registration.
+ * <p>
+ * The signing key and parser are built once. Verified tokens are cached by the SHA-256 of
+ * the token until their {@code exp}, so a client repeating its token skips the parse and HMAC
+ * check; keying on the hash keeps bearer tokens themselves out of the heap. Setting
+ * {@code jwt.cache.maximum-size} to 0 turns the cache off.
+ */
 @Service
 public class JWTUtil {
 
     private static final String SECRET_KEY =
             "$#nevergiveup@!@gowithyourattitude^..^makeitpossible#$---$#nevergiveup@!@gowithyourattitude^..^makeitpossible#$";
+    private static final String CUSTOMER_ID_CLAIM = "customer_id";
+
+    private final Key signingKey = Keys.hmacShaKeyFor(SECRET_KEY.getBytes());
+    private final JwtParser parser = Jwts.parserBuilder()
+            .setSigningKey(signingKey)
+            .build();
+    private final Cache<String, VerifiedToken> verifiedTokens;
+
+    public JWTUtil(MeterRegistry meterRegistry,
+                   @Value("${jwt.cache.maximum-size:10000}") long maximumSize) {
+        if (maximumSize <= 0) {
+            this.verifiedTokens = null;
+            return;
+        }
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new Expiry<String, VerifiedToken>() {
+                    @Override
+                    public long expireAfterCreate(String key, VerifiedToken token, long currentTime) {
+                        return Math.max(0, Duration.between(Instant.now(), token.expiresAt()).toNanos());
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, VerifiedToken token, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, token, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, VerifiedToken token, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, verifiedTokens, "jwt.verified");
+    }
 
     public String issueToken(String subject){
         return issueToken(subject,Map.of());
@@ -31,6 +87,11 @@ public class JWTUtil {
 
         return issueToken(subject,Map.of("scopes",scopes));
     }
+
+    public String issueToken(String subject, int customerId, List<String> scopes){
+
+        return issueToken(subject,Map.of("scopes",scopes, CUSTOMER_ID_CLAIM, customerId));
+    }
     public String issueToken(
             String subject,
             Map<String,Object> claims) {
@@ -40,38 +101,63 @@ public class JWTUtil {
                 .setIssuer("https://stalwart.com")
                 .setIssuedAt(Date.from(Instant.now()))
                 .setExpiration(Date.from(Instant.now().plus(2, ChronoUnit.DAYS)))
-                .signWith(getSigningKey(), SignatureAlgorithm.HS256)
+                .signWith(signingKey, SignatureAlgorithm.HS256)
                 .compact();
         return token;
 
     }
 
     public String getSubject(String token){
-        return getClaims(token).getSubject();
+        return verify(token).subject();
     }
 
-    private Claims getClaims(String token){
-        Claims claims = (Claims) Jwts
-                .parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parse(token)
-                .getBody();
-        return claims;
-    }
-    private Key getSigningKey() {
+    /**
+     * Checks the signature and expiry of the token, parsing it at most once.
+     *
+     * @throws io.jsonwebtoken.JwtException when the token is malformed, unsigned, tampered with or expired
+     */
+    public VerifiedToken verify(String token){
+        String key = verifiedTokens == null ? null : hash(token);
+        if (key != null) {
+            VerifiedToken cached = verifiedTokens.getIfPresent(key);
+            if (cached != null && !cached.isExpired(Instant.now()))
+                return cached;
+        }
 
-        return Keys.hmacShaKeyFor(SECRET_KEY.getBytes());
+        Claims claims = parser.parseClaimsJws(token).getBody();
+        VerifiedToken verified = new VerifiedToken(
+                claims.getSubject(),
+                claims.get(CUSTOMER_ID_CLAIM, Integer.class),
+                scopes(claims),
+                claims.getExpiration() == null ? null : claims.getExpiration().toInstant());
+        // tokens without an expiry are never cached
+        if (key != null && verified.expiresAt() != null)
+            verifiedTokens.put(key, verified);
+        return verified;
     }
 
     public boolean isTokenValid(String jwt, String username) {
-        String subject = getSubject(jwt);
-        return subject.equals(username) && !isTokenExpired(jwt);
+        VerifiedToken token = verify(jwt);
+        return token.subject().equals(username)
+                && (token.expiresAt() == null || !token.isExpired(Instant.now()));
+    }
+
+    private static List<String> scopes(Claims claims){
+        Object scopes = claims.get("scopes");
+        if (!(scopes instanceof List<?> list))
+            return List.of();
+        return list.stream()
+                .map(String::valueOf)
+                .toList();
     }
 
-    private boolean isTokenExpired(String jwt) {
-       return getClaims(jwt)
-               .getExpiration()
-               .before(Date.from(Instant.now()));
+    private static String hash(String token){
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
     }
 }
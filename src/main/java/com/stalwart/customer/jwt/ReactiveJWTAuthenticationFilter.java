@@ -0,0 +1,68 @@
+package com.stalwart.customer.jwt;
+
+import com.stalwart.customer.service.ActiveCustomerCheck;
+import io.jsonwebtoken.JwtException;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.lang.NonNull;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.InsufficientAuthenticationException;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Guards the reactive endpoints the way {@link JWTAuthenticationFilter} guards the servlet
+ * ones in claims-only mode: the token must verify and its subject must still exist according
+ * to {@link ActiveCustomerCheck}. Registration stays open. A cache miss in the check queries
+ * the database, so it runs on the bounded elastic scheduler.
+ */
+@Component
+@Profile("reactive")
+public class ReactiveJWTAuthenticationFilter implements WebFilter {
+
+    public static final String PRINCIPAL_ATTRIBUTE = CustomerPrincipal.class.getName();
+
+    private final JWTUtil jwtUtil;
+    private final ActiveCustomerCheck activeCustomerCheck;
+
+    public ReactiveJWTAuthenticationFilter(JWTUtil jwtUtil, ActiveCustomerCheck activeCustomerCheck) {
+        this.jwtUtil = jwtUtil;
+        this.activeCustomerCheck = activeCustomerCheck;
+    }
+
+    @Override
+    public @NonNull Mono<Void> filter(@NonNull ServerWebExchange exchange, @NonNull WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        if (HttpMethod.POST.equals(request.getMethod()) && "/api/customer".equals(request.getPath().value()))
+            return chain.filter(exchange);
+
+        String authHeader = request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        if (authHeader == null || !authHeader.startsWith("Bearer "))
+            return Mono.error(new InsufficientAuthenticationException("Full authentication is required to access this resource"));
+
+        VerifiedToken token;
+        try {
+            token = jwtUtil.verify(authHeader.substring(7));
+        } catch (JwtException e) {
+            return Mono.error(new BadCredentialsException(e.getMessage()));
+        }
+        if (token.subject() == null)
+            return Mono.error(new BadCredentialsException("Token has no subject"));
+
+        return Mono.fromCallable(() -> activeCustomerCheck.isActive(token.subject()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(active -> {
+                    if (!active)
+                        return Mono.error(new BadCredentialsException("Customer no longer exists"));
+                    exchange.getAttributes().put(PRINCIPAL_ATTRIBUTE,
+                            new CustomerPrincipal(token.customerId(), token.subject(), token.scopes()));
+                    return chain.filter(exchange);
+                });
+    }
+}
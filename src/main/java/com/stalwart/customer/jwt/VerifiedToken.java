@@ -0,0 +1,15 @@
+package com.stalwart.customer.jwt;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * The claims of a token whose signature and expiry have been checked. The customer id is
+ * null for tokens that do not carry it.
+ */
+public record VerifiedToken(String subject, Integer customerId, List<String> scopes, Instant expiresAt) {
+
+    public boolean isExpired(Instant now) {
+        return !expiresAt.isAfter(now);
+    }
+}
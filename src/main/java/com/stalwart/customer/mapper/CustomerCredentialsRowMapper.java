@@ -0,0 +1,24 @@
+package com.stalwart.customer.mapper;
+
+import com.stalwart.customer.model.Customer;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps the {@code id, email, password} projection used for authentication. The other
+ * fields of the returned customer are left unset.
+ */
+@Component
+public class CustomerCredentialsRowMapper implements RowMapper<Customer> {
+    @Override
+    public Customer mapRow(ResultSet rs, int rowNum) throws SQLException {
+        Customer customer = new Customer();
+        customer.setId(rs.getInt(1));
+        customer.setEmail(rs.getString(2));
+        customer.setPassword(rs.getString(3));
+        return customer;
+    }
+}
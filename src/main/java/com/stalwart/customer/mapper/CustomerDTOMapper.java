@@ -24,7 +24,8 @@ public class CustomerDTOMapper implements Function<Customer, CustomerDTO> {
                         .stream()
                         .map(GrantedAuthority::getAuthority)
                         .collect(Collectors.toList()),
-                customer.getUsername()
+                customer.getUsername(),
+                customer.getVersion()
         );
     }
 }
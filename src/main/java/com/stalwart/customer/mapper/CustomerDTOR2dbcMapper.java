@@ -0,0 +1,35 @@
+package com.stalwart.customer.mapper;
+
+import com.stalwart.customer.model.CustomerDTO;
+import com.stalwart.customer.model.Gender;
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.RowMetadata;
+
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * R2DBC version of {@link CustomerDTORowMapper} for the same
+ * {@code id, name, email, gender, age, version} projection.
+ */
+public class CustomerDTOR2dbcMapper implements BiFunction<Row, RowMetadata, CustomerDTO> {
+
+    public static final CustomerDTOR2dbcMapper INSTANCE = new CustomerDTOR2dbcMapper();
+
+    private static final List<String> ROLES = List.of("ROLE_USER");
+
+    @Override
+    public CustomerDTO apply(Row row, RowMetadata metadata) {
+        String email = row.get("email", String.class);
+        return new CustomerDTO(
+                row.get("id", Integer.class),
+                row.get("name", String.class),
+                email,
+                Gender.fromColumn(row.get("gender", String.class)),
+                row.get("age", Integer.class),
+                ROLES,
+                email,
+                row.get("version", Integer.class)
+        );
+    }
+}
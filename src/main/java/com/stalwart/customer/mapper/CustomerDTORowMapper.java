@@ -0,0 +1,55 @@
+package com.stalwart.customer.mapper;
+
+import com.stalwart.customer.model.CustomerDTO;
+import com.stalwart.customer.model.Gender;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Maps the {@code id, name, email, gender, age, version} projection straight to a
+ * {@link CustomerDTO}. Column indexes are looked up once per {@link ResultSet} instead of by
+ * name for every row, so an instance keeps state and should be created per query.
+ */
+public class CustomerDTORowMapper implements RowMapper<CustomerDTO> {
+
+    private static final List<String> ROLES = List.of("ROLE_USER");
+
+    private ResultSet resolvedFor;
+    private int id;
+    private int name;
+    private int email;
+    private int gender;
+    private int age;
+    private int version;
+
+    @Override
+    public CustomerDTO mapRow(ResultSet rs, int rowNum) throws SQLException {
+        if(rs != resolvedFor)
+            resolve(rs);
+
+        String customerEmail = rs.getString(email);
+        return new CustomerDTO(
+                rs.getInt(id),
+                rs.getString(name),
+                customerEmail,
+                Gender.fromColumn(rs.getString(gender)),
+                rs.getInt(age),
+                ROLES,
+                customerEmail,
+                rs.getInt(version)
+        );
+    }
+
+    private void resolve(ResultSet rs) throws SQLException {
+        id = rs.findColumn("id");
+        name = rs.findColumn("name");
+        email = rs.findColumn("email");
+        gender = rs.findColumn("gender");
+        age = rs.findColumn("age");
+        version = rs.findColumn("version");
+        resolvedFor = rs;
+    }
+}
@@ -12,13 +12,15 @@ import java.sql.SQLException;
 public class CustomerRowMapper implements RowMapper {
     @Override
     public Customer mapRow(ResultSet rs, int rowNum) throws SQLException {
-        return new Customer(
+        Customer customer = new Customer(
                 rs.getInt("id"),
                 rs.getString("name"),
                 rs.getString("email"),
                 rs.getString("password"),
                 rs.getInt("age"),
-               Gender.valueOf( rs.getString("gender"))
+               Gender.fromColumn( rs.getString("gender"))
         );
+        customer.setVersion(rs.getInt("version"));
+        return customer;
     }
 }
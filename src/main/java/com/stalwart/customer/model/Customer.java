@@ -54,6 +54,12 @@ public class Customer implements UserDetails {
             nullable = false
     )
     private String password;
+
+    @Version
+    @Column(
+            nullable = false
+    )
+    private int version;
     public Customer(int id,String name, String email, String password, int age, Gender gender) {
         this.id = id;
         this.name = name;
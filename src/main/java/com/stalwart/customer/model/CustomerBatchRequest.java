@@ -0,0 +1,15 @@
+package com.stalwart.customer.model;
+
+import java.util.List;
+
+public record CustomerBatchRequest(
+        Mode mode,
+        List<CustomerOperation> operations
+) {
+    public enum Mode {
+        /** any failed operation rolls back the whole batch; the default */
+        ALL_OR_NOTHING,
+        /** failed operations are skipped and the others are committed */
+        BEST_EFFORT
+    }
+}
@@ -0,0 +1,12 @@
+package com.stalwart.customer.model;
+
+import java.util.List;
+
+public record CustomerBatchResult(
+        boolean committed,
+        long applied,
+        long failed,
+        List<CustomerOperationResult> results,
+        long elapsedMillis
+) {
+}
@@ -0,0 +1,23 @@
+package com.stalwart.customer.model;
+
+public record CustomerChangeEvent(
+        String operation,
+        int id,
+        String email,
+        long changedAtMillis
+) {
+
+    /**
+     * Parses the {@code operation|id|epochMillis|email} payload sent by the
+     * {@code customer_change_notify} trigger.
+     */
+    public static CustomerChangeEvent fromPayload(String payload) {
+        String[] parts = payload.split("\\|", 4);
+        return new CustomerChangeEvent(
+                parts[0],
+                Integer.parseInt(parts[1]),
+                parts[3],
+                Long.parseLong(parts[2])
+        );
+    }
+}
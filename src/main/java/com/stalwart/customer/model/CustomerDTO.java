@@ -17,5 +17,6 @@ public class CustomerDTO {
     int age;
     List<String> roles;
     String username;
+    Integer version;
 
 }
@@ -0,0 +1,8 @@
+package com.stalwart.customer.model;
+
+public record CustomerImportReject(
+        long line,
+        String email,
+        String reason
+) {
+}
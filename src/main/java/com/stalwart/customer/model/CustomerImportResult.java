@@ -0,0 +1,13 @@
+package com.stalwart.customer.model;
+
+import java.util.List;
+
+public record CustomerImportResult(
+        long received,
+        long imported,
+        long rejected,
+        List<CustomerImportReject> rejects,
+        long elapsedMillis,
+        double rowsPerSecond
+) {
+}
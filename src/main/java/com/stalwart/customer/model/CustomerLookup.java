@@ -0,0 +1,15 @@
+package com.stalwart.customer.model;
+
+/**
+ * One entry of a batch lookup: the requested key and the customer it resolved to,
+ * with {@code found} false and no customer when nothing matched.
+ */
+public record CustomerLookup<K>(
+        K key,
+        boolean found,
+        CustomerDTO customer
+) {
+    public static <K> CustomerLookup<K> of(K key, CustomerDTO customer) {
+        return new CustomerLookup<>(key, customer != null, customer);
+    }
+}
@@ -0,0 +1,17 @@
+package com.stalwart.customer.model;
+
+/**
+ * One step of a batch: {@code customer} is required to create and update, {@code id} to
+ * update and delete. Updates apply the non-null fields of {@code customer}, like PUT.
+ */
+public record CustomerOperation(
+        Type type,
+        Integer id,
+        CustomerRegistrationRequest customer
+) {
+    public enum Type {
+        CREATE,
+        UPDATE,
+        DELETE
+    }
+}
@@ -0,0 +1,10 @@
+package com.stalwart.customer.model;
+
+public record CustomerOperationResult(
+        int index,
+        CustomerOperation.Type type,
+        Integer id,
+        int status,
+        String error
+) {
+}
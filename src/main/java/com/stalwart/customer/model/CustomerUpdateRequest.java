@@ -0,0 +1,9 @@
+package com.stalwart.customer.model;
+
+public record CustomerUpdateRequest(
+        String name,
+        String email,
+        Integer age,
+        Integer version
+) {
+}
@@ -0,0 +1,40 @@
+package com.stalwart.customer.model;
+
+import com.stalwart.customer.exceptions.InvalidRequestException;
+
+public enum DataFormat {
+    CSV("text/csv", "csv"),
+    NDJSON("application/x-ndjson", "ndjson");
+
+    private final String contentType;
+    private final String fileExtension;
+
+    DataFormat(String contentType, String fileExtension) {
+        this.contentType = contentType;
+        this.fileExtension = fileExtension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getFileExtension() {
+        return fileExtension;
+    }
+
+    public static DataFormat from(String format) {
+        for (DataFormat dataFormat : values()) {
+            if (dataFormat.fileExtension.equalsIgnoreCase(format))
+                return dataFormat;
+        }
+        throw new InvalidRequestException("Unsupported format %s".formatted(format));
+    }
+
+    public static DataFormat fromContentType(String contentType) {
+        for (DataFormat dataFormat : values()) {
+            if (contentType != null && contentType.toLowerCase().startsWith(dataFormat.contentType))
+                return dataFormat;
+        }
+        throw new InvalidRequestException("Unsupported content type %s".formatted(contentType));
+    }
+}
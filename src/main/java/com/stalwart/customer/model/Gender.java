@@ -3,5 +3,18 @@ package com.stalwart.customer.model;
 public enum Gender {
     MALE,
     FEMALE,
-    OTHER
+    OTHER;
+
+    /**
+     * Maps the stored gender column, avoiding the lookup map behind {@link #valueOf(String)}
+     * for the values the application writes.
+     */
+    public static Gender fromColumn(String value) {
+        return switch (value) {
+            case "MALE" -> MALE;
+            case "FEMALE" -> FEMALE;
+            case "OTHER" -> OTHER;
+            default -> valueOf(value);
+        };
+    }
 }
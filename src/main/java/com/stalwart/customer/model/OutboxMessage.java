@@ -0,0 +1,10 @@
+package com.stalwart.customer.model;
+
+public record OutboxMessage(
+        long id,
+        String recipient,
+        String subject,
+        String body,
+        int attempts
+) {
+}
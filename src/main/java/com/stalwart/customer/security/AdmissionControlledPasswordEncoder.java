@@ -0,0 +1,115 @@
+package com.stalwart.customer.security;
+
+import com.stalwart.customer.exceptions.PasswordHashingOverloadedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.concurrent.*;
+
+/**
+ * Runs the hashing and verification of a {@link PasswordEncoder} on a fixed pool so that
+ * login and registration storms can only use that many cores, leaving the request threads'
+ * CPU to cheap endpoints. When the pool's queue is full the call fails at once with
+ * {@link PasswordHashingOverloadedException}, which is answered with 503 and Retry-After.
+ * <p>
+ * Publishes {@code customer.password.queue.wait} and {@code customer.password.hash} (tagged by
+ * operation) timers, a {@code customer.password.rejected} counter and the current queue size.
+ */
+public class AdmissionControlledPasswordEncoder implements PasswordEncoder, DisposableBean {
+
+    private final PasswordEncoder delegate;
+    private final ThreadPoolExecutor executor;
+    private final Duration retryAfter;
+    private final Timer queueWait;
+    private final Timer encodeTime;
+    private final Timer matchesTime;
+    private final Counter rejected;
+
+    public AdmissionControlledPasswordEncoder(PasswordEncoder delegate,
+                                             MeterRegistry meterRegistry,
+                                             int threads,
+                                             int queueCapacity,
+                                             Duration retryAfter) {
+        this.delegate = delegate;
+        this.retryAfter = retryAfter;
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.executor = new ThreadPoolExecutor(
+                poolSize, poolSize,
+                0L, TimeUnit.MILLISECONDS,
+                queue,
+                new CustomizableThreadFactory("password-hash-"),
+                new ThreadPoolExecutor.AbortPolicy());
+
+        this.queueWait = Timer.builder("customer.password.queue.wait")
+                .description("Time a password operation waited for a hashing thread")
+                .register(meterRegistry);
+        this.encodeTime = Timer.builder("customer.password.hash")
+                .tag("operation", "encode")
+                .register(meterRegistry);
+        this.matchesTime = Timer.builder("customer.password.hash")
+                .tag("operation", "matches")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("customer.password.rejected")
+                .description("Password operations shed because the hashing queue was full")
+                .register(meterRegistry);
+        Gauge.builder("customer.password.queue.size", queue, BlockingQueue::size)
+                .register(meterRegistry);
+        Gauge.builder("customer.password.threads", executor, ThreadPoolExecutor::getMaximumPoolSize)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return run(encodeTime, () -> delegate.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return run(matchesTime, () -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    private <T> T run(Timer hashTime, Callable<T> operation) {
+        long enqueuedAt = System.nanoTime();
+        Future<T> result;
+        try {
+            result = executor.submit(() -> {
+                queueWait.record(System.nanoTime() - enqueuedAt, TimeUnit.NANOSECONDS);
+                return hashTime.recordCallable(operation);
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new PasswordHashingOverloadedException(retryAfter);
+        }
+
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for password hashing", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            if (e.getCause() instanceof Error error)
+                throw error;
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
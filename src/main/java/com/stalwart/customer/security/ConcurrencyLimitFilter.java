@@ -0,0 +1,174 @@
+package com.stalwart.customer.security;
+
+import com.stalwart.customer.exceptions.ConcurrencyLimitExceededException;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.core.annotation.Order;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Applies a {@link ConcurrencyLimiter} to each route group: {@code customer} for
+ * {@code /api/customer/**}, {@code auth} for {@code /api/auth/**} and {@code bulk} for import,
+ * export and the batch endpoints, each with its own limit and latency threshold since a login
+ * legitimately takes longer than a lookup, and a bulk request longer still. Runs ahead of
+ * Spring Security so refused requests cost no token verification; they get a 503 with
+ * {@code Retry-After}. Asynchronous requests, such as streamed exports, hold their permit until
+ * the response is complete.
+ */
+@Component
+@Order(SecurityProperties.DEFAULT_FILTER_ORDER - 10)
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    private static final String CUSTOMER_ROUTES = "/api/customer";
+    private static final String AUTH_ROUTES = "/api/auth/";
+    private static final List<String> BULK_ROUTES = List.of(
+            CUSTOMER_ROUTES + "/import", CUSTOMER_ROUTES + "/export", CUSTOMER_ROUTES + "/batch");
+
+    private final ConcurrencyLimiter customerLimiter;
+    private final ConcurrencyLimiter authLimiter;
+    private final ConcurrencyLimiter bulkLimiter;
+    private final boolean enabled;
+    private final Duration retryAfter;
+    private final HandlerExceptionResolver handlerExceptionResolver;
+
+    @Autowired
+    public ConcurrencyLimitFilter(@Qualifier("handlerExceptionResolver") HandlerExceptionResolver handlerExceptionResolver,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${customer.concurrency.enabled:true}") boolean enabled,
+                                  @Value("${customer.concurrency.min-limit:4}") int minLimit,
+                                  @Value("${customer.concurrency.retry-after:1s}") Duration retryAfter,
+                                  @Value("${customer.concurrency.customer.initial-limit:50}") int customerInitialLimit,
+                                  @Value("${customer.concurrency.customer.max-limit:200}") int customerMaxLimit,
+                                  @Value("${customer.concurrency.customer.latency-threshold:250ms}") Duration customerLatencyThreshold,
+                                  @Value("${customer.concurrency.auth.initial-limit:20}") int authInitialLimit,
+                                  @Value("${customer.concurrency.auth.max-limit:100}") int authMaxLimit,
+                                  @Value("${customer.concurrency.auth.latency-threshold:1s}") Duration authLatencyThreshold,
+                                  @Value("${customer.concurrency.bulk.initial-limit:8}") int bulkInitialLimit,
+                                  @Value("${customer.concurrency.bulk.max-limit:16}") int bulkMaxLimit,
+                                  @Value("${customer.concurrency.bulk.latency-threshold:30s}") Duration bulkLatencyThreshold) {
+        this(handlerExceptionResolver, enabled, retryAfter,
+                new ConcurrencyLimiter("customer", meterRegistry,
+                        customerInitialLimit, minLimit, customerMaxLimit, customerLatencyThreshold),
+                new ConcurrencyLimiter("auth", meterRegistry,
+                        authInitialLimit, minLimit, authMaxLimit, authLatencyThreshold),
+                new ConcurrencyLimiter("bulk", meterRegistry,
+                        bulkInitialLimit, minLimit, bulkMaxLimit, bulkLatencyThreshold));
+    }
+
+    ConcurrencyLimitFilter(HandlerExceptionResolver handlerExceptionResolver,
+                           boolean enabled,
+                           Duration retryAfter,
+                           ConcurrencyLimiter customerLimiter,
+                           ConcurrencyLimiter authLimiter,
+                           ConcurrencyLimiter bulkLimiter) {
+        this.handlerExceptionResolver = handlerExceptionResolver;
+        this.enabled = enabled;
+        this.retryAfter = retryAfter;
+        this.customerLimiter = customerLimiter;
+        this.authLimiter = authLimiter;
+        this.bulkLimiter = bulkLimiter;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        return !enabled || limiterFor(request.getRequestURI()) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(
+            @NonNull HttpServletRequest request,
+            @NonNull HttpServletResponse response,
+            @NonNull FilterChain filterChain
+    ) throws ServletException, IOException {
+        ConcurrencyLimiter limiter = limiterFor(request.getRequestURI());
+        if (!limiter.tryAcquire()) {
+            handlerExceptionResolver.resolveException(request, response, null,
+                    new ConcurrencyLimitExceededException(retryAfter));
+            return;
+        }
+        long start = System.nanoTime();
+        boolean async = false;
+        try {
+            filterChain.doFilter(request, response);
+            if (request.isAsyncStarted()) {
+                // a streamed response (e.g. an export) is still being written, keep the permit
+                request.getAsyncContext().addListener(new ReleaseOnCompletion(limiter, start));
+                async = true;
+            }
+        } finally {
+            if (!async)
+                limiter.release(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Releases the permit of an asynchronous request once its response is complete, failed or
+     * timed out, counting the whole time since the request arrived.
+     */
+    private static final class ReleaseOnCompletion implements AsyncListener {
+
+        private final ConcurrencyLimiter limiter;
+        private final long start;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        ReleaseOnCompletion(ConcurrencyLimiter limiter, long start) {
+            this.limiter = limiter;
+            this.start = start;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // listeners are dropped when async processing restarts
+            event.getAsyncContext().addListener(this);
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true))
+                limiter.release(System.nanoTime() - start);
+        }
+    }
+
+    private ConcurrencyLimiter limiterFor(String uri) {
+        if (uri.startsWith(AUTH_ROUTES))
+            return authLimiter;
+        for (String route : BULK_ROUTES) {
+            if (uri.equals(route) || uri.startsWith(route + "/"))
+                return bulkLimiter;
+        }
+        if (uri.equals(CUSTOMER_ROUTES) || uri.startsWith(CUSTOMER_ROUTES + "/"))
+            return customerLimiter;
+        return null;
+    }
+}
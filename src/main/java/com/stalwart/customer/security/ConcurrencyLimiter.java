@@ -0,0 +1,99 @@
+package com.stalwart.customer.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Caps in-flight requests with a limit that follows observed latency (AIMD).
+ * <p>
+ * A request that finishes within the latency threshold while the group is at least half busy
+ * raises the limit by {@code 1/limit}, so it grows by about one per round trip; a slower
+ * request cuts it by {@link #BACKOFF_RATIO}, at most once per latency threshold, since one
+ * stall makes every request in flight slow at the same time and they should count as a single
+ * congestion signal. When the database slows down the limit shrinks
+ * until the requests that are admitted complete in time, and the rest are refused at once
+ * instead of queueing on request threads and connections.
+ * <p>
+ * Publishes {@code customer.concurrency.limit}, {@code customer.concurrency.in-flight} and
+ * {@code customer.concurrency.rejected}, tagged by group.
+ */
+class ConcurrencyLimiter {
+
+    static final double BACKOFF_RATIO = 0.9;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final long latencyThresholdNanos;
+    private final int minLimit;
+    private final int maxLimit;
+    private final Counter rejected;
+    private volatile double limit;
+    private boolean backedOff;
+    private long lastBackoffNanos;
+
+    ConcurrencyLimiter(String group,
+                       MeterRegistry meterRegistry,
+                       int initialLimit,
+                       int minLimit,
+                       int maxLimit,
+                       Duration latencyThreshold) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = latencyThreshold.toNanos();
+        Gauge.builder("customer.concurrency.limit", this, ConcurrencyLimiter::getLimit)
+                .tag("group", group)
+                .register(meterRegistry);
+        Gauge.builder("customer.concurrency.in-flight", inFlight, AtomicInteger::get)
+                .tag("group", group)
+                .register(meterRegistry);
+        this.rejected = Counter.builder("customer.concurrency.rejected")
+                .tag("group", group)
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return false when the group is at its limit; otherwise the caller must call
+     * {@link #release(long)} when done
+     */
+    boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                rejected.increment();
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1))
+                return true;
+        }
+    }
+
+    void release(long latencyNanos) {
+        release(latencyNanos, System.nanoTime());
+    }
+
+    void release(long latencyNanos, long nowNanos) {
+        int current = inFlight.getAndDecrement();
+        synchronized (this) {
+            if (latencyNanos > latencyThresholdNanos) {
+                if (!backedOff || nowNanos - lastBackoffNanos >= latencyThresholdNanos) {
+                    limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+                    backedOff = true;
+                    lastBackoffNanos = nowNanos;
+                }
+            } else if (current * 2 >= limit)
+                limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    int getLimit() {
+        return (int) limit;
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+}
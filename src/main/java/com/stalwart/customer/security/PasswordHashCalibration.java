@@ -0,0 +1,62 @@
+package com.stalwart.customer.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+
+/**
+ * Picks the bcrypt strength that makes one verification take about a target time on the
+ * machine the application starts on. The strength never goes below the bcrypt default, so a
+ * slow or busy startup cannot weaken new hashes.
+ * <p>
+ * Only bcrypt is calibrated: its hashes record their own cost, while PBKDF2 hashes are
+ * verified with the configured iteration count, so that one has to stay fixed.
+ */
+final class PasswordHashCalibration {
+
+    private static final Logger log = LoggerFactory.getLogger(PasswordHashCalibration.class);
+
+    static final int MIN_BCRYPT_STRENGTH = 10;
+    static final int MAX_BCRYPT_STRENGTH = 31;
+    private static final String PROBE_PASSWORD = "calibration-probe";
+    private static final long MEASURABLE_NANOS = Duration.ofMillis(10).toNanos();
+
+    private PasswordHashCalibration() {
+    }
+
+    /**
+     * Strengths are measured only until one verification takes long enough to time reliably;
+     * each further step doubles the cost, so the rest is predicted. Calibration therefore costs
+     * a few times {@link #MEASURABLE_NANOS}, whatever the target.
+     */
+    static int bcryptStrength(Duration target) {
+        int strength = 4;
+        long nanos = verifyNanos(new BCryptPasswordEncoder(strength));
+        while (strength < MAX_BCRYPT_STRENGTH && nanos < MEASURABLE_NANOS && nanos * 2 <= target.toNanos()) {
+            strength++;
+            nanos = verifyNanos(new BCryptPasswordEncoder(strength));
+        }
+        while (strength < MAX_BCRYPT_STRENGTH && nanos * 2 <= target.toNanos()) {
+            strength++;
+            nanos *= 2;
+        }
+        int chosen = Math.max(strength, MIN_BCRYPT_STRENGTH);
+        log.info("Calibrated bcrypt strength {} for a {} ms verify target", chosen, target.toMillis());
+        return chosen;
+    }
+
+    // best of two runs, the first one also warms up the code path
+    private static long verifyNanos(PasswordEncoder encoder) {
+        String hash = encoder.encode(PROBE_PASSWORD);
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 2; i++) {
+            long start = System.nanoTime();
+            encoder.matches(PROBE_PASSWORD, hash);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,226 @@
+package com.stalwart.customer.security;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.stalwart.customer.exceptions.PayloadTooLargeException;
+import com.stalwart.customer.exceptions.RateLimitExceededException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Throttles the unauthenticated auth endpoints per client IP and per target email.
+ * <p>
+ * Login, forgot-password and submit-otp make us hash a password, send mail or check an OTP,
+ * so each gets its own budget for both keys. Rejected requests get a 429 with
+ * {@code Retry-After} and are counted in {@code customer.rate-limit.rejected} by route and
+ * key. The client IP is the remote address, so deployments behind a proxy need
+ * {@code server.forward-headers-strategy} set for it to be the real client.
+ * <p>
+ * Bodies are buffered to find the email, so they are capped at
+ * {@code customer.rate-limit.max-body-size} bytes; larger requests get a 413.
+ */
+@Component
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private static final Map<String, Route> ROUTES = Map.of(
+            "/api/auth/login", new Route("login", "username"),
+            "/api/auth/forgot-password", new Route("forgot-password", null),
+            "/api/auth/submit-otp", new Route("submit-otp", "email"));
+
+    private final RateLimiter ipLimiter;
+    private final RateLimiter emailLimiter;
+    private final boolean enabled;
+    private final int maxBodySize;
+    private final ObjectMapper objectMapper;
+    private final HandlerExceptionResolver handlerExceptionResolver;
+    private final Map<String, Counter> rejected = new HashMap<>();
+
+    @Autowired
+    public RateLimitFilter(ObjectMapper objectMapper,
+                           @Qualifier("handlerExceptionResolver") HandlerExceptionResolver handlerExceptionResolver,
+                           MeterRegistry meterRegistry,
+                           @Value("${customer.rate-limit.enabled:true}") boolean enabled,
+                           @Value("${customer.rate-limit.ip.requests-per-minute:60}") int ipPerMinute,
+                           @Value("${customer.rate-limit.ip.burst:20}") int ipBurst,
+                           @Value("${customer.rate-limit.email.requests-per-minute:6}") int emailPerMinute,
+                           @Value("${customer.rate-limit.email.burst:5}") int emailBurst,
+                           @Value("${customer.rate-limit.maximum-size:100000}") long maximumSize,
+                           @Value("${customer.rate-limit.max-body-size:4096}") int maxBodySize) {
+        this(objectMapper, handlerExceptionResolver, meterRegistry, enabled, maxBodySize,
+                new RateLimiter(ipPerMinute, ipBurst, maximumSize, Ticker.systemTicker()),
+                new RateLimiter(emailPerMinute, emailBurst, maximumSize, Ticker.systemTicker()));
+    }
+
+    RateLimitFilter(ObjectMapper objectMapper,
+                    HandlerExceptionResolver handlerExceptionResolver,
+                    MeterRegistry meterRegistry,
+                    boolean enabled,
+                    int maxBodySize,
+                    RateLimiter ipLimiter,
+                    RateLimiter emailLimiter) {
+        this.objectMapper = objectMapper;
+        this.handlerExceptionResolver = handlerExceptionResolver;
+        this.enabled = enabled;
+        this.maxBodySize = maxBodySize;
+        this.ipLimiter = ipLimiter;
+        this.emailLimiter = emailLimiter;
+        for (Route route : ROUTES.values()) {
+            for (String key : new String[]{"ip", "email"}) {
+                rejected.put(route.name() + ':' + key, Counter.builder("customer.rate-limit.rejected")
+                        .tag("route", route.name())
+                        .tag("key", key)
+                        .register(meterRegistry));
+            }
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        return !enabled || !"POST".equals(request.getMethod()) || !ROUTES.containsKey(request.getRequestURI());
+    }
+
+    @Override
+    protected void doFilterInternal(
+            @NonNull HttpServletRequest request,
+            @NonNull HttpServletResponse response,
+            @NonNull FilterChain filterChain
+    ) throws ServletException, IOException {
+        Route route = ROUTES.get(request.getRequestURI());
+
+        Duration wait = ipLimiter.tryAcquire(route.name() + ':' + request.getRemoteAddr());
+        if (!wait.isZero()) {
+            reject(route, "ip", wait, request, response);
+            return;
+        }
+
+        HttpServletRequest forwarded = request;
+        String email;
+        if (route.bodyField() == null) {
+            email = request.getParameter("email");
+        } else {
+            CachedBodyRequest cached = CachedBodyRequest.read(request, maxBodySize);
+            if (cached == null) {
+                handlerExceptionResolver.resolveException(request, response, null, new PayloadTooLargeException(maxBodySize));
+                return;
+            }
+            forwarded = cached;
+            email = readField(cached.body, route.bodyField());
+        }
+
+        if (email != null) {
+            wait = emailLimiter.tryAcquire(route.name() + ':' + email.trim().toLowerCase(Locale.ROOT));
+            if (!wait.isZero()) {
+                reject(route, "email", wait, request, response);
+                return;
+            }
+        }
+        filterChain.doFilter(forwarded, response);
+    }
+
+    private void reject(Route route, String key, Duration wait,
+                        HttpServletRequest request, HttpServletResponse response) {
+        rejected.get(route.name() + ':' + key).increment();
+        handlerExceptionResolver.resolveException(request, response, null, new RateLimitExceededException(wait));
+    }
+
+    private String readField(byte[] body, String field) {
+        try {
+            JsonNode value = objectMapper.readTree(body).get(field);
+            return value != null && value.isTextual() ? value.asText() : null;
+        } catch (IOException e) {
+            // malformed bodies are left for the controller to reject
+            return null;
+        }
+    }
+
+    private record Route(String name, String bodyField) {
+    }
+
+    /**
+     * Buffers the (small) JSON body so it can be read here and again by the controller.
+     */
+    private static class CachedBodyRequest extends HttpServletRequestWrapper {
+
+        private final byte[] body;
+
+        private CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        /**
+         * @return null when the body is longer than {@code maxBytes}, whether declared or sent
+         */
+        static CachedBodyRequest read(HttpServletRequest request, int maxBytes) throws IOException {
+            if (request.getContentLengthLong() > maxBytes)
+                return null;
+            // the declared length may be missing (chunked) or wrong, so never read past the cap
+            byte[] body = request.getInputStream().readNBytes(maxBytes + 1);
+            return body.length > maxBytes ? null : new CachedBodyRequest(request, body);
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return in.read(b, off, len);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            String encoding = getCharacterEncoding();
+            Charset charset = encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+            return new BufferedReader(new InputStreamReader(getInputStream(), charset));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.stalwart.customer.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket per key, kept as a single theoretical arrival time (GCRA).
+ * <p>
+ * Each key holds one {@link AtomicLong} updated by compare-and-set, so callers never lock and
+ * contend only with requests for the same key; the keys live in a Caffeine cache, whose
+ * striped buffers keep lookups concurrent. A key idle for longer than a full burst has refilled
+ * its bucket, so it is evicted then, and the cache never holds more than
+ * {@code maximumSize} keys.
+ */
+class RateLimiter {
+
+    private final Ticker ticker;
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final Cache<String, AtomicLong> arrivals;
+
+    /**
+     * @param permitsPerMinute sustained rate
+     * @param burst            requests allowed back to back once the key has been idle
+     */
+    RateLimiter(int permitsPerMinute, int burst, long maximumSize, Ticker ticker) {
+        this.ticker = ticker;
+        this.intervalNanos = Duration.ofMinutes(1).toNanos() / permitsPerMinute;
+        this.toleranceNanos = intervalNanos * burst;
+        this.arrivals = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterAccess(Duration.ofNanos(toleranceNanos))
+                .ticker(ticker)
+                .build();
+    }
+
+    /**
+     * @return {@link Duration#ZERO} when the request may proceed, otherwise how long until it
+     * would
+     */
+    Duration tryAcquire(String key) {
+        long now = ticker.read();
+        AtomicLong arrival = arrivals.get(key, k -> new AtomicLong(now));
+        while (true) {
+            long current = arrival.get();
+            long next = Math.max(current, now) + intervalNanos;
+            long wait = next - now - toleranceNanos;
+            if (wait > 0)
+                return Duration.ofNanos(wait);
+            if (arrival.compareAndSet(current, next))
+                return Duration.ZERO;
+        }
+    }
+}
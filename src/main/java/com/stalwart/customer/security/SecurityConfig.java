@@ -1,20 +1,73 @@
 package com.stalwart.customer.security;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.crypto.password.Pbkdf2PasswordEncoder;
+
+import java.time.Duration;
+import java.util.Map;
+
 @Configuration
 public class SecurityConfig {
 
+    /**
+     * The plain encoder, for callers that already hash on their own bounded pool.
+     * <p>
+     * New hashes use {@code customer.password.algorithm} (bcrypt or pbkdf2) and carry an
+     * {@code {id}} prefix; hashes stored before prefixes were used are bcrypt. A bcrypt strength
+     * of 0 means calibrate for {@code customer.password.target-verify-time} at startup. Stale
+     * hashes are upgraded on the next successful login.
+     */
     @Bean
-    public PasswordEncoder passwordEncoder(){
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder hashingPasswordEncoder(
+            @Value("${customer.password.algorithm:bcrypt}") String algorithm,
+            @Value("${customer.password.target-verify-time:100ms}") Duration targetVerifyTime,
+            @Value("${customer.password.bcrypt-strength:0}") int bcryptStrength,
+            @Value("${customer.password.pbkdf2-iterations:310000}") int pbkdf2Iterations
+    ){
+        int strength = bcryptStrength > 0 || !"bcrypt".equals(algorithm)
+                ? Math.max(bcryptStrength, PasswordHashCalibration.MIN_BCRYPT_STRENGTH)
+                : PasswordHashCalibration.bcryptStrength(targetVerifyTime);
+        BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder(strength);
+
+        Map<String, PasswordEncoder> encoders = Map.of(
+                "bcrypt", bcrypt,
+                "pbkdf2", new Pbkdf2PasswordEncoder("", 16, pbkdf2Iterations,
+                        Pbkdf2PasswordEncoder.SecretKeyFactoryAlgorithm.PBKDF2WithHmacSHA256)
+        );
+        if(!encoders.containsKey(algorithm))
+            throw new IllegalArgumentException("Unknown customer.password.algorithm %s, expected one of %s"
+                    .formatted(algorithm, encoders.keySet()));
+
+        DelegatingPasswordEncoder passwordEncoder = new DelegatingPasswordEncoder(algorithm, encoders);
+        passwordEncoder.setDefaultPasswordEncoderForMatches(bcrypt);
+        return passwordEncoder;
+    }
+
+    @Bean
+    @Primary
+    public PasswordEncoder passwordEncoder(
+            @Qualifier("hashingPasswordEncoder") PasswordEncoder hashingPasswordEncoder,
+            MeterRegistry meterRegistry,
+            @Value("${customer.password.threads:0}") int threads,
+            @Value("${customer.password.queue-capacity:64}") int queueCapacity,
+            @Value("${customer.password.retry-after:1s}") Duration retryAfter
+    ){
+        return new AdmissionControlledPasswordEncoder(
+                hashingPasswordEncoder, meterRegistry, threads, queueCapacity, retryAfter);
     }
 
     @Bean
@@ -27,11 +80,13 @@ public class SecurityConfig {
     @Bean
     public AuthenticationProvider authenticationProvider(
             UserDetailsService userDetailsService,
+            UserDetailsPasswordService userDetailsPasswordService,
             PasswordEncoder passwordEncoder
     ){
         DaoAuthenticationProvider daoAuthenticationProvider = new DaoAuthenticationProvider();
         daoAuthenticationProvider.setPasswordEncoder(passwordEncoder);
         daoAuthenticationProvider.setUserDetailsService(userDetailsService);
+        daoAuthenticationProvider.setUserDetailsPasswordService(userDetailsPasswordService);
         return daoAuthenticationProvider;
 
     }
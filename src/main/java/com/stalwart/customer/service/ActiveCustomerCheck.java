@@ -0,0 +1,67 @@
+package com.stalwart.customer.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.stalwart.customer.dao.CustomerDao;
+import com.stalwart.customer.model.CustomerChangeEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Tells the claims-only authentication mode whether the subject of a token still exists.
+ * <p>
+ * Answers are remembered for {@code jwt.claims-only.recheck-interval}, which bounds how long a
+ * deleted customer can keep using a token. Deletes seen by {@link CustomerChangeListener}
+ * drop the answer straight away; an email change only reaches the old email once its entry
+ * expires, since the change event carries the new email.
+ */
+@Component
+public class ActiveCustomerCheck implements CustomerChangeSubscriber {
+
+    private final CustomerDao customerDao;
+    private final Cache<String, Boolean> activeByEmail;
+
+    public ActiveCustomerCheck(CustomerDao customerDao,
+                               MeterRegistry meterRegistry,
+                               @Value("${jwt.claims-only.recheck-interval:30s}") Duration recheckInterval,
+                               @Value("${jwt.claims-only.maximum-size:10000}") long maximumSize) {
+        this.customerDao = customerDao;
+        this.activeByEmail = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(recheckInterval)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, activeByEmail, "customer.active");
+    }
+
+    public boolean isActive(String email) {
+        Boolean active = activeByEmail.getIfPresent(email);
+        if (active != null)
+            return active;
+        // loaded outside the cache's compute, which would hold a monitor across the query and
+        // pin a virtual thread; a load racing a delete can cache a stale answer, which the
+        // recheck interval still bounds
+        active = customerDao.existsWithEmail(email);
+        activeByEmail.put(email, active);
+        return active;
+    }
+
+    public void invalidate(String email) {
+        activeByEmail.invalidate(email);
+    }
+
+    @Override
+    public void onCustomerChange(CustomerChangeEvent event) {
+        // inserts matter too: a cached "no" must not outlive a new registration
+        activeByEmail.invalidate(event.email());
+    }
+
+    @Override
+    public void onResync() {
+        activeByEmail.invalidateAll();
+    }
+}
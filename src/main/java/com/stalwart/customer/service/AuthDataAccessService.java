@@ -1,13 +1,10 @@
 package com.stalwart.customer.service;
 
 import com.stalwart.customer.dao.AuthenticationDao;
-import com.stalwart.customer.dao.CustomerDao;
-import com.stalwart.customer.mapper.OTPRowMapper;
-import com.stalwart.customer.model.OTPObject;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
-import java.util.Optional;
+import java.time.Duration;
 
 
 @Service
@@ -16,29 +13,40 @@ public class AuthDataAccessService implements AuthenticationDao {
 
     public final JdbcTemplate jdbcTemplate;
 
-    public final OTPRowMapper otpRowMapper;
-
-    public AuthDataAccessService(JdbcTemplate jdbcTemplate, OTPRowMapper otpRowMapper, CustomerDao customerDao) {
+    public AuthDataAccessService(JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
-        this.otpRowMapper = otpRowMapper;
     }
 
     @Override
-    public void storeOTP(String email, String otp) {
+    public void storeOTP(String email, String otp, Duration ttl) {
+        String storeQuery = "insert into otp_details(email,otp,insert_ts,exp_ts) " +
+                "values(?,?,now(),now() + ? * interval '1 millisecond') " +
+                "on conflict (email) do update set otp = excluded.otp, insert_ts = excluded.insert_ts, exp_ts = excluded.exp_ts";
+        jdbcTemplate.update(storeQuery, email, otp, ttl.toMillis());
+    }
 
-        //delete previously stored otp
-        String deleteQuery = "delete from otp_details where email = ?";
-        jdbcTemplate.update(deleteQuery, email);
+    @Override
+    public boolean consumeOTP(String email, String otp) {
+        String consumeQuery = "delete from otp_details where email = ? and otp = ? and exp_ts > now() returning email";
+        return !jdbcTemplate.queryForList(consumeQuery, String.class, email, otp).isEmpty();
+    }
 
-        String storeQuery = "insert into otp_details(email,otp,insert_ts,exp_ts) values(?,?,?,?)";
-        long ts = System.currentTimeMillis();
-        jdbcTemplate.update(storeQuery, email, otp, ts , ts+30000);
+    @Override
+    public int deleteExpiredOTPs(int limit) {
+        // skip locked lets several nodes sweep at once without waiting on each other
+        String deleteQuery = "delete from otp_details where email in (" +
+                "select email from otp_details where exp_ts <= now() limit ? for update skip locked)";
+        return jdbcTemplate.update(deleteQuery, limit);
     }
 
     @Override
-    public Optional<OTPObject> validateOTP(String email, String otp, long ts) {
-        String selectQuery = "select * from otp_details where email=? and otp=?";
-        Optional<OTPObject> otpObject = jdbcTemplate.query(selectQuery,otpRowMapper,email,otp).stream().findFirst();
-        return otpObject;
+    public void setOTPTableUnlogged(boolean unlogged) {
+        String persistenceQuery = "select relpersistence from pg_class where oid = 'otp_details'::regclass";
+        String persistence = jdbcTemplate.queryForObject(persistenceQuery, String.class);
+        // the table is rewritten under an exclusive lock, so only alter it when it changes
+        if(unlogged && "p".equals(persistence))
+            jdbcTemplate.execute("alter table otp_details set unlogged");
+        else if(!unlogged && "u".equals(persistence))
+            jdbcTemplate.execute("alter table otp_details set logged");
     }
 }
@@ -2,18 +2,31 @@ package com.stalwart.customer.service;
 
 import com.stalwart.customer.dao.AuthenticationDao;
 import com.stalwart.customer.dao.CustomerDao;
+import com.stalwart.customer.dao.OutboxDao;
 import com.stalwart.customer.exceptions.UserNotFoundException;
 import com.stalwart.customer.jwt.JWTUtil;
 import com.stalwart.customer.mapper.CustomerDTOMapper;
 import com.stalwart.customer.model.*;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.security.SecureRandom;
+import java.time.Duration;
 
 @Service
 public class AuthService {
 
+    private static final String MEMORY_MODE = "memory";
+    private static final String DATABASE_MODE = "database";
+    private static final String HMAC_MODE = "hmac";
+    private static final String OTP_CHARACTERS = "0123456789";
+    private static final int OTP_LENGTH = 6;
+    private static final String OTP_EMAIL_SUBJECT = "OTP for Password Reset";
+
     private final AuthenticationManager authenticationManager;
     private final CustomerDTOMapper customerDTOMapper;
 
@@ -25,13 +38,43 @@ public class AuthService {
 
     private final OTPService otpService;
 
-    public AuthService(AuthenticationManager authenticationManager, CustomerDTOMapper customerDTOMapper, JWTUtil jwtUtil, AuthenticationDao authenticationDao, CustomerDao customerDao, OTPService otpService) {
+    private final HmacOTPService hmacOTPService;
+
+    private final OutboxDao outboxDao;
+
+    private final String otpMode;
+
+    private final Duration otpTtl;
+
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * @param otpMode where issued codes live: {@code database} (default) works across nodes
+     *                and restarts, {@code memory} needs no database writes but only suits a
+     *                single node, {@code hmac} derives codes instead of storing them
+     */
+    public AuthService(AuthenticationManager authenticationManager,
+                       CustomerDTOMapper customerDTOMapper,
+                       JWTUtil jwtUtil,
+                       AuthenticationDao authenticationDao,
+                       CustomerDao customerDao,
+                       OTPService otpService,
+                       HmacOTPService hmacOTPService,
+                       OutboxDao outboxDao,
+                       @Value("${customer.otp.mode:database}") String otpMode,
+                       @Value("${customer.otp.ttl:30s}") Duration otpTtl) {
+        if(!MEMORY_MODE.equals(otpMode) && !DATABASE_MODE.equals(otpMode) && !HMAC_MODE.equals(otpMode))
+            throw new IllegalArgumentException("Unknown customer.otp.mode %s".formatted(otpMode));
         this.authenticationManager = authenticationManager;
         this.customerDTOMapper = customerDTOMapper;
         this.jwtUtil = jwtUtil;
         this.authenticationDao = authenticationDao;
         this.customerDao = customerDao;
         this.otpService = otpService;
+        this.hmacOTPService = hmacOTPService;
+        this.outboxDao = outboxDao;
+        this.otpMode = otpMode;
+        this.otpTtl = otpTtl;
     }
 
 
@@ -44,36 +87,59 @@ public class AuthService {
         );
        Customer principal = (Customer) authentication.getPrincipal();
        CustomerDTO customer = customerDTOMapper.apply(principal);
-       String jwtToken = jwtUtil.issueToken(customer.getUsername(), customer.getRoles());
+       String jwtToken = jwtUtil.issueToken(customer.getUsername(), customer.getId(), customer.getRoles());
        return new AuthenticationResponse(jwtToken,customer);
     }
 
-    public void storeOtp(String email, String otp) {
-
-        otpService.storeOtp(email,otp);
-        boolean isCustomerPresent = customerDao.existsWithEmail(email);
+    /**
+     * Issues a code and queues its email in the same transaction; {@link OTPEmailDispatcher}
+     * sends it shortly after. In HMAC mode the outbox insert is the only write.
+     */
+    @Transactional
+    public void issueOtp(String email) {
+        String otp;
+        Duration validity = otpTtl;
+
+        if(HMAC_MODE.equals(otpMode)) {
+            Customer customer = customerDao.getCustomerCredentialsByEmail(email)
+                    .orElseThrow(() -> new UserNotFoundException("user not found with email %s".formatted(email)));
+            otp = hmacOTPService.generate(email, customer.getPassword(), System.currentTimeMillis());
+            validity = hmacOTPService.validity();
+        } else {
+            boolean isCustomerPresent = customerDao.existsWithEmail(email);
+
+            if(!isCustomerPresent)
+                throw new UserNotFoundException("user not found with email %s".formatted(email));
+
+            otp = generateRandomOTP();
+            if(MEMORY_MODE.equals(otpMode))
+                otpService.storeOtp(email, otp);
+            else
+                authenticationDao.storeOTP(email, otp, otpTtl);
+        }
 
-        if(isCustomerPresent)
-            authenticationDao.storeOTP(email, otp);
-        else
-            throw new UserNotFoundException("user not found with email %s".formatted(email));
+        outboxDao.enqueue(email, OTP_EMAIL_SUBJECT,
+                "Your OTP is: " + otp + "\n OTP will expire within " + validity.toSeconds() + " seconds.");
     }
 
+    /**
+     * Checks and consumes the code; a code is accepted at most once.
+     */
     public boolean validateOTP(String email, String otp, long ts) {
+        if(MEMORY_MODE.equals(otpMode))
+            return otpService.validateOtp(email, otp, ts);
+        if(HMAC_MODE.equals(otpMode))
+            return customerDao.getCustomerCredentialsByEmail(email)
+                    .map(customer -> hmacOTPService.verify(email, customer.getPassword(), otp, ts))
+                    .orElse(false);
+        // expiry is checked against the database clock
+        return authenticationDao.consumeOTP(email, otp);
+    }
 
-        OTPObject otpObject = authenticationDao.validateOTP(email, otp, ts).get();
-
-        if(otpService.validateOtp(email,otp,ts)) {
-            return true;
-        }
-
-        if(otpObject.getEmail()!=null &&
-                otpObject.getEmail().equals(email) &&
-                otpObject.getOtp()!=null &&
-                otpObject.getOtp().equals(otp) ) {
-
-            return otpObject.getExpTs() >= ts;
-        }
-        return false;
+    private String generateRandomOTP() {
+        StringBuilder otp = new StringBuilder(OTP_LENGTH);
+        for (int i = 0; i < OTP_LENGTH; i++)
+            otp.append(OTP_CHARACTERS.charAt(random.nextInt(OTP_CHARACTERS.length())));
+        return otp.toString();
     }
 }
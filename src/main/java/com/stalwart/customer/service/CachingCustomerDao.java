@@ -0,0 +1,396 @@
+package com.stalwart.customer.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.stalwart.customer.dao.CustomerDao;
+import com.stalwart.customer.mapper.CustomerDTOMapper;
+import com.stalwart.customer.model.Customer;
+import com.stalwart.customer.model.CustomerDTO;
+import com.stalwart.customer.model.CustomerChangeEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through cache in front of {@link CustomerDataAccessService}.
+ * <p>
+ * Customers are cached by id; the email cache only maps an email to an id and a hit is
+ * accepted only when the cached customer still carries that email, so writes never need to
+ * know the previous email of a row. Every write bumps a generation counter and loads that
+ * started before a write are not cached, which keeps a slow read from re-inserting a row
+ * that a concurrent write has just invalidated. Writes made by other nodes arrive through
+ * {@link CustomerChangeListener}. Existence probes for emails that are definitely not
+ * registered are answered by the {@link EmailBloomFilter} without touching the cache or the
+ * database. Lookups that return a customer (login, email lookups) never consult it, since a
+ * registration on another node reaches the local filter only with its change notification.
+ * <p>
+ * Single-customer projections are answered from the cached full row, so a miss loads and
+ * caches the whole customer once rather than querying the projection on every request; list
+ * projections are not cached and go straight to the delegate. Batch lookups take what they can
+ * from the cache and send only the misses to the delegate, in one query, without caching them.
+ * <p>
+ * Writes may run inside a transaction (a patch, a batch), where other requests keep reading
+ * and caching the old rows until it commits and where a rollback must leave no emails in the
+ * Bloom filter. There the ids are invalidated again once the transaction completes and the
+ * emails are only recorded after the commit, which a concurrent Bloom rebuild cannot miss
+ * because it registers its new filter before it takes its snapshot.
+ */
+@Service
+@Primary
+@ConditionalOnProperty(name = "customer.cache.enabled", havingValue = "true", matchIfMissing = true)
+public class CachingCustomerDao implements CustomerDao, CustomerChangeSubscriber {
+
+    private final CustomerDao delegate;
+    private final EmailBloomFilter emailBloomFilter;
+    private final CustomerDTOMapper customerDTOMapper;
+    private final Cache<Integer, Customer> customersById;
+    private final Cache<String, Integer> idsByEmail;
+    private final AtomicLong generation = new AtomicLong();
+
+    public CachingCustomerDao(CustomerDataAccessService delegate,
+                              EmailBloomFilter emailBloomFilter,
+                              CustomerDTOMapper customerDTOMapper,
+                              MeterRegistry meterRegistry,
+                              @Value("${customer.cache.maximum-size:10000}") long maximumSize,
+                              @Value("${customer.cache.ttl:5m}") Duration ttl) {
+        this.delegate = delegate;
+        this.emailBloomFilter = emailBloomFilter;
+        this.customerDTOMapper = customerDTOMapper;
+        this.customersById = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.idsByEmail = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, customersById, "customer.by-id");
+        CaffeineCacheMetrics.monitor(meterRegistry, idsByEmail, "customer.by-email");
+    }
+
+    @Override
+    public List<Customer> getAllCustomers() {
+        return delegate.getAllCustomers();
+    }
+
+    @Override
+    public List<Customer> getCustomersAfterId(int afterId, int limit) {
+        return delegate.getCustomersAfterId(afterId, limit);
+    }
+
+    @Override
+    public Optional<Customer> getCustomerById(int id) {
+        Customer cached = customersById.getIfPresent(id);
+        if (cached != null)
+            return Optional.of(copy(cached));
+
+        long loadGeneration = generation.get();
+        Optional<Customer> customer = delegate.getCustomerById(id);
+        customer.ifPresent(c -> cache(c, loadGeneration));
+        return customer;
+    }
+
+    @Override
+    public Optional<Customer> getCustomerByEmail(String email) {
+        Customer cached = lookupByEmail(email);
+        if (cached != null)
+            return Optional.of(copy(cached));
+
+        long loadGeneration = generation.get();
+        Optional<Customer> customer = delegate.getCustomerByEmail(email);
+        customer.ifPresent(c -> cache(c, loadGeneration));
+        return customer;
+    }
+
+    @Override
+    public Optional<Customer> getCustomerCredentialsByEmail(String email) {
+        return getCustomerByEmail(email);
+    }
+
+    @Override
+    public List<CustomerDTO> getAllCustomerDTOs() {
+        return delegate.getAllCustomerDTOs();
+    }
+
+    @Override
+    public List<CustomerDTO> getCustomerDTOsAfterId(int afterId, int limit) {
+        return delegate.getCustomerDTOsAfterId(afterId, limit);
+    }
+
+    @Override
+    public Optional<CustomerDTO> getCustomerDTOById(int id) {
+        return getCustomerById(id).map(customerDTOMapper);
+    }
+
+    @Override
+    public Optional<CustomerDTO> getCustomerDTOByEmail(String email) {
+        return getCustomerByEmail(email).map(customerDTOMapper);
+    }
+
+    @Override
+    public List<CustomerDTO> getCustomerDTOsByIds(Collection<Integer> ids) {
+        List<CustomerDTO> customers = new ArrayList<>(ids.size());
+        List<Integer> misses = new ArrayList<>();
+        for (Integer id : ids) {
+            Customer cached = customersById.getIfPresent(id);
+            if (cached != null)
+                customers.add(customerDTOMapper.apply(cached));
+            else
+                misses.add(id);
+        }
+        if (!misses.isEmpty())
+            customers.addAll(delegate.getCustomerDTOsByIds(misses));
+        return customers;
+    }
+
+    @Override
+    public List<CustomerDTO> getCustomerDTOsByEmails(Collection<String> emails) {
+        List<CustomerDTO> customers = new ArrayList<>(emails.size());
+        List<String> misses = new ArrayList<>();
+        for (String email : emails) {
+            Customer cached = lookupByEmail(email);
+            if (cached != null)
+                customers.add(customerDTOMapper.apply(cached));
+            else
+                misses.add(email);
+        }
+        if (!misses.isEmpty())
+            customers.addAll(delegate.getCustomerDTOsByEmails(misses));
+        return customers;
+    }
+
+    @Override
+    public boolean deleteCustomerById(int id) {
+        try {
+            return delegate.deleteCustomerById(id);
+        } finally {
+            invalidateAfterWrite(List.of(id));
+        }
+    }
+
+    @Override
+    public Optional<Integer> deleteCustomerByEmail(String email) {
+        Optional<Integer> id = Optional.empty();
+        try {
+            id = delegate.deleteCustomerByEmail(email);
+            return id;
+        } finally {
+            idsByEmail.invalidate(email);
+            invalidateAfterWrite(id.stream().toList());
+        }
+    }
+
+    @Override
+    public boolean addCustomer(Customer customer) {
+        List<String> emails = emailsOf(customer);
+        putBeforeWrite(emails);
+        try {
+            return delegate.addCustomer(customer);
+        } finally {
+            putAfterWrite(emails);
+        }
+    }
+
+    @Override
+    public void updateCustomer(Customer customer) {
+        List<String> emails = emailsOf(customer);
+        putBeforeWrite(emails);
+        try {
+            delegate.updateCustomer(customer);
+        } finally {
+            invalidateAfterWrite(List.of(customer.getId()));
+            putAfterWrite(emails);
+        }
+    }
+
+    @Override
+    public Optional<Customer> updateCustomer(Customer changes, Integer expectedVersion) {
+        List<String> emails = emailsOf(changes);
+        putBeforeWrite(emails);
+        try {
+            return delegate.updateCustomer(changes, expectedVersion);
+        } finally {
+            invalidateAfterWrite(List.of(changes.getId()));
+            putAfterWrite(emails);
+        }
+    }
+
+    @Override
+    public boolean updatePassword(int id, String currentPassword, String newPassword) {
+        try {
+            return delegate.updatePassword(id, currentPassword, newPassword);
+        } finally {
+            invalidateAfterWrite(List.of(id));
+        }
+    }
+
+    @Override
+    public boolean[] addCustomers(List<Customer> customers) {
+        List<String> emails = customers.stream().map(Customer::getEmail).filter(Objects::nonNull).toList();
+        putBeforeWrite(emails);
+        try {
+            return delegate.addCustomers(customers);
+        } finally {
+            putAfterWrite(emails);
+        }
+    }
+
+    @Override
+    public boolean[] updateCustomers(List<Customer> changes) {
+        List<String> emails = changes.stream()
+                .map(Customer::getEmail)
+                .filter(Objects::nonNull)
+                .toList();
+        putBeforeWrite(emails);
+        try {
+            return delegate.updateCustomers(changes);
+        } finally {
+            invalidateAfterWrite(changes.stream().map(Customer::getId).toList());
+            putAfterWrite(emails);
+        }
+    }
+
+    @Override
+    public boolean[] deleteCustomersById(List<Integer> ids) {
+        try {
+            return delegate.deleteCustomersById(ids);
+        } finally {
+            invalidateAfterWrite(ids);
+        }
+    }
+
+    @Override
+    public boolean existsWithEmail(String email) {
+        if (!emailBloomFilter.mightContain(email))
+            return false;
+        return lookupByEmail(email) != null || delegate.existsWithEmail(email);
+    }
+
+    @Override
+    public Set<String> existingEmails(Collection<String> emails) {
+        Set<String> existing = new HashSet<>();
+        List<String> misses = new ArrayList<>();
+        for (String email : emails) {
+            if (!emailBloomFilter.mightContain(email))
+                continue;
+            if (lookupByEmail(email) != null)
+                existing.add(email);
+            else
+                misses.add(email);
+        }
+        if (!misses.isEmpty())
+            existing.addAll(delegate.existingEmails(misses));
+        return existing;
+    }
+
+    @Override
+    public boolean existsCustomerWithId(int id) {
+        return customersById.getIfPresent(id) != null || delegate.existsCustomerWithId(id);
+    }
+
+    /**
+     * Drops the cached customer with the given id.
+     */
+    public void invalidate(int id) {
+        generation.incrementAndGet();
+        customersById.invalidate(id);
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        customersById.invalidateAll();
+        idsByEmail.invalidateAll();
+    }
+
+    @Override
+    public void onCustomerChange(CustomerChangeEvent event) {
+        if (!"INSERT".equals(event.operation()))
+            invalidate(event.id());
+    }
+
+    @Override
+    public void onResync() {
+        invalidateAll();
+    }
+
+    private static List<String> emailsOf(Customer customer) {
+        return customer.getEmail() == null ? List.of() : List.of(customer.getEmail());
+    }
+
+    private void putBeforeWrite(List<String> emails) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive())
+            emails.forEach(emailBloomFilter::put);
+    }
+
+    private void putAfterWrite(List<String> emails) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            emails.forEach(emailBloomFilter::put);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                emails.forEach(emailBloomFilter::put);
+            }
+        });
+    }
+
+    private void invalidateAfterWrite(List<Integer> ids) {
+        ids.forEach(this::invalidate);
+        if (!TransactionSynchronizationManager.isSynchronizationActive())
+            return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                ids.forEach(CachingCustomerDao.this::invalidate);
+            }
+        });
+    }
+
+    private Customer lookupByEmail(String email) {
+        Integer id = idsByEmail.getIfPresent(email);
+        if (id == null)
+            return null;
+        Customer cached = customersById.getIfPresent(id);
+        return cached != null && email.equals(cached.getEmail()) ? cached : null;
+    }
+
+    private void cache(Customer customer, long loadGeneration) {
+        if (generation.get() != loadGeneration)
+            return;
+        customersById.put(customer.getId(), copy(customer));
+        idsByEmail.put(customer.getEmail(), customer.getId());
+        // a write may have slipped in between the check and the puts
+        if (generation.get() != loadGeneration)
+            customersById.invalidate(customer.getId());
+    }
+
+    private static Customer copy(Customer customer) {
+        Customer copy = new Customer(
+                customer.getId(),
+                customer.getName(),
+                customer.getEmail(),
+                customer.getPassword(),
+                customer.getAge(),
+                customer.getGender());
+        copy.setVersion(customer.getVersion());
+        return copy;
+    }
+}
@@ -0,0 +1,93 @@
+package com.stalwart.customer.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal RFC 4180 reader: comma separated, double-quote escaped, quoted fields may span lines.
+ */
+class CsvRecordReader {
+
+    private final Reader reader;
+    private long line = 0;
+    private long recordLine = 0;
+    private int pushedBack = -1;
+
+    CsvRecordReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * @return line number at which the last record returned by {@link #next()} started
+     */
+    long getLine() {
+        return recordLine;
+    }
+
+    List<String> next() throws IOException {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean any = false;
+        line++;
+        recordLine = line;
+        int c;
+        while ((c = read()) != -1) {
+            any = true;
+            if (quoted) {
+                if (c == '"') {
+                    int next = read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        pushedBack = next;
+                    }
+                } else {
+                    if (c == '\n')
+                        line++;
+                    field.append((char) c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\r') {
+                // swallow, handled by the following \n
+            } else if (c == '\n') {
+                break;
+            } else {
+                field.append((char) c);
+            }
+        }
+        if (!any)
+            return null;
+        fields.add(field.toString());
+        return fields;
+    }
+
+    static void appendField(StringBuilder sb, String value) {
+        if (value == null)
+            return;
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch == '"')
+                sb.append('"');
+            sb.append(ch);
+        }
+        sb.append('"');
+    }
+
+    private int read() throws IOException {
+        if (pushedBack != -1) {
+            int c = pushedBack;
+            pushedBack = -1;
+            return c;
+        }
+        return reader.read();
+    }
+}
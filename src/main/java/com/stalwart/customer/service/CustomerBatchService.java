@@ -0,0 +1,280 @@
+package com.stalwart.customer.service;
+
+import com.stalwart.customer.dao.CustomerDao;
+import com.stalwart.customer.exceptions.DefaultExceptionHandler;
+import com.stalwart.customer.exceptions.InvalidRequestException;
+import com.stalwart.customer.exceptions.PasswordHashingOverloadedException;
+import com.stalwart.customer.exceptions.UserAlreadyExistsException;
+import com.stalwart.customer.exceptions.UserNotFoundException;
+import com.stalwart.customer.exceptions.UserNotValidException;
+import com.stalwart.customer.model.Customer;
+import com.stalwart.customer.model.CustomerBatchRequest;
+import com.stalwart.customer.model.CustomerBatchResult;
+import com.stalwart.customer.model.CustomerOperation;
+import com.stalwart.customer.model.CustomerOperationResult;
+import com.stalwart.customer.model.CustomerRegistrationRequest;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs an ordered list of create, update and delete operations in one transaction. Each run of
+ * consecutive operations of the same type goes to the database in one round trip, a JDBC batch
+ * or a multi-row insert for creates; when a batch throws, it is rolled back to its savepoint and replayed one operation at a time so every
+ * operation still gets its own result.
+ * <p>
+ * In {@link CustomerBatchRequest.Mode#ALL_OR_NOTHING} mode the first failing run stops the
+ * batch and everything is rolled back; in {@link CustomerBatchRequest.Mode#BEST_EFFORT} mode
+ * failed operations are skipped and the rest is committed. Passwords are hashed before the
+ * transaction starts so the connection is not held while hashing, on a small pool shared by all
+ * batches ({@code customer.batch.hash-parallelism}) so a large batch neither hashes one password
+ * at a time nor floods the password encoder's queue. A create whose hash is shed by the encoder
+ * fails on its own with 503.
+ */
+@Service
+public class CustomerBatchService {
+
+    private static final Logger log = LoggerFactory.getLogger(CustomerBatchService.class);
+
+    private final CustomerDao customerDao;
+    private final PasswordEncoder passwordEncoder;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxOperations;
+    private final ExecutorService hashExecutor;
+
+    public CustomerBatchService(CustomerDao customerDao,
+                                PasswordEncoder passwordEncoder,
+                                PlatformTransactionManager transactionManager,
+                                @Value("${customer.batch.max-operations:1000}") int maxOperations,
+                                @Value("${customer.batch.hash-parallelism:4}") int hashParallelism) {
+        this.customerDao = customerDao;
+        this.passwordEncoder = passwordEncoder;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxOperations = maxOperations;
+        this.hashExecutor = Executors.newFixedThreadPool(hashParallelism, new CustomizableThreadFactory("customer-batch-hash-"));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hashExecutor.shutdownNow();
+    }
+
+    public CustomerBatchResult execute(CustomerBatchRequest request) {
+        List<CustomerOperation> operations = request.operations();
+        if (operations == null || operations.isEmpty())
+            throw new InvalidRequestException("operations should not be empty");
+        if (operations.size() > maxOperations)
+            throw new InvalidRequestException("at most %s operations can be sent in one batch".formatted(maxOperations));
+        boolean atomic = request.mode() != CustomerBatchRequest.Mode.BEST_EFFORT;
+
+        long start = System.nanoTime();
+        CustomerOperationResult[] results = new CustomerOperationResult[operations.size()];
+        List<Step> steps = prepare(operations, results);
+
+        boolean committed = false;
+        if (!atomic || steps.size() == operations.size())
+            committed = Boolean.TRUE.equals(transactionTemplate.execute(status -> run(steps, results, atomic, status)));
+        if (!committed) {
+            for (int i = 0; i < results.length; i++)
+                if (results[i] == null || results[i].error() == null)
+                    results[i] = new CustomerOperationResult(i, operations.get(i).type(), null,
+                            HttpStatus.FAILED_DEPENDENCY.value(), "Not applied, the batch was rolled back");
+        }
+
+        long applied = Arrays.stream(results).filter(result -> result.error() == null).count();
+        return new CustomerBatchResult(
+                committed,
+                applied,
+                results.length - applied,
+                List.of(results),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+        );
+    }
+
+    /**
+     * Validates the operations and hashes the passwords of new customers. Invalid operations
+     * get their result here and are left out of the returned steps.
+     */
+    private List<Step> prepare(List<CustomerOperation> operations, CustomerOperationResult[] results) {
+        List<Step> valid = new ArrayList<>(operations.size());
+        List<CompletableFuture<String>> hashes = new ArrayList<>(operations.size());
+        for (int i = 0; i < operations.size(); i++) {
+            CustomerOperation operation = operations.get(i);
+            Customer customer;
+            try {
+                customer = validate(operation);
+            } catch (UserNotValidException | InvalidRequestException e) {
+                results[i] = failure(i, operation == null ? null : operation.type(), null, e);
+                continue;
+            }
+            valid.add(new Step(i, operation.type(), customer));
+            String password = customer.getPassword();
+            hashes.add(operation.type() == CustomerOperation.Type.CREATE
+                    ? CompletableFuture.supplyAsync(() -> passwordEncoder.encode(password), hashExecutor)
+                    : null);
+        }
+
+        List<Step> steps = new ArrayList<>(valid.size());
+        for (int i = 0; i < valid.size(); i++) {
+            Step step = valid.get(i);
+            if (hashes.get(i) != null) {
+                try {
+                    step.customer().setPassword(hashes.get(i).join());
+                } catch (CompletionException e) {
+                    if (!(e.getCause() instanceof PasswordHashingOverloadedException overloaded))
+                        throw e.getCause() instanceof RuntimeException cause ? cause : e;
+                    results[step.index()] = failure(step.index(), step.type(), null, overloaded);
+                    continue;
+                }
+            }
+            steps.add(step);
+        }
+        return steps;
+    }
+
+    private static Customer validate(CustomerOperation operation) {
+        if (operation == null || operation.type() == null)
+            throw new InvalidRequestException("operation type is required");
+        if (operation.type() != CustomerOperation.Type.CREATE && operation.id() == null)
+            throw new InvalidRequestException("id is required to %s".formatted(operation.type().name().toLowerCase()));
+
+        CustomerRegistrationRequest request = operation.customer();
+        switch (operation.type()) {
+            case CREATE -> {
+                if (request == null)
+                    throw new InvalidRequestException("customer is required to create");
+                CustomerService.validateRegistration(request);
+                if (request.getGender() == null)
+                    throw new UserNotValidException("Gender should not be null");
+                if (request.getPassword() == null)
+                    throw new UserNotValidException("Password should not be null");
+                return new Customer(request);
+            }
+            case UPDATE -> {
+                if (request == null)
+                    throw new InvalidRequestException("customer is required to update");
+                if (request.getAge() < 0)
+                    throw new UserNotValidException("Invalid Age");
+                Customer changes = new Customer(request);
+                changes.setId(operation.id());
+                return changes;
+            }
+            default -> {
+                Customer deleted = new Customer();
+                deleted.setId(operation.id());
+                return deleted;
+            }
+        }
+    }
+
+    private boolean run(List<Step> steps, CustomerOperationResult[] results, boolean atomic, TransactionStatus status) {
+        int from = 0;
+        while (from < steps.size()) {
+            int to = from + 1;
+            while (to < steps.size() && steps.get(to).type() == steps.get(from).type())
+                to++;
+            boolean succeeded = runBatch(steps.subList(from, to), results, status);
+            if (!succeeded && atomic) {
+                status.setRollbackOnly();
+                return false;
+            }
+            from = to;
+        }
+        return true;
+    }
+
+    /**
+     * @return false when any operation of the batch failed
+     */
+    private boolean runBatch(List<Step> batch, CustomerOperationResult[] results, TransactionStatus status) {
+        Object savepoint = status.createSavepoint();
+        boolean[] applied;
+        try {
+            applied = apply(batch);
+        } catch (DataAccessException e) {
+            status.rollbackToSavepoint(savepoint);
+            status.releaseSavepoint(savepoint);
+            if (batch.size() == 1) {
+                Step step = batch.get(0);
+                results[step.index()] = failure(step.index(), step.type(), idOf(step), translate(step, e));
+                return false;
+            }
+            boolean succeeded = true;
+            for (Step step : batch)
+                succeeded &= runBatch(List.of(step), results, status);
+            return succeeded;
+        }
+        status.releaseSavepoint(savepoint);
+
+        boolean succeeded = true;
+        for (int i = 0; i < batch.size(); i++) {
+            Step step = batch.get(i);
+            Integer id = idOf(step);
+            if (applied[i])
+                results[step.index()] = new CustomerOperationResult(step.index(), step.type(), id,
+                        step.type() == CustomerOperation.Type.CREATE ? HttpStatus.CREATED.value() : HttpStatus.OK.value(), null);
+            else
+                results[step.index()] = failure(step.index(), step.type(), id, notApplied(step));
+            succeeded &= applied[i];
+        }
+        return succeeded;
+    }
+
+    private boolean[] apply(List<Step> batch) {
+        List<Customer> customers = batch.stream().map(Step::customer).toList();
+        return switch (batch.get(0).type()) {
+            case CREATE -> customerDao.addCustomers(customers);
+            case UPDATE -> customerDao.updateCustomers(customers);
+            case DELETE -> customerDao.deleteCustomersById(customers.stream().map(Customer::getId).toList());
+        };
+    }
+
+    /**
+     * @return the customer id, null for a create that did not insert a row
+     */
+    private static Integer idOf(Step step) {
+        int id = step.customer().getId();
+        return id == 0 && step.type() == CustomerOperation.Type.CREATE ? null : id;
+    }
+
+    private static RuntimeException notApplied(Step step) {
+        if (step.type() == CustomerOperation.Type.CREATE)
+            return new UserAlreadyExistsException("Given email %s already exists".formatted(step.customer().getEmail()));
+        return new UserNotFoundException("user not found with id %s".formatted(step.customer().getId()));
+    }
+
+    private static RuntimeException translate(Step step, DataAccessException e) {
+        if (e instanceof DuplicateKeyException)
+            return new UserAlreadyExistsException("Given email %s already exists".formatted(step.customer().getEmail()));
+        log.warn("Batch operation {} failed", step.index(), e);
+        return e;
+    }
+
+    private static CustomerOperationResult failure(int index, CustomerOperation.Type type, Integer id, RuntimeException e) {
+        HttpStatus status = DefaultExceptionHandler.statusOf(e);
+        String error = status.is5xxServerError() ? status.getReasonPhrase() : e.getMessage();
+        return new CustomerOperationResult(index, type, id, status.value(), error);
+    }
+
+    private record Step(int index, CustomerOperation.Type type, Customer customer) {
+    }
+}
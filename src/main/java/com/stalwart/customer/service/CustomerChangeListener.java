@@ -0,0 +1,172 @@
+package com.stalwart.customer.service;
+
+import com.stalwart.customer.model.CustomerChangeEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps in-process state coherent across nodes. A dedicated connection (outside the pool)
+ * LISTENs on the channel fed by the {@code customer_change_notify} trigger and forwards every
+ * change to the {@link CustomerChangeSubscriber}s. When the connection drops, subscribers are
+ * told to resync, and again after reconnecting, since notifications sent in between are lost.
+ * Waiting for notifications never touches the socket, so a half-open connection would go
+ * unnoticed; a {@code select 1} every {@code validate-millis} turns it into a reconnect.
+ */
+@Component
+public class CustomerChangeListener implements SmartLifecycle {
+
+    static final String CHANNEL = "customer_change";
+    private static final Logger log = LoggerFactory.getLogger(CustomerChangeListener.class);
+    private static final Duration MAX_BACKOFF = Duration.ofSeconds(30);
+
+    private final DataSourceProperties dataSourceProperties;
+    private final List<CustomerChangeSubscriber> subscribers;
+    private final boolean enabled;
+    private final int pollMillis;
+    private final int validateMillis;
+    private final Timer lag;
+    private final Counter resyncs;
+    private final AtomicBoolean connected = new AtomicBoolean();
+
+    private volatile boolean running;
+    private volatile Thread worker;
+
+    public CustomerChangeListener(DataSourceProperties dataSourceProperties,
+                                  List<CustomerChangeSubscriber> subscribers,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${customer.change-listener.enabled:true}") boolean enabled,
+                                  @Value("${customer.change-listener.poll-millis:500}") int pollMillis,
+                                  @Value("${customer.change-listener.validate-millis:5000}") int validateMillis) {
+        this.dataSourceProperties = dataSourceProperties;
+        this.subscribers = subscribers;
+        this.enabled = enabled;
+        this.pollMillis = pollMillis;
+        this.validateMillis = validateMillis;
+        this.lag = Timer.builder("customer.change.lag")
+                .description("Delay between a customer row change and its local invalidation")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.resyncs = Counter.builder("customer.change.resyncs")
+                .description("Full flushes caused by the change listener losing its connection")
+                .register(meterRegistry);
+        meterRegistry.gauge("customer.change.listener.connected", connected, c -> c.get() ? 1 : 0);
+    }
+
+    @Override
+    public void start() {
+        if (!enabled || subscribers.isEmpty())
+            return;
+        running = true;
+        worker = new Thread(this::listen, "customer-change-listener");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        Thread thread = worker;
+        if (thread != null)
+            thread.interrupt();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    public boolean isConnected() {
+        return connected.get();
+    }
+
+    private void listen() {
+        long backoffMillis = 1000;
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(
+                    dataSourceProperties.determineUrl(),
+                    dataSourceProperties.determineUsername(),
+                    dataSourceProperties.determinePassword())) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("listen " + CHANNEL);
+                }
+                connected.set(true);
+                backoffMillis = 1000;
+                // anything that changed while we were not listening is unknown
+                resync();
+
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                long validatedAt = System.nanoTime();
+                while (running) {
+                    if (System.nanoTime() - validatedAt >= TimeUnit.MILLISECONDS.toNanos(validateMillis)) {
+                        validate(connection);
+                        validatedAt = System.nanoTime();
+                    }
+                    PGNotification[] notifications = pgConnection.getNotifications(pollMillis);
+                    if (notifications == null)
+                        continue;
+                    for (PGNotification notification : notifications)
+                        dispatch(notification.getParameter());
+                }
+            } catch (SQLException e) {
+                if (!running)
+                    break;
+                log.warn("customer change listener disconnected, retrying in {} ms", backoffMillis, e);
+            }
+            if (connected.getAndSet(false))
+                resync();
+            try {
+                TimeUnit.MILLISECONDS.sleep(backoffMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            backoffMillis = Math.min(backoffMillis * 2, MAX_BACKOFF.toMillis());
+        }
+        connected.set(false);
+    }
+
+    private void validate(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            // bounded, so a dead peer fails the check instead of blocking on the socket
+            statement.setQueryTimeout(Math.max(1, validateMillis / 1000));
+            statement.execute("select 1");
+        }
+    }
+
+    private void dispatch(String payload) {
+        CustomerChangeEvent event;
+        try {
+            event = CustomerChangeEvent.fromPayload(payload);
+        } catch (RuntimeException e) {
+            log.warn("ignoring malformed customer change payload {}", payload);
+            return;
+        }
+        for (CustomerChangeSubscriber subscriber : subscribers)
+            subscriber.onCustomerChange(event);
+        lag.record(Math.max(0, System.currentTimeMillis() - event.changedAtMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    private void resync() {
+        resyncs.increment();
+        for (CustomerChangeSubscriber subscriber : subscribers)
+            subscriber.onResync();
+    }
+}
@@ -0,0 +1,17 @@
+package com.stalwart.customer.service;
+
+import com.stalwart.customer.model.CustomerChangeEvent;
+
+/**
+ * Receives customer row changes published by other nodes through {@link CustomerChangeListener}.
+ */
+public interface CustomerChangeSubscriber {
+
+    void onCustomerChange(CustomerChangeEvent event);
+
+    /**
+     * Called whenever changes may have been missed, i.e. when the listener connection is
+     * lost and again once it is re-established. Local state derived from the table must be dropped.
+     */
+    void onResync();
+}
@@ -1,94 +1,282 @@
 package com.stalwart.customer.service;
 
 import com.stalwart.customer.dao.CustomerDao;
+import com.stalwart.customer.datasource.ReplicaRoutingContext;
+import com.stalwart.customer.mapper.CustomerCredentialsRowMapper;
+import com.stalwart.customer.mapper.CustomerDTORowMapper;
 import com.stalwart.customer.mapper.CustomerRowMapper;
 import com.stalwart.customer.model.Customer;
+import com.stalwart.customer.model.CustomerDTO;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Service;
 
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 public class CustomerDataAccessService implements CustomerDao {
 
+    private static final String CUSTOMER_COLUMNS = "id,name,email,password,age,gender,version";
+    private static final String DTO_COLUMNS = "id,name,email,gender,age,version";
+    private static final String CREDENTIAL_COLUMNS = "id,email,password";
+
     public final JdbcTemplate jdbcTemplate;
     public final CustomerRowMapper customerRowMapper;
+    public final CustomerCredentialsRowMapper customerCredentialsRowMapper;
 
-    public CustomerDataAccessService(JdbcTemplate jdbcTemplate, CustomerRowMapper customerRowMapper) {
+    public CustomerDataAccessService(JdbcTemplate jdbcTemplate,
+                                     CustomerRowMapper customerRowMapper,
+                                     CustomerCredentialsRowMapper customerCredentialsRowMapper) {
         this.jdbcTemplate = jdbcTemplate;
         this.customerRowMapper = customerRowMapper;
+        this.customerCredentialsRowMapper = customerCredentialsRowMapper;
     }
 
     @Override
     public List<Customer> getAllCustomers() {
 
-        String selectQuey = "select * from customer;";
+        String selectQuey = "select " + CUSTOMER_COLUMNS + " from customer;";
+
+        return ReplicaRoutingContext.read(() -> jdbcTemplate.query(selectQuey, customerRowMapper));
 
-        return jdbcTemplate.query(selectQuey, customerRowMapper);
+    }
 
+    @Override
+    public List<Customer> getCustomersAfterId(int afterId, int limit) {
+        String selectPageQuery = "select " + CUSTOMER_COLUMNS + " from customer where id > ? order by id limit ?;";
+        return ReplicaRoutingContext.read(() -> jdbcTemplate.query(selectPageQuery, customerRowMapper, afterId, limit));
     }
 
     @Override
     public Optional<Customer> getCustomerById(int id) {
-        String selectbyIdQuery = "select * from customer where id = ?;";
-        return jdbcTemplate.query(selectbyIdQuery,customerRowMapper,id).stream().findFirst();
+        String selectbyIdQuery = "select " + CUSTOMER_COLUMNS + " from customer where id = ?;";
+        return ReplicaRoutingContext.read(() -> jdbcTemplate.query(selectbyIdQuery,customerRowMapper,id)).stream().findFirst();
     }
 
     @Override
-    public void deleteCustomerById(int id) {
+    public boolean deleteCustomerById(int id) {
         String deleteQuery = "delete from customer where id = ?;";
-        jdbcTemplate.update(deleteQuery,id);
+        ReplicaRoutingContext.markWrite();
+        return jdbcTemplate.update(deleteQuery,id) > 0;
     }
 
     @Override
     public Optional<Customer> getCustomerByEmail(String email) {
-        String selectbyEmailQuery = "select * from customer where email = ?;";
-        return jdbcTemplate.query(selectbyEmailQuery,customerRowMapper,email).stream().findFirst();
+        String selectbyEmailQuery = "select " + CUSTOMER_COLUMNS + " from customer where email = ?;";
+        return ReplicaRoutingContext.read(() -> jdbcTemplate.query(selectbyEmailQuery,customerRowMapper,email)).stream().findFirst();
+    }
+
+    @Override
+    public Optional<Customer> getCustomerCredentialsByEmail(String email) {
+        String selectCredentialsQuery = "select " + CREDENTIAL_COLUMNS + " from customer where email = ?;";
+        return ReplicaRoutingContext.read(() -> jdbcTemplate.query(selectCredentialsQuery,customerCredentialsRowMapper,email)).stream().findFirst();
+    }
+
+    @Override
+    public List<CustomerDTO> getAllCustomerDTOs() {
+        String selectQuery = "select " + DTO_COLUMNS + " from customer;";
+        return ReplicaRoutingContext.read(() -> jdbcTemplate.query(selectQuery, new CustomerDTORowMapper()));
+    }
+
+    @Override
+    public List<CustomerDTO> getCustomerDTOsAfterId(int afterId, int limit) {
+        String selectPageQuery = "select " + DTO_COLUMNS + " from customer where id > ? order by id limit ?;";
+        return ReplicaRoutingContext.read(() -> jdbcTemplate.query(selectPageQuery, new CustomerDTORowMapper(), afterId, limit));
     }
 
     @Override
-    public void deleteCustomerByEmail(String email) {
-        String deleteQuery = "delete from customer where email = ?;";
-        jdbcTemplate.update(deleteQuery,email);
+    public Optional<CustomerDTO> getCustomerDTOById(int id) {
+        String selectbyIdQuery = "select " + DTO_COLUMNS + " from customer where id = ?;";
+        return ReplicaRoutingContext.read(() -> jdbcTemplate.query(selectbyIdQuery, new CustomerDTORowMapper(), id)).stream().findFirst();
     }
 
     @Override
-    public void addCustomer(Customer customer) {
-        String addQuery = "insert into customer(name,email,age,gender,password) values(?,?,?,?,?)";
-        jdbcTemplate.update(addQuery,customer.getName(), customer.getEmail(), customer.getAge(), customer.getGender().name(),customer.getPassword());
+    public Optional<CustomerDTO> getCustomerDTOByEmail(String email) {
+        String selectbyEmailQuery = "select " + DTO_COLUMNS + " from customer where email = ?;";
+        return ReplicaRoutingContext.read(() -> jdbcTemplate.query(selectbyEmailQuery, new CustomerDTORowMapper(), email)).stream().findFirst();
+    }
+
+    @Override
+    public List<CustomerDTO> getCustomerDTOsByIds(Collection<Integer> ids) {
+        if(ids.isEmpty())
+            return List.of();
+        String selectByIdsQuery = "select " + DTO_COLUMNS + " from customer where id = any(?);";
+        Integer[] idArray = ids.toArray(Integer[]::new);
+        return ReplicaRoutingContext.read(() -> jdbcTemplate.query(selectByIdsQuery, new CustomerDTORowMapper(), (Object) idArray));
+    }
+
+    @Override
+    public List<CustomerDTO> getCustomerDTOsByEmails(Collection<String> emails) {
+        if(emails.isEmpty())
+            return List.of();
+        String selectByEmailsQuery = "select " + DTO_COLUMNS + " from customer where email = any(?);";
+        String[] emailArray = emails.toArray(String[]::new);
+        return ReplicaRoutingContext.read(() -> jdbcTemplate.query(selectByEmailsQuery, new CustomerDTORowMapper(), (Object) emailArray));
+    }
+
+    @Override
+    public Optional<Integer> deleteCustomerByEmail(String email) {
+        String deleteQuery = "delete from customer where email = ? returning id;";
+        ReplicaRoutingContext.markWrite();
+        return jdbcTemplate.queryForList(deleteQuery,Integer.class,email).stream().findFirst();
+    }
+
+    @Override
+    public boolean addCustomer(Customer customer) {
+        String addQuery = "insert into customer(name,email,age,gender,password) values(?,?,?,?,?) " +
+                "on conflict on constraint customer_email_unique do nothing returning id";
+        ReplicaRoutingContext.markWrite();
+        Optional<Integer> id = jdbcTemplate.queryForList(addQuery, Integer.class,
+                customer.getName(), customer.getEmail(), customer.getAge(), customer.getGender().name(), customer.getPassword())
+                .stream()
+                .findFirst();
+        id.ifPresent(customer::setId);
+        return id.isPresent();
     }
 
     @Override
     public void updateCustomer(Customer updatedCustomer) {
-        if(updatedCustomer.getName()!=null){
-            String updateQuery = "update customer set name = ? where id = ?";
-            jdbcTemplate.update(updateQuery,updatedCustomer.getName(),updatedCustomer.getId());
+        updateCustomer(updatedCustomer, null);
+    }
+
+    @Override
+    public Optional<Customer> updateCustomer(Customer changes, Integer expectedVersion) {
+        List<String> assignments = new ArrayList<>();
+        List<Object> args = new ArrayList<>();
+        if(changes.getName()!=null){
+            assignments.add("name = ?");
+            args.add(changes.getName());
         }
-        if(updatedCustomer.getEmail()!=null){
-            String updateQuery = "update customer set email = ? where id = ?";
-            jdbcTemplate.update(updateQuery,updatedCustomer.getEmail(),updatedCustomer.getId());
+        if(changes.getEmail()!=null){
+            assignments.add("email = ?");
+            args.add(changes.getEmail());
         }
-        if(updatedCustomer.getAge()!=0){
-            String updateQuery = "update customer set age = ? where id = ?";
-            jdbcTemplate.update(updateQuery,updatedCustomer.getAge(),updatedCustomer.getId());
+        if(changes.getAge()!=0){
+            assignments.add("age = ?");
+            args.add(changes.getAge());
+        }
+        assignments.add("version = version + 1");
+
+        StringBuilder updateQuery = new StringBuilder("update customer set ")
+                .append(String.join(", ", assignments))
+                .append(" where id = ?");
+        args.add(changes.getId());
+        if(expectedVersion!=null){
+            updateQuery.append(" and version = ?");
+            args.add(expectedVersion);
         }
+        updateQuery.append(" returning ").append(CUSTOMER_COLUMNS);
+
+        ReplicaRoutingContext.markWrite();
+        return jdbcTemplate.query(updateQuery.toString(),customerRowMapper,args.toArray()).stream().findFirst();
+    }
+
+    @Override
+    public boolean updatePassword(int id, String currentPassword, String newPassword) {
+        String updatePasswordQuery = "update customer set password = ? where id = ? and password = ?;";
+        ReplicaRoutingContext.markWrite();
+        return jdbcTemplate.update(updatePasswordQuery, newPassword, id, currentPassword) > 0;
+    }
+
+    @Override
+    public boolean[] addCustomers(List<Customer> customers) {
+        // one multi-row insert; unnest keeps the statement text the same for every batch size
+        String addQuery = "insert into customer(name,email,age,gender,password) " +
+                "select * from unnest(?::text[], ?::text[], ?::int[], ?::text[], ?::text[]) " +
+                "on conflict on constraint customer_email_unique do nothing returning id,email";
+        int size = customers.size();
+        String[] names = new String[size];
+        String[] emails = new String[size];
+        Integer[] ages = new Integer[size];
+        String[] genders = new String[size];
+        String[] passwords = new String[size];
+        for(int i = 0; i < size; i++){
+            Customer customer = customers.get(i);
+            names[i] = customer.getName();
+            emails[i] = customer.getEmail();
+            ages[i] = customer.getAge();
+            genders[i] = customer.getGender().name();
+            passwords[i] = customer.getPassword();
+        }
+        ReplicaRoutingContext.markWrite();
+        Map<String, Integer> ids = new HashMap<>();
+        jdbcTemplate.query(addQuery,
+                (RowCallbackHandler) rs -> ids.put(rs.getString("email"), rs.getInt("id")),
+                names, emails, ages, genders, passwords);
+
+        // an email given twice is inserted for its first occurrence only
+        boolean[] inserted = new boolean[size];
+        for(int i = 0; i < size; i++){
+            Integer id = ids.remove(emails[i]);
+            if(id != null){
+                customers.get(i).setId(id);
+                inserted[i] = true;
+            }
+        }
+        return inserted;
+    }
+
+    @Override
+    public boolean[] updateCustomers(List<Customer> changes) {
+        String updateQuery = "update customer set name = coalesce(?, name), email = coalesce(?, email), " +
+                "age = coalesce(?, age), version = version + 1 where id = ?";
+        List<Object[]> args = changes.stream()
+                .map(customer -> new Object[]{customer.getName(), customer.getEmail(),
+                        customer.getAge()!=0 ? customer.getAge() : null, customer.getId()})
+                .toList();
+        int[] argTypes = {Types.VARCHAR, Types.VARCHAR, Types.INTEGER, Types.INTEGER};
+        ReplicaRoutingContext.markWrite();
+        return applied(jdbcTemplate.batchUpdate(updateQuery, args, argTypes));
+    }
+
+    @Override
+    public boolean[] deleteCustomersById(List<Integer> ids) {
+        String deleteQuery = "delete from customer where id = ?";
+        List<Object[]> args = ids.stream()
+                .map(id -> new Object[]{id})
+                .toList();
+        ReplicaRoutingContext.markWrite();
+        return applied(jdbcTemplate.batchUpdate(deleteQuery, args));
+    }
+
+    private static boolean[] applied(int[] updateCounts){
+        boolean[] applied = new boolean[updateCounts.length];
+        for(int i = 0; i < updateCounts.length; i++)
+            applied[i] = updateCounts[i] != 0; // SUCCESS_NO_INFO counts as applied
+        return applied;
     }
 
     @Override
     public boolean existsWithEmail(String email) {
         String query = "select count(*) from customer where email =?";
-        int count = jdbcTemplate.queryForObject(query,Integer.class,email);
+        int count = ReplicaRoutingContext.read(() -> jdbcTemplate.queryForObject(query,Integer.class,email));
         if(count==0)
             return false;
         else
             return true;
     }
 
+    @Override
+    public Set<String> existingEmails(Collection<String> emails) {
+        if(emails.isEmpty())
+            return Set.of();
+        String query = "select email from customer where email = any(?)";
+        String[] emailArray = emails.toArray(String[]::new);
+        return new HashSet<>(ReplicaRoutingContext.read(() -> jdbcTemplate.queryForList(query, String.class, (Object) emailArray)));
+    }
+
     @Override
     public boolean existsCustomerWithId(int id){
         String query = "select count(*) from customer where id =?";
-        int count = jdbcTemplate.queryForObject(query,Integer.class,id);
+        int count = ReplicaRoutingContext.read(() -> jdbcTemplate.queryForObject(query,Integer.class,id));
         if(count==0)
             return false;
         else
@@ -0,0 +1,101 @@
+package com.stalwart.customer.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stalwart.customer.datasource.ReplicaRoutingContext;
+import com.stalwart.customer.model.DataFormat;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams the customer table straight from Postgres to an output stream.
+ * Rows are never collected in memory: CSV goes through {@code COPY ... TO STDOUT}
+ * and NDJSON through a forward-only cursor, both of which read from a single snapshot.
+ * Exports are served by a read replica when one is configured.
+ */
+@Service
+public class CustomerExportService {
+
+    private static final String EXPORT_QUERY = "select id,name,email,gender,age from customer order by id";
+
+    private final DataSource dataSource;
+    private final ObjectMapper objectMapper;
+    private final int fetchSize;
+
+    public CustomerExportService(DataSource dataSource,
+                                 ObjectMapper objectMapper,
+                                 @Value("${customer.export.fetch-size:1000}") int fetchSize) {
+        this.dataSource = dataSource;
+        this.objectMapper = objectMapper;
+        this.fetchSize = fetchSize;
+    }
+
+    public void export(DataFormat format, boolean gzip, OutputStream outputStream) throws IOException {
+        OutputStream out = gzip ? new GZIPOutputStream(outputStream, 64 * 1024) : outputStream;
+        try {
+            switch (format) {
+                case CSV -> exportCsv(out);
+                case NDJSON -> exportNdjson(out);
+            }
+        } catch (SQLException e) {
+            throw new IOException("customer export failed", e);
+        }
+        if (out instanceof GZIPOutputStream gzipOutputStream)
+            gzipOutputStream.finish();
+        out.flush();
+    }
+
+    private void exportCsv(OutputStream out) throws SQLException, IOException {
+        String copyQuery = "copy (" + EXPORT_QUERY + ") to stdout with (format csv, header)";
+        try (Connection connection = ReplicaRoutingContext.openForRead(dataSource)) {
+            connection.unwrap(PGConnection.class)
+                    .getCopyAPI()
+                    .copyOut(copyQuery, out);
+        }
+    }
+
+    private void exportNdjson(OutputStream out) throws SQLException, IOException {
+        try (Connection connection = ReplicaRoutingContext.openForRead(dataSource)) {
+            boolean autoCommit = connection.getAutoCommit();
+            int isolation = connection.getTransactionIsolation();
+            // the pg driver only honours the fetch size inside a transaction
+            connection.setAutoCommit(false);
+            connection.setReadOnly(true);
+            connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            try (PreparedStatement statement = connection.prepareStatement(
+                    EXPORT_QUERY, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                statement.setFetchSize(fetchSize);
+                try (ResultSet rs = statement.executeQuery();
+                     JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                    generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                    generator.setRootValueSeparator(null);
+                    while (rs.next()) {
+                        generator.writeStartObject();
+                        generator.writeNumberField("id", rs.getInt(1));
+                        generator.writeStringField("name", rs.getString(2));
+                        generator.writeStringField("email", rs.getString(3));
+                        generator.writeStringField("gender", rs.getString(4));
+                        generator.writeNumberField("age", rs.getInt(5));
+                        generator.writeEndObject();
+                        generator.writeRaw('\n');
+                    }
+                }
+            } finally {
+                connection.rollback();
+                connection.setTransactionIsolation(isolation);
+                connection.setReadOnly(false);
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+    }
+}
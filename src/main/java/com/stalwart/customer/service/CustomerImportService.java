@@ -0,0 +1,324 @@
+package com.stalwart.customer.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stalwart.customer.exceptions.InvalidRequestException;
+import com.stalwart.customer.exceptions.UserNotValidException;
+import com.stalwart.customer.model.CustomerImportReject;
+import com.stalwart.customer.model.CustomerImportResult;
+import com.stalwart.customer.model.CustomerRegistrationRequest;
+import com.stalwart.customer.model.DataFormat;
+import com.stalwart.customer.model.Gender;
+import jakarta.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Bulk customer import. The body is read in batches; each batch is validated, its passwords
+ * are hashed in parallel on a bounded pool, and the rows are copied into a temporary staging
+ * table and merged into {@code customer}, letting {@code customer_email_unique} reject duplicates.
+ * <p>
+ * Every batch commits on its own so a large import does not hold one long transaction. An
+ * import that fails part way therefore keeps the batches committed before the failure; the
+ * error reports how many rows that was, and re-running the same file is safe because rows
+ * already imported are rejected as existing emails. Imported emails go into the
+ * {@link EmailBloomFilter} before they are committed, since these inserts bypass the DAO.
+ */
+@Service
+public class CustomerImportService {
+
+    private static final List<String> CSV_COLUMNS = List.of("name", "email", "age", "gender", "password");
+
+    private static final String CREATE_STAGE_QUERY =
+            "create temp table customer_import_stage(line bigint, name text, email text, age int, gender text, password text) on commit drop";
+    private static final String COPY_STAGE_QUERY =
+            "copy customer_import_stage(line,name,email,age,gender,password) from stdin with (format csv)";
+    private static final String MERGE_QUERY =
+            "insert into customer(name,email,age,gender,password) " +
+            "select name,email,age,gender,password from customer_import_stage order by line " +
+            "on conflict on constraint customer_email_unique do nothing returning email";
+
+    private final DataSource dataSource;
+    private final PasswordEncoder passwordEncoder;
+    private final EmailBloomFilter emailBloomFilter;
+    private final ObjectMapper objectMapper;
+    private final ThreadPoolExecutor hashingExecutor;
+    private final int batchSize;
+    private final int maxReportedRejects;
+
+    public CustomerImportService(DataSource dataSource,
+                                 // hashes on its own pool, so bypass the request admission control
+                                 @Qualifier("hashingPasswordEncoder") PasswordEncoder passwordEncoder,
+                                 EmailBloomFilter emailBloomFilter,
+                                 ObjectMapper objectMapper,
+                                 @Value("${customer.import.batch-size:1000}") int batchSize,
+                                 @Value("${customer.import.hash-threads:0}") int hashThreads,
+                                 @Value("${customer.import.max-reported-rejects:1000}") int maxReportedRejects) {
+        this.dataSource = dataSource;
+        this.passwordEncoder = passwordEncoder;
+        this.emailBloomFilter = emailBloomFilter;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+        this.maxReportedRejects = maxReportedRejects;
+        int threads = hashThreads > 0 ? hashThreads : Runtime.getRuntime().availableProcessors();
+        // bounded queue + caller-runs keeps memory flat and pushes back on the importing thread
+        this.hashingExecutor = new ThreadPoolExecutor(
+                threads, threads,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 4),
+                new CustomizableThreadFactory("customer-import-hash-"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hashingExecutor.shutdown();
+    }
+
+    public CustomerImportResult importCustomers(DataFormat format, boolean gzip, InputStream body) throws IOException {
+        long start = System.nanoTime();
+        InputStream in = gzip ? new GZIPInputStream(body, 64 * 1024) : body;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        RowSource source = switch (format) {
+            case CSV -> csvSource(reader);
+            case NDJSON -> ndjsonSource(reader);
+        };
+
+        ImportProgress progress = new ImportProgress();
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                List<ImportRow> batch = new ArrayList<>(batchSize);
+                ImportRow row;
+                while ((row = source.next()) != null) {
+                    batch.add(row);
+                    if (batch.size() == batchSize) {
+                        importBatch(connection, batch, progress);
+                        batch.clear();
+                    }
+                }
+                if (!batch.isEmpty())
+                    importBatch(connection, batch, progress);
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new UncategorizedSQLException(
+                    "customer import failed after %s rows were committed".formatted(progress.imported), MERGE_QUERY, e);
+        }
+
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        double rowsPerSecond = elapsedMillis == 0 ? progress.received : progress.received * 1000.0 / elapsedMillis;
+        return new CustomerImportResult(
+                progress.received,
+                progress.imported,
+                progress.rejected,
+                progress.rejects,
+                elapsedMillis,
+                rowsPerSecond
+        );
+    }
+
+    private void importBatch(Connection connection, List<ImportRow> batch, ImportProgress progress) throws SQLException {
+        progress.received += batch.size();
+
+        List<ImportRow> accepted = new ArrayList<>(batch.size());
+        Set<String> batchEmails = new HashSet<>();
+        for (ImportRow row : batch) {
+            String error = validate(row);
+            if (error == null && !batchEmails.add(row.request().getEmail()))
+                error = "Duplicate email in import";
+            if (error != null)
+                progress.reject(row, error);
+            else
+                accepted.add(row);
+        }
+        if (accepted.isEmpty())
+            return;
+
+        List<CompletableFuture<String>> hashes = new ArrayList<>(accepted.size());
+        for (ImportRow row : accepted) {
+            String password = row.request().getPassword();
+            hashes.add(CompletableFuture.supplyAsync(() -> passwordEncoder.encode(password), hashingExecutor));
+        }
+
+        StringBuilder csv = new StringBuilder(accepted.size() * 128);
+        for (int i = 0; i < accepted.size(); i++) {
+            ImportRow row = accepted.get(i);
+            CustomerRegistrationRequest request = row.request();
+            csv.append(row.line()).append(',');
+            CsvRecordReader.appendField(csv, request.getName());
+            csv.append(',');
+            CsvRecordReader.appendField(csv, request.getEmail());
+            csv.append(',').append(request.getAge()).append(',');
+            CsvRecordReader.appendField(csv, request.getGender().name());
+            csv.append(',');
+            CsvRecordReader.appendField(csv, hashes.get(i).join());
+            csv.append('\n');
+        }
+
+        for (ImportRow row : accepted)
+            emailBloomFilter.put(row.request().getEmail());
+
+        Set<String> inserted = new HashSet<>();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_STAGE_QUERY);
+        }
+        try {
+            connection.unwrap(PGConnection.class)
+                    .getCopyAPI()
+                    .copyIn(COPY_STAGE_QUERY, new StringReader(csv.toString()));
+        } catch (IOException e) {
+            throw new SQLException("copy into customer_import_stage failed", e);
+        }
+        try (PreparedStatement statement = connection.prepareStatement(MERGE_QUERY);
+             ResultSet rs = statement.executeQuery()) {
+            while (rs.next())
+                inserted.add(rs.getString(1));
+        }
+        connection.commit();
+
+        for (ImportRow row : accepted) {
+            if (inserted.contains(row.request().getEmail()))
+                progress.imported++;
+            else
+                progress.reject(row, "Given email %s already exists".formatted(row.request().getEmail()));
+        }
+    }
+
+    private String validate(ImportRow row) {
+        if (row.error() != null)
+            return row.error();
+        CustomerRegistrationRequest request = row.request();
+        try {
+            CustomerService.validateRegistration(request);
+        } catch (UserNotValidException e) {
+            return e.getMessage();
+        }
+        if (request.getGender() == null)
+            return "Gender should not be null";
+        if (request.getPassword() == null || request.getPassword().isEmpty())
+            return "Password should not be empty";
+        return null;
+    }
+
+    private RowSource csvSource(BufferedReader reader) throws IOException {
+        CsvRecordReader csvReader = new CsvRecordReader(reader);
+        List<String> header = csvReader.next();
+        if (header == null)
+            throw new InvalidRequestException("CSV import requires a header row");
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++)
+            columns.put(header.get(i).trim().toLowerCase(), i);
+        for (String column : CSV_COLUMNS) {
+            if (!columns.containsKey(column))
+                throw new InvalidRequestException("CSV header is missing column %s".formatted(column));
+        }
+
+        return () -> {
+            List<String> fields;
+            while ((fields = csvReader.next()) != null) {
+                if (fields.size() == 1 && fields.get(0).isBlank())
+                    continue;
+                long line = csvReader.getLine();
+                if (fields.size() != header.size())
+                    return ImportRow.rejected(line, "Expected %s columns but found %s".formatted(header.size(), fields.size()));
+                try {
+                    CustomerRegistrationRequest request = new CustomerRegistrationRequest(
+                            emptyToNull(fields.get(columns.get("name"))),
+                            emptyToNull(fields.get(columns.get("email"))),
+                            Integer.parseInt(fields.get(columns.get("age")).trim()),
+                            emptyToNull(fields.get(columns.get("password"))),
+                            Gender.valueOf(fields.get(columns.get("gender")).trim().toUpperCase())
+                    );
+                    return new ImportRow(line, request, null);
+                } catch (IllegalArgumentException e) {
+                    return new ImportRow(line, new CustomerRegistrationRequest(
+                            null, emptyToNull(fields.get(columns.get("email"))), 0, null, null),
+                            "Invalid age or gender");
+                }
+            }
+            return null;
+        };
+    }
+
+    private RowSource ndjsonSource(BufferedReader reader) {
+        long[] lineNumber = {0};
+        return () -> {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber[0]++;
+                if (line.isBlank())
+                    continue;
+                try {
+                    return new ImportRow(lineNumber[0], objectMapper.readValue(line, CustomerRegistrationRequest.class), null);
+                } catch (JsonProcessingException e) {
+                    return ImportRow.rejected(lineNumber[0], "Malformed JSON");
+                }
+            }
+            return null;
+        };
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    private interface RowSource {
+        ImportRow next() throws IOException;
+    }
+
+    private record ImportRow(long line, CustomerRegistrationRequest request, String error) {
+        static ImportRow rejected(long line, String error) {
+            return new ImportRow(line, null, error);
+        }
+    }
+
+    private final class ImportProgress {
+        long received;
+        long imported;
+        long rejected;
+        final List<CustomerImportReject> rejects = new ArrayList<>();
+
+        void reject(ImportRow row, String reason) {
+            rejected++;
+            if (rejects.size() < maxReportedRejects) {
+                String email = row.request() == null ? null : row.request().getEmail();
+                rejects.add(new CustomerImportReject(row.line(), email, reason));
+            }
+        }
+    }
+}
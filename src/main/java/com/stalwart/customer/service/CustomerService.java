@@ -1,58 +1,130 @@
 package com.stalwart.customer.service;
 
 import com.stalwart.customer.dao.CustomerDao;
+import com.stalwart.customer.exceptions.CustomerVersionConflictException;
+import com.stalwart.customer.exceptions.InvalidRequestException;
 import com.stalwart.customer.exceptions.UserAlreadyExistsException;
 import com.stalwart.customer.exceptions.UserNotFoundException;
 import com.stalwart.customer.exceptions.UserNotValidException;
 import com.stalwart.customer.mapper.CustomerDTOMapper;
 import com.stalwart.customer.model.Customer;
 import com.stalwart.customer.model.CustomerDTO;
+import com.stalwart.customer.model.CustomerLookup;
+import com.stalwart.customer.model.CustomerPage;
 import com.stalwart.customer.model.CustomerRegistrationRequest;
+import com.stalwart.customer.model.CustomerUpdateRequest;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
 public class CustomerService {
 
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 500;
+    public static final int MAX_BATCH_SIZE = 500;
+    private static final String CURSOR_PREFIX = "id:";
+
     private final CustomerDao customerDao;
     private final PasswordEncoder passwordEncoder;
 
     private final CustomerDTOMapper customerDTOMapper;
+    private final RegistrationGroupCommit registrationGroupCommit;
 //    private final CustomerRepository customerRepository;
 
+    @Autowired
     public CustomerService(CustomerDao customerDao,
                            PasswordEncoder passwordEncoder,
-                           CustomerDTOMapper customerDTOMapper) {
+                           CustomerDTOMapper customerDTOMapper,
+                           ObjectProvider<RegistrationGroupCommit> registrationGroupCommit) {
+        this(customerDao, passwordEncoder, customerDTOMapper, registrationGroupCommit.getIfAvailable());
+    }
+
+    CustomerService(CustomerDao customerDao,
+                    PasswordEncoder passwordEncoder,
+                    CustomerDTOMapper customerDTOMapper,
+                    RegistrationGroupCommit registrationGroupCommit) {
         this.customerDao = customerDao;
 //        this.customerRepository = customerRepository;
         this.passwordEncoder = passwordEncoder;
         this.customerDTOMapper = customerDTOMapper;
+        this.registrationGroupCommit = registrationGroupCommit;
     }
 
     public List<CustomerDTO> getAllCustomers(){
 
-        return customerDao.getAllCustomers()
-                .stream()
-                .map(customerDTOMapper)
-                .collect(Collectors.toList());
+        return customerDao.getAllCustomerDTOs();
+    }
+
+    public CustomerPage getCustomersPage(String after, int limit){
+
+        validatePageLimit(limit);
+
+        int afterId = after==null || after.isBlank() ? 0 : decodeCursor(after);
+
+        // fetch one extra row to find out whether another page exists
+        List<CustomerDTO> customers = customerDao.getCustomerDTOsAfterId(afterId, limit + 1);
+        boolean hasMore = customers.size() > limit;
+        if(hasMore)
+            customers = customers.subList(0, limit);
+
+        String nextCursor = hasMore ? encodeCursor(customers.get(customers.size() - 1).getId()) : null;
+        return new CustomerPage(customers, nextCursor);
+    }
+
+    static void validatePageLimit(int limit){
+        if(limit<=0 || limit>MAX_PAGE_SIZE)
+            throw new InvalidRequestException("limit should be between 1 and %s".formatted(MAX_PAGE_SIZE));
+    }
+
+    static String encodeCursor(int id){
+        return Base64.getUrlEncoder()
+                .withoutPadding()
+                .encodeToString((CURSOR_PREFIX + id).getBytes(StandardCharsets.UTF_8));
     }
 
-    public void addCustomer(CustomerRegistrationRequest request){
+    static int decodeCursor(String cursor){
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if(!decoded.startsWith(CURSOR_PREFIX))
+                throw new InvalidRequestException("Invalid cursor %s".formatted(cursor));
+            return Integer.parseInt(decoded.substring(CURSOR_PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidRequestException("Invalid cursor %s".formatted(cursor));
+        }
+    }
 
+    public static void validateRegistration(CustomerRegistrationRequest request){
         if(request.getName()==null)
             throw new UserNotValidException("Name should not be null");
         if(request.getEmail()==null)
             throw new UserNotValidException("Email Should not be null");
         if(request.getAge()<=0)
             throw new UserNotValidException("Invalid Age");
+    }
 
-        if(customerDao.existsWithEmail(request.getEmail())){
-            throw new UserAlreadyExistsException("Given email %s already exists".formatted(request.getEmail()));
-        }
+    /**
+     * @return id of the new customer
+     */
+    public int addCustomer(CustomerRegistrationRequest request){
+
+        validateRegistration(request);
 
         Customer customer = new Customer(
                 request.getName(),
@@ -61,39 +133,84 @@ public class CustomerService {
                 request.getAge(),
                 request.getGender());
 //        customerRepository.save(customer);
-        customerDao.addCustomer(customer);
+        boolean added = registrationGroupCommit != null
+                ? registrationGroupCommit.add(customer)
+                : customerDao.addCustomer(customer);
+        if(!added){
+            throw new UserAlreadyExistsException("Given email %s already exists".formatted(request.getEmail()));
+        }
+        return customer.getId();
     }
 
     public CustomerDTO getCustomerById(int id) {
-        return customerDao.getCustomerById(id)
-                .map(customerDTOMapper)
+        return customerDao.getCustomerDTOById(id)
                 .orElseThrow( () ->
                 new UserNotFoundException("user not found with id %s".formatted(id))
                 );
     }
 
     public void deleteCustomerById(int id){
-        boolean isCustomerPresent = customerDao.existsCustomerWithId(id);
-        if(isCustomerPresent)
-            customerDao.deleteCustomerById(id);
-        else
+        boolean isCustomerDeleted = customerDao.deleteCustomerById(id);
+        if(!isCustomerDeleted)
             throw new UserNotFoundException("user not found with id %s".formatted(id));
 
     }
 
     public CustomerDTO getCustomerByEmail(String email){
-        return customerDao.getCustomerByEmail(email)
-                .map(customerDTOMapper)
+        return customerDao.getCustomerDTOByEmail(email)
                 .orElseThrow(()->
                 new UserNotFoundException("user not found with email %s".formatted(email))
                 );
     }
+    /**
+     * Looks up all the given ids with one query. The result has one entry per requested id,
+     * in request order, marked as not found when no customer has that id.
+     */
+    public List<CustomerLookup<Integer>> getCustomersByIds(List<Integer> ids){
+        validateBatch(ids);
+        Map<Integer, CustomerDTO> customers = customerDao.getCustomerDTOsByIds(new LinkedHashSet<>(ids)).stream()
+                .collect(Collectors.toMap(CustomerDTO::getId, Function.identity()));
+        return ids.stream()
+                .map(id -> CustomerLookup.of(id, customers.get(id)))
+                .toList();
+    }
+
+    /**
+     * Same as {@link #getCustomersByIds(List)}, keyed by email.
+     */
+    public List<CustomerLookup<String>> getCustomersByEmails(List<String> emails){
+        validateBatch(emails);
+        Map<String, CustomerDTO> customers = customerDao.getCustomerDTOsByEmails(new LinkedHashSet<>(emails)).stream()
+                .collect(Collectors.toMap(CustomerDTO::getEmail, Function.identity()));
+        return emails.stream()
+                .map(email -> CustomerLookup.of(email, customers.get(email)))
+                .toList();
+    }
+
+    /**
+     * @return whether each of the given emails is registered, in request order
+     */
+    public Map<String, Boolean> existsWithEmails(List<String> emails){
+        validateBatch(emails);
+        Set<String> existing = customerDao.existingEmails(new LinkedHashSet<>(emails));
+        Map<String, Boolean> exists = new LinkedHashMap<>();
+        for(String email : emails)
+            exists.put(email, existing.contains(email));
+        return exists;
+    }
+
+    static void validateBatch(Collection<?> keys){
+        if(keys.size()>MAX_BATCH_SIZE)
+            throw new InvalidRequestException("at most %s keys can be looked up at once".formatted(MAX_BATCH_SIZE));
+        if(keys.stream().anyMatch(Objects::isNull))
+            throw new InvalidRequestException("keys must not be null");
+    }
+
     public void deleteCustomerWithEmail(String email){
-        boolean isCustomerExists = customerDao.existsWithEmail(email);
-        if(isCustomerExists)
-            customerDao.deleteCustomerByEmail(email);
-        else
-            throw new UserNotFoundException("user not found with email %s".formatted(email));
+        customerDao.deleteCustomerByEmail(email)
+                .orElseThrow(()->
+                        new UserNotFoundException("user not found with email %s".formatted(email))
+                );
     }
 
     public void updateCustomer(Customer updatedCustomer){
@@ -129,4 +246,52 @@ public class CustomerService {
             ;
     }
 
+    @Transactional
+    public CustomerDTO patchCustomer(int id, CustomerUpdateRequest request){
+        validateUpdate(request);
+
+        if(request.name()==null && request.email()==null && request.age()==null){
+            Customer customer = customerDao.getCustomerById(id)
+                    .orElseThrow(()->
+                            new UserNotFoundException("user not found with id %s".formatted(id))
+                    );
+            checkVersion(customer, request.version());
+            return customerDTOMapper.apply(customer);
+        }
+
+        Customer changes = new Customer();
+        changes.setId(id);
+        changes.setName(request.name());
+        changes.setEmail(request.email());
+        changes.setAge(request.age()==null ? 0 : request.age());
+
+        Optional<Customer> updated;
+        try {
+            updated = customerDao.updateCustomer(changes, request.version());
+        } catch (DuplicateKeyException e) {
+            throw new UserAlreadyExistsException("Given email %s already exists".formatted(request.email()));
+        }
+        if(updated.isPresent())
+            return customerDTOMapper.apply(updated.get());
+
+        // only reached on failure, to tell a missing customer from a stale version
+        Customer current = customerDao.getCustomerById(id)
+                .orElseThrow(()->
+                        new UserNotFoundException("user not found with id %s".formatted(id))
+                );
+        checkVersion(current, request.version());
+        throw new CustomerVersionConflictException("customer %s was modified concurrently".formatted(id));
+    }
+
+    static void validateUpdate(CustomerUpdateRequest request){
+        if(request.age()!=null && request.age()<=0)
+            throw new UserNotValidException("Invalid Age");
+    }
+
+    private void checkVersion(Customer customer, Integer expectedVersion){
+        if(expectedVersion!=null && customer.getVersion()!=expectedVersion)
+            throw new CustomerVersionConflictException(
+                    "customer %s is at version %s, not %s".formatted(customer.getId(), customer.getVersion(), expectedVersion));
+    }
+
 }
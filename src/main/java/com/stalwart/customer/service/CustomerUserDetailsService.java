@@ -1,20 +1,44 @@
 package com.stalwart.customer.service;
 
 import com.stalwart.customer.dao.CustomerDao;
+import com.stalwart.customer.model.Customer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 @Service
-public class CustomerUserDetailsService implements UserDetailsService {
+public class CustomerUserDetailsService implements UserDetailsService, UserDetailsPasswordService {
+
+    private static final Logger log = LoggerFactory.getLogger(CustomerUserDetailsService.class);
 
     private final CustomerDao customerDao;
+    // rehash writes are best effort: when the queue is full the upgrade waits for the next login
+    private final ThreadPoolExecutor rehashExecutor = new ThreadPoolExecutor(
+            1, 1,
+            0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(1000),
+            new CustomizableThreadFactory("customer-rehash-"),
+            new ThreadPoolExecutor.DiscardPolicy());
 
     public CustomerUserDetailsService(CustomerDao customerDao) {
         this.customerDao = customerDao;
     }
 
+    @PreDestroy
+    public void shutdown() {
+        rehashExecutor.shutdown();
+    }
+
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
        return customerDao.getCustomerByEmail(username)
@@ -22,4 +46,36 @@ public class CustomerUserDetailsService implements UserDetailsService {
                        ()-> new UsernameNotFoundException("Username " + username +" Not Found")
                );
     }
+
+    /**
+     * Same as {@link #loadUserByUsername(String)} but only loads the columns needed to
+     * authenticate a request, for callers that never read the profile fields.
+     */
+    public UserDetails loadCredentialsByUsername(String username) throws UsernameNotFoundException {
+       return customerDao.getCustomerCredentialsByEmail(username)
+               .orElseThrow(
+                       ()-> new UsernameNotFoundException("Username " + username +" Not Found")
+               );
+    }
+
+    /**
+     * Called by the authentication provider after a successful login whose stored hash is
+     * stale. The new hash is written in the background so the login response does not wait
+     * for it; the write is skipped if the password changed in the meantime.
+     */
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        Customer customer = (Customer) user;
+        int id = customer.getId();
+        String currentPassword = customer.getPassword();
+        rehashExecutor.execute(() -> {
+            try {
+                customerDao.updatePassword(id, currentPassword, newPassword);
+            } catch (RuntimeException e) {
+                log.warn("Could not store upgraded password hash for customer {}", id, e);
+            }
+        });
+        customer.setPassword(newPassword);
+        return customer;
+    }
 }
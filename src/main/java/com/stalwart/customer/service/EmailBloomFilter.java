@@ -0,0 +1,243 @@
+package com.stalwart.customer.service;
+
+import com.stalwart.customer.model.CustomerChangeEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-memory Bloom filter over customer emails, so that lookups for addresses that were never
+ * registered can be answered without a query. Until the first build has finished, and while
+ * cross-node change notifications are unavailable, every email is reported as possibly present.
+ * <p>
+ * Deleted emails cannot be removed from a Bloom filter, so it is rebuilt from a streaming scan
+ * on a fixed interval. Emails added while a rebuild is scanning go into both filters.
+ */
+@Component
+public class EmailBloomFilter implements CustomerChangeSubscriber {
+
+    private static final Logger log = LoggerFactory.getLogger(EmailBloomFilter.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectProvider<CustomerChangeListener> changeListener;
+    private final boolean enabled;
+    private final long minimumExpectedInsertions;
+    private final double falsePositiveRate;
+    private final ExecutorService rebuildExecutor;
+    private final AtomicBoolean rebuildRunning = new AtomicBoolean();
+    private final AtomicBoolean rebuildPending = new AtomicBoolean();
+    private final Counter negatives;
+
+    private volatile Bits current;
+    private volatile Bits building;
+
+    public EmailBloomFilter(JdbcTemplate jdbcTemplate,
+                            PlatformTransactionManager transactionManager,
+                            ObjectProvider<CustomerChangeListener> changeListener,
+                            MeterRegistry meterRegistry,
+                            @Value("${customer.bloom.enabled:true}") boolean enabled,
+                            @Value("${customer.bloom.expected-insertions:100000}") long minimumExpectedInsertions,
+                            @Value("${customer.bloom.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.jdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.jdbcTemplate.setFetchSize(10_000);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.changeListener = changeListener;
+        this.enabled = enabled;
+        this.minimumExpectedInsertions = minimumExpectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+        this.rebuildExecutor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("email-bloom-rebuild-"));
+        this.negatives = Counter.builder("customer.bloom.negatives")
+                .description("Email lookups answered without a query")
+                .register(meterRegistry);
+        meterRegistry.gauge("customer.bloom.bits", this, f -> f.current == null ? 0 : f.current.bitCount);
+        meterRegistry.gauge("customer.bloom.ready", this, f -> f.current == null ? 0 : 1);
+    }
+
+    /**
+     * @return false only when the email is definitely not registered
+     */
+    public boolean mightContain(String email) {
+        Bits bits = current;
+        if (bits == null || email == null || bits.mightContain(email))
+            return true;
+        negatives.increment();
+        return false;
+    }
+
+    /**
+     * Records an email that is about to be, or has just been, written. Callers should call this
+     * both before and after the write so a concurrent rebuild cannot miss it.
+     */
+    public void put(String email) {
+        if (email == null)
+            return;
+        // read building first: it is cleared only once current points at the rebuilt filter
+        Bits next = building;
+        if (next != null)
+            next.put(email);
+        Bits bits = current;
+        if (bits != null && bits != next)
+            bits.put(email);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        requestRebuild();
+    }
+
+    @Scheduled(
+            initialDelayString = "${customer.bloom.rebuild-interval:PT6H}",
+            fixedDelayString = "${customer.bloom.rebuild-interval:PT6H}")
+    public void scheduledRebuild() {
+        requestRebuild();
+    }
+
+    @Override
+    public void onCustomerChange(CustomerChangeEvent event) {
+        if (!"DELETE".equals(event.operation()))
+            put(event.email());
+    }
+
+    @Override
+    public void onResync() {
+        // inserts made on other nodes may have been missed
+        current = null;
+        requestRebuild();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuildExecutor.shutdownNow();
+    }
+
+    private void requestRebuild() {
+        if (!enabled)
+            return;
+        rebuildPending.set(true);
+        if (rebuildRunning.compareAndSet(false, true))
+            rebuildExecutor.execute(this::rebuildWhilePending);
+    }
+
+    private void rebuildWhilePending() {
+        try {
+            while (rebuildPending.getAndSet(false)) {
+                try {
+                    rebuild();
+                } catch (RuntimeException e) {
+                    log.warn("email bloom filter rebuild failed", e);
+                }
+            }
+        } finally {
+            rebuildRunning.set(false);
+        }
+        if (rebuildPending.get() && rebuildRunning.compareAndSet(false, true))
+            rebuildExecutor.execute(this::rebuildWhilePending);
+    }
+
+    private void rebuild() {
+        long count = jdbcTemplate.queryForObject("select count(*) from customer", Long.class);
+        // leave room for growth until the next rebuild
+        Bits next = Bits.create(Math.max(minimumExpectedInsertions, count * 2), falsePositiveRate);
+        building = next;
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    jdbcTemplate.query("select email from customer", rs -> {
+                        next.put(rs.getString(1));
+                    }));
+
+            CustomerChangeListener listener = changeListener.getIfAvailable();
+            if (listener == null || !listener.isRunning() || listener.isConnected()) {
+                current = next;
+                log.info("email bloom filter rebuilt from {} customers with {} bits", count, next.bitCount);
+            }
+        } finally {
+            // only after publishing, so a put racing the swap still reaches the new filter
+            building = null;
+        }
+    }
+
+    static final class Bits {
+        final long bitCount;
+        final int hashCount;
+        private final AtomicLongArray words;
+
+        private Bits(long bitCount, int hashCount) {
+            this.bitCount = bitCount;
+            this.hashCount = hashCount;
+            this.words = new AtomicLongArray((int) ((bitCount + 63) >>> 6));
+        }
+
+        static Bits create(long expectedInsertions, double falsePositiveRate) {
+            long n = Math.max(1, expectedInsertions);
+            long bits = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            bits = Math.max(64, bits);
+            int hashes = Math.max(1, (int) Math.round((double) bits / n * Math.log(2)));
+            return new Bits(bits, hashes);
+        }
+
+        void put(String value) {
+            long hash = hash(value);
+            long h1 = hash;
+            long h2 = mix(hash + 0x9E3779B97F4A7C15L) | 1;
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long old;
+                do {
+                    old = words.get(word);
+                    if ((old & mask) != 0)
+                        break;
+                } while (!words.compareAndSet(word, old, old | mask));
+            }
+        }
+
+        boolean mightContain(String value) {
+            long hash = hash(value);
+            long h1 = hash;
+            long h2 = mix(hash + 0x9E3779B97F4A7C15L) | 1;
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0)
+                    return false;
+            }
+            return true;
+        }
+
+        private static long hash(String value) {
+            // FNV-1a over the UTF-8 bytes, finalised with the splitmix64 mixer
+            long hash = 0xcbf29ce484222325L;
+            for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+                hash ^= b;
+                hash *= 0x100000001b3L;
+            }
+            return mix(hash);
+        }
+
+        private static long mix(long z) {
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            return z ^ (z >>> 31);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.stalwart.customer.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+
+/**
+ * Derives OTPs instead of storing them, TOTP style.
+ * <p>
+ * A code is the HMAC-SHA256 of the email, the current time step and a fingerprint of the
+ * customer's password hash, truncated to six digits as in RFC 4226. Checking a code recomputes
+ * it for the current step and the {@code customer.otp.hmac.window} steps before it, so no OTP
+ * row is ever written or consumed and codes verify on any node that shares
+ * {@code customer.otp.hmac.secret}. Issuing still costs one insert, the email queued in the
+ * outbox so its delivery is retried like in the other modes. Changing the password changes the fingerprint, which
+ * invalidates outstanding codes. A small replay guard remembers accepted (email, step) pairs
+ * until they leave the window, so a code is accepted at most once per node.
+ */
+@Service
+public class HmacOTPService {
+
+    private static final Logger log = LoggerFactory.getLogger(HmacOTPService.class);
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final int DIGITS = 6;
+    private static final int MODULUS = 1_000_000;
+
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> macs;
+    private final long stepMillis;
+    private final int window;
+    private final Cache<String, Boolean> accepted;
+
+    public HmacOTPService(MeterRegistry meterRegistry,
+                          @Value("${customer.otp.hmac.secret:}") String secret,
+                          @Value("${customer.otp.hmac.step:${customer.otp.ttl:30s}}") Duration step,
+                          @Value("${customer.otp.hmac.window:1}") int window,
+                          @Value("${customer.otp.maximum-size:100000}") long maximumSize) {
+        byte[] keyBytes;
+        if (secret.isEmpty()) {
+            log.warn("customer.otp.hmac.secret is not set; using a random key, so HMAC OTPs only verify on this node until it restarts");
+            keyBytes = new byte[32];
+            new SecureRandom().nextBytes(keyBytes);
+        } else {
+            keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+        }
+        this.key = new SecretKeySpec(keyBytes, ALGORITHM);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+        this.stepMillis = step.toMillis();
+        this.window = window;
+        this.accepted = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(validity())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, accepted, "customer.otp.replay");
+    }
+
+    /**
+     * Longest time a code stays valid after it is issued.
+     */
+    public Duration validity() {
+        return Duration.ofMillis(stepMillis * (window + 1));
+    }
+
+    public String generate(String email, String fingerprint, long ts) {
+        return format(code(email, fingerprint, ts / stepMillis));
+    }
+
+    /**
+     * @return true when the code belongs to a step inside the window ending at {@code ts} and
+     * was not accepted before
+     */
+    public boolean verify(String email, String fingerprint, String otp, long ts) {
+        if (otp == null || otp.length() != DIGITS)
+            return false;
+        byte[] submitted = otp.getBytes(StandardCharsets.US_ASCII);
+        long current = ts / stepMillis;
+        for (long step = current; step >= current - window; step--) {
+            byte[] expected = format(code(email, fingerprint, step)).getBytes(StandardCharsets.US_ASCII);
+            if (MessageDigest.isEqual(expected, submitted))
+                return accepted.asMap().putIfAbsent(email + ':' + step, Boolean.TRUE) == null;
+        }
+        return false;
+    }
+
+    private int code(String email, String fingerprint, long step) {
+        Mac mac = macs.get();
+        mac.update(email.getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) 0);
+        mac.update(fingerprint.getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) 0);
+        byte[] hash = mac.doFinal(ByteBuffer.allocate(Long.BYTES).putLong(step).array());
+        int offset = hash[hash.length - 1] & 0x0f;
+        int binary = ((hash[offset] & 0x7f) << 24)
+                | ((hash[offset + 1] & 0xff) << 16)
+                | ((hash[offset + 2] & 0xff) << 8)
+                | (hash[offset + 3] & 0xff);
+        return binary % MODULUS;
+    }
+
+    private static String format(int code) {
+        return String.format("%06d", code);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
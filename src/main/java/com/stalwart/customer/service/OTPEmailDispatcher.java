@@ -0,0 +1,152 @@
+package com.stalwart.customer.service;
+
+import com.stalwart.customer.dao.OutboxDao;
+import com.stalwart.customer.model.OutboxMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Delivers the emails queued in {@code otp_email_outbox}.
+ * <p>
+ * Due messages are claimed in batches with a lease, so a crashed dispatcher's messages are
+ * picked up again once the lease runs out. A batch is split across at most
+ * {@code customer.mail.outbox.senders} threads and each thread hands its share to
+ * {@link JavaMailSender#send(SimpleMailMessage...)}, which delivers it over one SMTP
+ * connection. Failed messages are retried with exponential backoff and dropped after
+ * {@code customer.mail.outbox.max-attempts}; an OTP is useless by then anyway.
+ */
+@Component
+public class OTPEmailDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(OTPEmailDispatcher.class);
+    private static final Duration MAX_BACKOFF = Duration.ofMinutes(1);
+
+    private final OutboxDao outboxDao;
+    private final JavaMailSender javaMailSender;
+    private final ExecutorService senders;
+    private final int senderCount;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration retryBackoff;
+    private final Duration lease;
+    private final String from;
+    private final Counter sent;
+    private final Counter failed;
+    private final Counter dropped;
+    private final Timer sendTime;
+
+    public OTPEmailDispatcher(OutboxDao outboxDao,
+                              JavaMailSender javaMailSender,
+                              MeterRegistry meterRegistry,
+                              @Value("${customer.mail.outbox.batch-size:100}") int batchSize,
+                              @Value("${customer.mail.outbox.senders:2}") int senderCount,
+                              @Value("${customer.mail.outbox.max-attempts:5}") int maxAttempts,
+                              @Value("${customer.mail.outbox.retry-backoff:1s}") Duration retryBackoff,
+                              @Value("${customer.mail.outbox.lease:1m}") Duration lease,
+                              @Value("${customer.mail.from:${spring.mail.username:}}") String from) {
+        this.outboxDao = outboxDao;
+        this.javaMailSender = javaMailSender;
+        this.senderCount = senderCount;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoff = retryBackoff;
+        this.lease = lease;
+        this.from = from;
+        this.senders = Executors.newFixedThreadPool(senderCount, new CustomizableThreadFactory("otp-mail-"));
+        this.sent = Counter.builder("customer.mail.outbox.sent").register(meterRegistry);
+        this.failed = Counter.builder("customer.mail.outbox.failed").register(meterRegistry);
+        this.dropped = Counter.builder("customer.mail.outbox.dropped").register(meterRegistry);
+        this.sendTime = Timer.builder("customer.mail.outbox.send")
+                .description("Time to deliver one sender's share of a batch")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        senders.shutdown();
+    }
+
+    @Scheduled(fixedDelayString = "${customer.mail.outbox.poll-interval:PT0.5S}")
+    public void dispatch() {
+        List<OutboxMessage> batch;
+        do {
+            batch = outboxDao.claim(batchSize, lease);
+            deliver(batch);
+        } while (batch.size() == batchSize);
+    }
+
+    private void deliver(List<OutboxMessage> batch) {
+        if (batch.isEmpty())
+            return;
+        int shareSize = (batch.size() + senderCount - 1) / senderCount;
+        List<CompletableFuture<Void>> shares = new ArrayList<>();
+        for (int from = 0; from < batch.size(); from += shareSize) {
+            List<OutboxMessage> share = batch.subList(from, Math.min(from + shareSize, batch.size()));
+            shares.add(CompletableFuture.runAsync(() -> sendTime.record(() -> send(share)), senders));
+        }
+        CompletableFuture.allOf(shares.toArray(CompletableFuture[]::new)).join();
+    }
+
+    private void send(List<OutboxMessage> share) {
+        Map<SimpleMailMessage, OutboxMessage> byMail = new IdentityHashMap<>();
+        for (OutboxMessage message : share) {
+            SimpleMailMessage mail = new SimpleMailMessage();
+            if (!from.isEmpty())
+                mail.setFrom(from);
+            mail.setTo(message.recipient());
+            mail.setSubject(message.subject());
+            mail.setText(message.body());
+            byMail.put(mail, message);
+        }
+
+        Map<OutboxMessage, Exception> failures = new IdentityHashMap<>();
+        try {
+            javaMailSender.send(byMail.keySet().toArray(SimpleMailMessage[]::new));
+        } catch (MailSendException e) {
+            e.getFailedMessages().forEach((mail, cause) -> failures.put(byMail.get(mail), cause));
+        } catch (MailException e) {
+            share.forEach(message -> failures.put(message, e));
+        }
+
+        List<Long> done = new ArrayList<>();
+        for (OutboxMessage message : share) {
+            Exception cause = failures.get(message);
+            if (cause == null) {
+                done.add(message.id());
+                sent.increment();
+            } else if (message.attempts() + 1 >= maxAttempts) {
+                log.warn("Dropping OTP email {} after {} attempts", message.id(), message.attempts() + 1, cause);
+                done.add(message.id());
+                dropped.increment();
+            } else {
+                failed.increment();
+                outboxDao.reschedule(message.id(), String.valueOf(cause.getMessage()), backoff(message.attempts()));
+            }
+        }
+        if (!done.isEmpty())
+            outboxDao.delete(done);
+    }
+
+    private Duration backoff(int attempts) {
+        Duration delay = retryBackoff.multipliedBy(1L << Math.min(attempts, 16));
+        return delay.compareTo(MAX_BACKOFF) > 0 ? MAX_BACKOFF : delay;
+    }
+}
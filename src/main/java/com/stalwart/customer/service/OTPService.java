@@ -1,24 +1,84 @@
 package com.stalwart.customer.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * In-memory store of the latest OTP per email.
+ * <p>
+ * Entries expire at their own deadline through Caffeine's timing wheel, with the system
+ * scheduler evicting them promptly instead of on the next access, and the store never holds
+ * more than {@code customer.otp.maximum-size} entries. A code can be validated once: the
+ * successful check removes it atomically, so concurrent submissions of the same code cannot
+ * both pass. Size and evictions are published as the {@code customer.otp} cache metrics.
+ */
 @Service
 public class OTPService {
 
-    public static Map<String, Map<String,Long>> otpMap = new HashMap<>();
+    private final Cache<String, OtpEntry> otps;
+    private final Duration ttl;
 
+    public OTPService(MeterRegistry meterRegistry,
+                      @Value("${customer.otp.ttl:30s}") Duration ttl,
+                      @Value("${customer.otp.maximum-size:100000}") long maximumSize) {
+        this.ttl = ttl;
+        this.otps = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new Expiry<String, OtpEntry>() {
+                    @Override
+                    public long expireAfterCreate(String email, OtpEntry entry, long currentTime) {
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, entry.expiresAtMillis() - System.currentTimeMillis()));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String email, OtpEntry entry, long currentTime, long currentDuration) {
+                        return expireAfterCreate(email, entry, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String email, OtpEntry entry, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .scheduler(Scheduler.systemScheduler())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, otps, "customer.otp");
+    }
+
+    /**
+     * Replaces any earlier code for the email.
+     */
     public void storeOtp(String email, String otp) {
-        Map<String, Long> tsMap = new HashMap<>();
-        tsMap.put(otp,System.currentTimeMillis() + 60000);
-        otpMap.put(email,tsMap);
+        otps.put(email, new OtpEntry(otp, System.currentTimeMillis() + ttl.toMillis()));
+    }
+
+    /**
+     * @return true when the code matches and had not expired at {@code ts}; the code is
+     * consumed, so only one caller ever gets true for it
+     */
+    public boolean validateOtp(String email, String otp, long ts){
+        OtpEntry entry = otps.getIfPresent(email);
+        return entry != null
+                && entry.otp().equals(otp)
+                && entry.expiresAtMillis() > ts
+                && otps.asMap().remove(email, entry);
+    }
+
+    long size() {
+        otps.cleanUp();
+        return otps.estimatedSize();
     }
 
-    public boolean validateOtp(String email, String otp, Long ts){
-        return otpMap.get(email) != null &&
-                otpMap.get(email).get(otp) != null &&
-                otpMap.get(email).get(otp) > ts;
+    private record OtpEntry(String otp, long expiresAtMillis) {
     }
 }
@@ -0,0 +1,60 @@
+package com.stalwart.customer.service;
+
+import com.stalwart.customer.dao.AuthenticationDao;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Deletes expired rows from {@code otp_details} in batches, so abandoned codes do not pile
+ * up, and applies {@code customer.otp.unlogged} to the table at startup.
+ */
+@Component
+public class OTPSweeper {
+
+    private static final Logger log = LoggerFactory.getLogger(OTPSweeper.class);
+
+    private final AuthenticationDao authenticationDao;
+    private final int batchSize;
+    private final boolean unlogged;
+    private final Counter swept;
+
+    public OTPSweeper(AuthenticationDao authenticationDao,
+                      MeterRegistry meterRegistry,
+                      @Value("${customer.otp.sweep-batch-size:1000}") int batchSize,
+                      @Value("${customer.otp.unlogged:false}") boolean unlogged) {
+        this.authenticationDao = authenticationDao;
+        this.batchSize = batchSize;
+        this.unlogged = unlogged;
+        this.swept = Counter.builder("customer.otp.swept")
+                .description("Expired OTP rows deleted by the sweeper")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void applyTablePersistence() {
+        authenticationDao.setOTPTableUnlogged(unlogged);
+    }
+
+    @Scheduled(
+            initialDelayString = "${customer.otp.sweep-interval:PT1M}",
+            fixedDelayString = "${customer.otp.sweep-interval:PT1M}")
+    public void sweep() {
+        int total = 0;
+        int deleted;
+        do {
+            // one short transaction per batch keeps locks brief
+            deleted = authenticationDao.deleteExpiredOTPs(batchSize);
+            total += deleted;
+        } while (deleted == batchSize);
+        swept.increment(total);
+        if (total > 0)
+            log.debug("Deleted {} expired OTPs", total);
+    }
+}
@@ -0,0 +1,59 @@
+package com.stalwart.customer.service;
+
+import com.stalwart.customer.dao.OutboxDao;
+import com.stalwart.customer.model.OutboxMessage;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+
+@Service
+public class OutboxDataAccessService implements OutboxDao {
+
+    private static final RowMapper<OutboxMessage> OUTBOX_MESSAGE_MAPPER = (rs, rowNum) -> new OutboxMessage(
+            rs.getLong("id"),
+            rs.getString("recipient"),
+            rs.getString("subject"),
+            rs.getString("body"),
+            rs.getInt("attempts")
+    );
+
+    public final JdbcTemplate jdbcTemplate;
+
+    public OutboxDataAccessService(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void enqueue(String recipient, String subject, String body) {
+        String enqueueQuery = "insert into otp_email_outbox(recipient,subject,body) values(?,?,?)";
+        jdbcTemplate.update(enqueueQuery, recipient, subject, body);
+    }
+
+    @Override
+    public List<OutboxMessage> claim(int limit, Duration lease) {
+        // skip locked lets several nodes claim disjoint batches
+        String claimQuery = "update otp_email_outbox set next_attempt_at = now() + ? * interval '1 millisecond' " +
+                "where id in (select id from otp_email_outbox where next_attempt_at <= now() " +
+                "order by id limit ? for update skip locked) " +
+                "returning id,recipient,subject,body,attempts";
+        return jdbcTemplate.query(claimQuery, OUTBOX_MESSAGE_MAPPER, lease.toMillis(), limit);
+    }
+
+    @Override
+    public void delete(List<Long> ids) {
+        if(ids.isEmpty())
+            return;
+        String deleteQuery = "delete from otp_email_outbox where id = any(?)";
+        jdbcTemplate.update(deleteQuery, (Object) ids.toArray(Long[]::new));
+    }
+
+    @Override
+    public void reschedule(long id, String error, Duration delay) {
+        String rescheduleQuery = "update otp_email_outbox set attempts = attempts + 1, last_error = ?, " +
+                "next_attempt_at = now() + ? * interval '1 millisecond' where id = ?";
+        jdbcTemplate.update(rescheduleQuery, error, delay.toMillis(), id);
+    }
+}
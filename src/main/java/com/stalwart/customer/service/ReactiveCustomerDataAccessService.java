@@ -0,0 +1,154 @@
+package com.stalwart.customer.service;
+
+import com.stalwart.customer.dao.ReactiveCustomerDao;
+import com.stalwart.customer.mapper.CustomerDTOR2dbcMapper;
+import com.stalwart.customer.model.Customer;
+import com.stalwart.customer.model.CustomerChangeEvent;
+import com.stalwart.customer.model.CustomerDTO;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * R2DBC implementation of {@link ReactiveCustomerDao}, running the same statements as
+ * {@link CustomerDataAccessService}. Writes are passed straight to the local
+ * {@link CustomerChangeSubscriber}s so the servlet side's cache and Bloom filter see them
+ * without waiting for {@link CustomerChangeListener}.
+ */
+@Service
+@Profile("reactive")
+public class ReactiveCustomerDataAccessService implements ReactiveCustomerDao {
+
+    private static final String DTO_COLUMNS = "id,name,email,gender,age,version";
+
+    private final DatabaseClient databaseClient;
+    private final List<CustomerChangeSubscriber> subscribers;
+
+    public ReactiveCustomerDataAccessService(DatabaseClient databaseClient,
+                                             List<CustomerChangeSubscriber> subscribers) {
+        this.databaseClient = databaseClient;
+        this.subscribers = subscribers;
+    }
+
+    @Override
+    public Flux<CustomerDTO> getAllCustomerDTOs() {
+        String selectQuery = "select " + DTO_COLUMNS + " from customer";
+        return databaseClient.sql(selectQuery)
+                .map(CustomerDTOR2dbcMapper.INSTANCE)
+                .all();
+    }
+
+    @Override
+    public Flux<CustomerDTO> getCustomerDTOsAfterId(int afterId, int limit) {
+        String selectPageQuery = "select " + DTO_COLUMNS + " from customer where id > :afterId order by id limit :limit";
+        return databaseClient.sql(selectPageQuery)
+                .bind("afterId", afterId)
+                .bind("limit", limit)
+                .map(CustomerDTOR2dbcMapper.INSTANCE)
+                .all();
+    }
+
+    @Override
+    public Mono<CustomerDTO> getCustomerDTOById(int id) {
+        String selectbyIdQuery = "select " + DTO_COLUMNS + " from customer where id = :id";
+        return databaseClient.sql(selectbyIdQuery)
+                .bind("id", id)
+                .map(CustomerDTOR2dbcMapper.INSTANCE)
+                .one();
+    }
+
+    @Override
+    public Mono<CustomerDTO> getCustomerDTOByEmail(String email) {
+        String selectbyEmailQuery = "select " + DTO_COLUMNS + " from customer where email = :email";
+        return databaseClient.sql(selectbyEmailQuery)
+                .bind("email", email)
+                .map(CustomerDTOR2dbcMapper.INSTANCE)
+                .one();
+    }
+
+    @Override
+    public Mono<Boolean> deleteCustomerById(int id) {
+        String deleteQuery = "delete from customer where id = :id returning email";
+        return databaseClient.sql(deleteQuery)
+                .bind("id", id)
+                .map(row -> row.get("email", String.class))
+                .one()
+                .doOnNext(email -> publish("DELETE", id, email))
+                .map(email -> true)
+                .defaultIfEmpty(false);
+    }
+
+    @Override
+    public Mono<Integer> deleteCustomerByEmail(String email) {
+        String deleteQuery = "delete from customer where email = :email returning id";
+        return databaseClient.sql(deleteQuery)
+                .bind("email", email)
+                .map(row -> row.get("id", Integer.class))
+                .one()
+                .doOnNext(id -> publish("DELETE", id, email));
+    }
+
+    @Override
+    public Mono<Integer> addCustomer(Customer customer) {
+        String addQuery = "insert into customer(name,email,age,gender,password) values(:name,:email,:age,:gender,:password) " +
+                "on conflict on constraint customer_email_unique do nothing returning id";
+        return databaseClient.sql(addQuery)
+                .bind("name", customer.getName())
+                .bind("email", customer.getEmail())
+                .bind("age", customer.getAge())
+                .bind("gender", customer.getGender().name())
+                .bind("password", customer.getPassword())
+                .map(row -> row.get("id", Integer.class))
+                .one()
+                .doOnNext(id -> publish("INSERT", id, customer.getEmail()));
+    }
+
+    @Override
+    public Mono<CustomerDTO> updateCustomer(Customer changes, Integer expectedVersion) {
+        List<String> assignments = new ArrayList<>();
+        Map<String, Object> args = new LinkedHashMap<>();
+        if(changes.getName()!=null){
+            assignments.add("name = :name");
+            args.put("name", changes.getName());
+        }
+        if(changes.getEmail()!=null){
+            assignments.add("email = :email");
+            args.put("email", changes.getEmail());
+        }
+        if(changes.getAge()!=0){
+            assignments.add("age = :age");
+            args.put("age", changes.getAge());
+        }
+        assignments.add("version = version + 1");
+
+        StringBuilder updateQuery = new StringBuilder("update customer set ")
+                .append(String.join(", ", assignments))
+                .append(" where id = :id");
+        args.put("id", changes.getId());
+        if(expectedVersion!=null){
+            updateQuery.append(" and version = :version");
+            args.put("version", expectedVersion);
+        }
+        updateQuery.append(" returning ").append(DTO_COLUMNS);
+
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(updateQuery.toString());
+        for (Map.Entry<String, Object> arg : args.entrySet())
+            spec = spec.bind(arg.getKey(), arg.getValue());
+        return spec.map(CustomerDTOR2dbcMapper.INSTANCE)
+                .one()
+                .doOnNext(customer -> publish("UPDATE", customer.getId(), customer.getEmail()));
+    }
+
+    private void publish(String operation, int id, String email) {
+        CustomerChangeEvent event = new CustomerChangeEvent(operation, id, email, System.currentTimeMillis());
+        for (CustomerChangeSubscriber subscriber : subscribers)
+            subscriber.onCustomerChange(event);
+    }
+}
@@ -0,0 +1,135 @@
+package com.stalwart.customer.service;
+
+import com.stalwart.customer.dao.ReactiveCustomerDao;
+import com.stalwart.customer.exceptions.CustomerVersionConflictException;
+import com.stalwart.customer.exceptions.UserAlreadyExistsException;
+import com.stalwart.customer.exceptions.UserNotFoundException;
+import com.stalwart.customer.model.Customer;
+import com.stalwart.customer.model.CustomerDTO;
+import com.stalwart.customer.model.CustomerPage;
+import com.stalwart.customer.model.CustomerRegistrationRequest;
+import com.stalwart.customer.model.CustomerUpdateRequest;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+
+/**
+ * {@link CustomerService} over {@link ReactiveCustomerDao}, with the same validation and the
+ * same exceptions. Password hashing is CPU bound and may wait for a hashing slot, so it runs
+ * on the bounded elastic scheduler rather than an event-loop thread.
+ */
+@Service
+@Profile("reactive")
+public class ReactiveCustomerService {
+
+    private final ReactiveCustomerDao customerDao;
+    private final PasswordEncoder passwordEncoder;
+
+    public ReactiveCustomerService(ReactiveCustomerDao customerDao,
+                                   PasswordEncoder passwordEncoder) {
+        this.customerDao = customerDao;
+        this.passwordEncoder = passwordEncoder;
+    }
+
+    public Flux<CustomerDTO> getAllCustomers(){
+        return customerDao.getAllCustomerDTOs();
+    }
+
+    public Mono<CustomerPage> getCustomersPage(String after, int limit){
+        return Mono.defer(() -> {
+            CustomerService.validatePageLimit(limit);
+            int afterId = after==null || after.isBlank() ? 0 : CustomerService.decodeCursor(after);
+
+            // fetch one extra row to find out whether another page exists
+            return customerDao.getCustomerDTOsAfterId(afterId, limit + 1).collectList();
+        }).map(customers -> {
+            boolean hasMore = customers.size() > limit;
+            List<CustomerDTO> page = hasMore ? customers.subList(0, limit) : customers;
+            String nextCursor = hasMore ? CustomerService.encodeCursor(page.get(page.size() - 1).getId()) : null;
+            return new CustomerPage(page, nextCursor);
+        });
+    }
+
+    /**
+     * @return id of the new customer
+     */
+    public Mono<Integer> addCustomer(CustomerRegistrationRequest request){
+        return Mono.fromCallable(() -> {
+                    CustomerService.validateRegistration(request);
+                    return new Customer(
+                            request.getName(),
+                            request.getEmail(),
+                            passwordEncoder.encode(request.getPassword()),
+                            request.getAge(),
+                            request.getGender());
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(customerDao::addCustomer)
+                .switchIfEmpty(Mono.error(() ->
+                        new UserAlreadyExistsException("Given email %s already exists".formatted(request.getEmail()))));
+    }
+
+    public Mono<CustomerDTO> getCustomerById(int id) {
+        return customerDao.getCustomerDTOById(id)
+                .switchIfEmpty(Mono.error(() ->
+                        new UserNotFoundException("user not found with id %s".formatted(id))));
+    }
+
+    public Mono<Void> deleteCustomerById(int id){
+        return customerDao.deleteCustomerById(id)
+                .filter(Boolean::booleanValue)
+                .switchIfEmpty(Mono.error(() ->
+                        new UserNotFoundException("user not found with id %s".formatted(id))))
+                .then();
+    }
+
+    public Mono<CustomerDTO> getCustomerByEmail(String email){
+        return customerDao.getCustomerDTOByEmail(email)
+                .switchIfEmpty(Mono.error(() ->
+                        new UserNotFoundException("user not found with email %s".formatted(email))));
+    }
+
+    public Mono<Void> deleteCustomerWithEmail(String email){
+        return customerDao.deleteCustomerByEmail(email)
+                .switchIfEmpty(Mono.error(() ->
+                        new UserNotFoundException("user not found with email %s".formatted(email))))
+                .then();
+    }
+
+    public Mono<CustomerDTO> patchCustomer(int id, CustomerUpdateRequest request){
+        return Mono.defer(() -> {
+            CustomerService.validateUpdate(request);
+
+            if(request.name()==null && request.email()==null && request.age()==null)
+                return getCustomerById(id).map(customer -> checkVersion(customer, request.version()));
+
+            Customer changes = new Customer();
+            changes.setId(id);
+            changes.setName(request.name());
+            changes.setEmail(request.email());
+            changes.setAge(request.age()==null ? 0 : request.age());
+
+            return customerDao.updateCustomer(changes, request.version())
+                    .onErrorMap(DuplicateKeyException.class, e ->
+                            new UserAlreadyExistsException("Given email %s already exists".formatted(request.email())))
+                    // only reached on failure, to tell a missing customer from a stale version
+                    .switchIfEmpty(Mono.defer(() -> getCustomerById(id)
+                            .map(current -> checkVersion(current, request.version()))
+                            .then(Mono.error(() ->
+                                    new CustomerVersionConflictException("customer %s was modified concurrently".formatted(id))))));
+        });
+    }
+
+    private CustomerDTO checkVersion(CustomerDTO customer, Integer expectedVersion){
+        if(expectedVersion!=null && !expectedVersion.equals(customer.getVersion()))
+            throw new CustomerVersionConflictException(
+                    "customer %s is at version %s, not %s".formatted(customer.getId(), customer.getVersion(), expectedVersion));
+        return customer;
+    }
+}
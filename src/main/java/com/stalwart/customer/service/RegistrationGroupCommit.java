@@ -0,0 +1,154 @@
+package com.stalwart.customer.service;
+
+import com.stalwart.customer.dao.CustomerDao;
+import com.stalwart.customer.datasource.ReplicaRoutingContext;
+import com.stalwart.customer.model.Customer;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group commit for registrations. Concurrent {@link #add(Customer)} calls are queued and one
+ * writer thread inserts them with a single multi-row statement: once the first registration
+ * arrives it waits up to {@code linger} for others, or until {@code batchSize} are queued.
+ * While a batch is being written the next one fills up, so the commit rate stays flat as the
+ * registration rate grows. A failed batch is retried one registration at a time so a bad row
+ * only fails its own caller.
+ */
+@Component
+@ConditionalOnProperty(name = "customer.group-commit.enabled", havingValue = "true")
+public class RegistrationGroupCommit {
+
+    private static final Logger log = LoggerFactory.getLogger(RegistrationGroupCommit.class);
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final CustomerDao customerDao;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final BlockingQueue<PendingRegistration> queue = new LinkedBlockingQueue<>();
+    private final ExecutorService writer;
+    private final DistributionSummary batchSizes;
+    private final Timer writeTime;
+    private volatile boolean running = true;
+
+    public RegistrationGroupCommit(CustomerDao customerDao,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${customer.group-commit.batch-size:100}") int batchSize,
+                                   @Value("${customer.group-commit.linger:2ms}") Duration linger) {
+        this.customerDao = customerDao;
+        this.batchSize = batchSize;
+        this.lingerNanos = linger.toNanos();
+        this.batchSizes = DistributionSummary.builder("customer.group-commit.batch.size")
+                .description("Registrations written per statement")
+                .register(meterRegistry);
+        this.writeTime = Timer.builder("customer.group-commit.write")
+                .description("Time to write one batch of registrations")
+                .register(meterRegistry);
+        this.writer = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("registration-group-commit-"));
+        this.writer.execute(this::writeLoop);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        writer.shutdown();
+        writer.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Queues the customer for the next batch and waits until that batch is written.
+     *
+     * @return false when the email is already taken; otherwise the generated id is set
+     */
+    public boolean add(Customer customer) {
+        if (!running)
+            return customerDao.addCustomer(customer);
+        PendingRegistration pending = new PendingRegistration(customer, new CompletableFuture<>());
+        queue.add(pending);
+        // the writer may have stopped after the check above
+        if (!running && queue.remove(pending))
+            return customerDao.addCustomer(customer);
+        try {
+            boolean inserted = pending.result().join();
+            // the insert ran on the writer thread, keep this request's reads on the primary
+            ReplicaRoutingContext.markWrite();
+            return inserted;
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw e;
+        }
+    }
+
+    private void writeLoop() {
+        List<PendingRegistration> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingRegistration first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null)
+                    continue;
+                batch.add(first);
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() == batchSize || remaining <= 0)
+                        break;
+                    PendingRegistration next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null)
+                        break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                queue.drainTo(batch);
+                write(batch);
+                return;
+            }
+            batchSizes.record(batch.size());
+            writeTime.record(() -> write(batch));
+            batch.clear();
+        }
+    }
+
+    private void write(List<PendingRegistration> batch) {
+        if (batch.isEmpty())
+            return;
+        boolean[] inserted;
+        try {
+            inserted = customerDao.addCustomers(batch.stream().map(PendingRegistration::customer).toList());
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                batch.get(0).result().completeExceptionally(e);
+                return;
+            }
+            log.warn("Writing {} registrations failed, retrying them one by one", batch.size(), e);
+            for (PendingRegistration pending : batch)
+                write(List.of(pending));
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++)
+            batch.get(i).result().complete(inserted[i]);
+    }
+
+    private record PendingRegistration(Customer customer, CompletableFuture<Boolean> result) {
+    }
+}
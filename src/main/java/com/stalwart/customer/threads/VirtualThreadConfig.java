@@ -0,0 +1,44 @@
+package com.stalwart.customer.threads;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Enabled by {@code customer.threads.virtual=true}; needs Java 21 (build with {@code -Pjava21}).
+ * <p>
+ * Tomcat then runs every request on its own virtual thread, so JDBC, SMTP and the wait for a
+ * password-hashing slot park the virtual thread instead of holding a worker, and throughput is
+ * no longer capped by {@code server.tomcat.threads.max}. Postgres stays protected by the Hikari
+ * pool size ({@code spring.datasource.hikari.maximum-pool-size}) and the concurrency limits in
+ * {@link com.stalwart.customer.security.ConcurrencyLimitFilter}, which shed excess requests
+ * rather than letting them queue for a connection. Password hashing stays on its bounded
+ * platform pool since it is CPU bound.
+ * <p>
+ * The executor is looked up reflectively so the default Java 17 build still compiles.
+ */
+@Configuration
+@ConditionalOnProperty(name = "customer.threads.virtual", havingValue = "true")
+public class VirtualThreadConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(
+                    "customer.threads.virtual needs Java 21 or later, running on " + Runtime.version());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer(ExecutorService virtualThreadExecutor) {
+        return protocolHandler -> protocolHandler.setExecutor(virtualThreadExecutor);
+    }
+}
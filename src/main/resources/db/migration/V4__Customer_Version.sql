@@ -0,0 +1,2 @@
+ALTER TABLE customer
+ADD COLUMN version int not null default 0;
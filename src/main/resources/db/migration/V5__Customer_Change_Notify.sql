@@ -0,0 +1,21 @@
+create or replace function notify_customer_change() returns trigger as $$
+declare
+    changed customer;
+begin
+    if TG_OP = 'DELETE' then
+        changed := OLD;
+    else
+        changed := NEW;
+    end if;
+    -- operation|id|epoch millis|email, email last since it is the only free-form part
+    perform pg_notify(
+        'customer_change',
+        TG_OP || '|' || changed.id || '|' || (extract(epoch from clock_timestamp()) * 1000)::bigint || '|' || changed.email
+    );
+    return null;
+end;
+$$ language plpgsql;
+
+create trigger customer_change_notify
+    after update or delete on customer
+    for each row execute function notify_customer_change();
@@ -0,0 +1,5 @@
+drop trigger customer_change_notify on customer;
+
+create trigger customer_change_notify
+    after insert or update or delete on customer
+    for each row execute function notify_customer_change();
@@ -0,0 +1,6 @@
+-- insert_ts and exp_ts held epoch millis as text
+alter table otp_details
+    alter column insert_ts type timestamptz using to_timestamp(insert_ts::bigint / 1000.0),
+    alter column exp_ts type timestamptz using to_timestamp(exp_ts::bigint / 1000.0);
+
+create index otp_details_exp_ts_idx on otp_details(exp_ts);
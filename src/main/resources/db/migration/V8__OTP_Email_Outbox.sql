@@ -0,0 +1,12 @@
+create table otp_email_outbox(
+    id bigserial primary key,
+    recipient text not null,
+    subject text not null,
+    body text not null,
+    attempts int not null default 0,
+    created_at timestamptz not null default now(),
+    next_attempt_at timestamptz not null default now(),
+    last_error text
+);
+
+create index otp_email_outbox_next_attempt_at_idx on otp_email_outbox(next_attempt_at);
@@ -0,0 +1,110 @@
+package com.stalwart.customer.benchmark;
+
+import com.stalwart.customer.jwt.JWTAuthenticationFilter;
+import com.stalwart.customer.jwt.JWTUtil;
+import com.stalwart.customer.mapper.CustomerCredentialsRowMapper;
+import com.stalwart.customer.mapper.CustomerRowMapper;
+import com.stalwart.customer.model.Customer;
+import com.stalwart.customer.model.Gender;
+import com.stalwart.customer.service.ActiveCustomerCheck;
+import com.stalwart.customer.service.CustomerDataAccessService;
+import com.stalwart.customer.service.CustomerUserDetailsService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.flywaydb.core.Flyway;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests per second through {@link JWTAuthenticationFilter} against a real Postgres, with the
+ * per-request customer lookup and with {@code jwt.claims-only.enabled}. The customer cache is
+ * left out so the lookup mode pays the query it pays on a cache miss. Needs Docker.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.stalwart.customer.benchmark.AuthenticationModeBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(8)
+@Fork(1)
+public class AuthenticationModeBenchmark {
+
+    @Param({"false", "true"})
+    private boolean claimsOnly;
+
+    private PostgreSQLContainer<?> postgresContainer;
+    private JWTAuthenticationFilter filter;
+    private String authorization;
+
+    @Setup
+    public void setUp() {
+        postgresContainer = new PostgreSQLContainer<>("postgres:latest")
+                .withDatabaseName("stalwart-benchmark")
+                .withUsername("pavan")
+                .withPassword("postgres");
+        postgresContainer.start();
+        Flyway.configure().dataSource(
+                postgresContainer.getJdbcUrl(),
+                postgresContainer.getUsername(),
+                postgresContainer.getPassword()
+        ).load().migrate();
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(DataSourceBuilder.create()
+                .driverClassName(postgresContainer.getDriverClassName())
+                .url(postgresContainer.getJdbcUrl())
+                .username(postgresContainer.getUsername())
+                .password(postgresContainer.getPassword())
+                .build());
+        CustomerDataAccessService customerDao = new CustomerDataAccessService(
+                jdbcTemplate, new CustomerRowMapper(), new CustomerCredentialsRowMapper());
+        Customer customer = new Customer("benchmark", "benchmark@stalwart.com", "password", 30, Gender.OTHER);
+        customerDao.addCustomer(customer);
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        JWTUtil jwtUtil = new JWTUtil(meterRegistry, 10_000);
+        filter = new JWTAuthenticationFilter(
+                jwtUtil,
+                new CustomerUserDetailsService(customerDao),
+                new ActiveCustomerCheck(customerDao, meterRegistry, Duration.ofSeconds(30), 10_000),
+                claimsOnly);
+        authorization = "Bearer " + jwtUtil.issueToken(customer.getEmail(), customer.getId(), List.of("ROLE_USER"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        postgresContainer.stop();
+    }
+
+    @Benchmark
+    public Object authenticate() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/customer/1");
+        request.addHeader("Authorization", authorization);
+        try {
+            filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+            return SecurityContextHolder.getContext().getAuthentication();
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(AuthenticationModeBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,116 @@
+package com.stalwart.customer.benchmark;
+
+import com.stalwart.customer.mapper.CustomerDTOMapper;
+import com.stalwart.customer.mapper.CustomerDTORowMapper;
+import com.stalwart.customer.mapper.CustomerRowMapper;
+import com.stalwart.customer.model.Gender;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares mapping a large customer result set the old way (every column by name into a
+ * {@code Customer}, then {@link CustomerDTOMapper}) with {@link CustomerDTORowMapper} on the
+ * password-less projection. The result sets are in-memory, so this measures mapping cost
+ * only, not the bytes saved on the wire.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.stalwart.customer.benchmark.CustomerRowMapperBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CustomerRowMapperBenchmark {
+
+    private static final Gender[] GENDERS = Gender.values();
+
+    @Param({"10000", "100000"})
+    private int rows;
+
+    private CachedRowSet fullRows;
+    private CachedRowSet projectedRows;
+    private final CustomerRowMapper customerRowMapper = new CustomerRowMapper();
+    private final CustomerDTOMapper customerDTOMapper = new CustomerDTOMapper();
+
+    @Setup
+    public void setUp() throws SQLException {
+        fullRows = rowSet(true);
+        projectedRows = rowSet(false);
+    }
+
+    @Benchmark
+    public void fullRowByName(Blackhole blackhole) throws SQLException {
+        fullRows.beforeFirst();
+        int rowNum = 0;
+        while (fullRows.next())
+            blackhole.consume(customerDTOMapper.apply(customerRowMapper.mapRow(fullRows, rowNum++)));
+    }
+
+    @Benchmark
+    public void projectionByIndex(Blackhole blackhole) throws SQLException {
+        CustomerDTORowMapper customerDTORowMapper = new CustomerDTORowMapper();
+        projectedRows.beforeFirst();
+        int rowNum = 0;
+        while (projectedRows.next())
+            blackhole.consume(customerDTORowMapper.mapRow(projectedRows, rowNum++));
+    }
+
+    private CachedRowSet rowSet(boolean withPassword) throws SQLException {
+        String[] columns = withPassword
+                ? new String[]{"id", "name", "email", "password", "age", "gender", "version"}
+                : new String[]{"id", "name", "email", "gender", "age", "version"};
+
+        RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+        metaData.setColumnCount(columns.length);
+        for (int i = 0; i < columns.length; i++) {
+            metaData.setColumnName(i + 1, columns[i]);
+            metaData.setColumnType(i + 1, isNumeric(columns[i]) ? Types.INTEGER : Types.VARCHAR);
+        }
+
+        CachedRowSet rowSet = RowSetProvider.newFactory().createCachedRowSet();
+        rowSet.setMetaData(metaData);
+        for (int row = 1; row <= rows; row++) {
+            rowSet.moveToInsertRow();
+            for (int i = 0; i < columns.length; i++)
+                rowSet.updateObject(i + 1, value(columns[i], row));
+            rowSet.insertRow();
+            rowSet.moveToCurrentRow();
+        }
+        return rowSet;
+    }
+
+    private static boolean isNumeric(String column) {
+        return column.equals("id") || column.equals("age") || column.equals("version");
+    }
+
+    private static Object value(String column, int row) {
+        return switch (column) {
+            case "id" -> row;
+            case "name" -> "customer " + row;
+            case "email" -> "customer" + row + "@stalwart.com";
+            // a bcrypt hash is 60 characters
+            case "password" -> "$2a$10$" + "x".repeat(53);
+            case "age" -> 18 + row % 80;
+            case "gender" -> GENDERS[row % GENDERS.length].name();
+            default -> row % 5;
+        };
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CustomerRowMapperBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,81 @@
+package com.stalwart.customer.benchmark;
+
+import com.stalwart.customer.jwt.JWTUtil;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.security.Key;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of authenticating one request: the previous filter path (three parses, each with a
+ * freshly built key and parser), a single uncached verification, and a cache hit.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.stalwart.customer.benchmark.JwtVerificationBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtVerificationBenchmark {
+
+    private static final String SECRET_KEY =
+            "$#nevergiveup@!@gowithyourattitude^..^makeitpossible#$---$#nevergiveup@!@gowithyourattitude^..^makeitpossible#$";
+
+    private JWTUtil uncached;
+    private JWTUtil cached;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        uncached = new JWTUtil(new SimpleMeterRegistry(), 0);
+        cached = new JWTUtil(new SimpleMeterRegistry(), 10_000);
+        token = cached.issueToken("customer@stalwart.com", List.of("ROLE_USER"));
+        cached.verify(token);
+    }
+
+    @Benchmark
+    public boolean previousFilterPath() {
+        String subject = legacyClaims(token).getSubject();
+        return legacyClaims(token).getSubject().equals(subject)
+                && !legacyClaims(token).getExpiration().before(Date.from(Instant.now()));
+    }
+
+    @Benchmark
+    public String verifyOnce() {
+        return uncached.verify(token).subject();
+    }
+
+    @Benchmark
+    public String verifyCached() {
+        return cached.verify(token).subject();
+    }
+
+    // what JWTUtil.getClaims did before the key and parser were shared
+    private static Claims legacyClaims(String token) {
+        Key key = Keys.hmacShaKeyFor(SECRET_KEY.getBytes());
+        return (Claims) Jwts.parserBuilder()
+                .setSigningKey(key)
+                .build()
+                .parse(token)
+                .getBody();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JwtVerificationBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
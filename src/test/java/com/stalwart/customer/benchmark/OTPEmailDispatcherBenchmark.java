@@ -0,0 +1,131 @@
+package com.stalwart.customer.benchmark;
+
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import com.stalwart.customer.dao.OutboxDao;
+import com.stalwart.customer.model.OutboxMessage;
+import com.stalwart.customer.service.OTPEmailDispatcher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Transport;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sustained OTP emails per second delivered by {@link OTPEmailDispatcher} to a GreenMail SMTP
+ * server, by number of sender threads. Each invocation drains {@value #MESSAGES} queued emails
+ * in batches of {@value #BATCH_SIZE}; after every iteration the number of SMTP connections is
+ * checked to be one per sender share of a batch, so a regression to a connection per message
+ * fails the run instead of just showing up as a lower score.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.stalwart.customer.benchmark.OTPEmailDispatcherBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(OTPEmailDispatcherBenchmark.MESSAGES)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class OTPEmailDispatcherBenchmark {
+
+    static final int MESSAGES = 500;
+    static final int BATCH_SIZE = 100;
+
+    @Param({"1", "2", "4"})
+    private int senders;
+
+    private final AtomicLong connections = new AtomicLong();
+    private final InMemoryOutbox outbox = new InMemoryOutbox();
+    private GreenMail greenMail;
+    private OTPEmailDispatcher dispatcher;
+    private long invocations;
+
+    @Setup
+    public void setUp() {
+        greenMail = new GreenMail(ServerSetupTest.SMTP);
+        greenMail.start();
+        JavaMailSenderImpl javaMailSender = new JavaMailSenderImpl() {
+            @Override
+            protected Transport connectTransport() throws MessagingException {
+                connections.incrementAndGet();
+                return super.connectTransport();
+            }
+        };
+        javaMailSender.setHost("localhost");
+        javaMailSender.setPort(ServerSetupTest.SMTP.getPort());
+        dispatcher = new OTPEmailDispatcher(outbox, javaMailSender, new SimpleMeterRegistry(),
+                BATCH_SIZE, senders, 5, Duration.ofSeconds(1), Duration.ofMinutes(1), "no-reply@stalwart.com");
+    }
+
+    @TearDown
+    public void tearDown() {
+        dispatcher.shutdown();
+        greenMail.stop();
+    }
+
+    @TearDown(Level.Iteration)
+    public void checkConnectionReuse() throws Exception {
+        long expected = invocations * (MESSAGES / BATCH_SIZE) * senders;
+        if (connections.get() != expected)
+            throw new IllegalStateException("opened %d SMTP connections, expected %d".formatted(connections.get(), expected));
+        connections.set(0);
+        invocations = 0;
+        greenMail.purgeEmailFromAllMailboxes();
+    }
+
+    @Benchmark
+    public void dispatch() {
+        for (int i = 0; i < MESSAGES; i++)
+            outbox.enqueue("customer" + i + "@stalwart.com", "OTP for Password Reset", "Your OTP is: " + i);
+        dispatcher.dispatch();
+        invocations++;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(OTPEmailDispatcherBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    // every message is delivered in the benchmark, so there is nothing to lease or reschedule
+    private static class InMemoryOutbox implements OutboxDao {
+
+        private final Deque<OutboxMessage> queued = new ArrayDeque<>();
+        private long nextId = 1;
+
+        @Override
+        public synchronized void enqueue(String recipient, String subject, String body) {
+            queued.add(new OutboxMessage(nextId++, recipient, subject, body, 0));
+        }
+
+        @Override
+        public synchronized List<OutboxMessage> claim(int limit, Duration lease) {
+            List<OutboxMessage> claimed = new ArrayList<>(limit);
+            while (claimed.size() < limit && !queued.isEmpty())
+                claimed.add(queued.poll());
+            return claimed;
+        }
+
+        @Override
+        public void delete(List<Long> ids) {
+        }
+
+        @Override
+        public synchronized void reschedule(long id, String error, Duration delay) {
+            throw new IllegalStateException("delivery of OTP email %d failed: %s".formatted(id, error));
+        }
+    }
+}
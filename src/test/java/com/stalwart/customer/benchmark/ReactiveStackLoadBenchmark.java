@@ -0,0 +1,85 @@
+package com.stalwart.customer.benchmark;
+
+import com.stalwart.customer.CustomerApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+
+/**
+ * Closed-loop HTTP load on {@code GET /api/customer/all} against the servlet endpoints and the
+ * reactive ones of one application started with the {@code reactive} profile, printing
+ * throughput, error count and latency percentiles for each. The customer cache is off so the
+ * servlet side queries on every request, like the reactive side does. Needs Docker.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.stalwart.customer.benchmark.ReactiveStackLoadBenchmark
+ * -Dexec.args="2000 30"} for 2000 concurrent clients over 30 seconds.
+ */
+public class ReactiveStackLoadBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        Duration duration = Duration.ofSeconds(args.length > 1 ? Long.parseLong(args[1]) : 20);
+
+        try (PostgreSQLContainer<?> postgresContainer = new PostgreSQLContainer<>("postgres:latest")
+                .withDatabaseName("stalwart-load")
+                .withUsername("pavan")
+                .withPassword("postgres")
+                .withCommand("postgres", "-c", "max_connections=200")) {
+            postgresContainer.start();
+            int reactivePort = freePort();
+
+            try (ConfigurableApplicationContext context = new SpringApplicationBuilder(CustomerApplication.class)
+                    .profiles("reactive")
+                    .run(
+                            "--server.port=0",
+                            "--customer.reactive.port=" + reactivePort,
+                            "--customer.cache.enabled=false",
+                            "--customer.rate-limit.enabled=false",
+                            "--customer.concurrency.enabled=false",
+                            "--customer.change-listener.enabled=false",
+                            "--spring.mail.host=localhost",
+                            "--spring.datasource.url=" + postgresContainer.getJdbcUrl(),
+                            "--spring.datasource.username=" + postgresContainer.getUsername(),
+                            "--spring.datasource.password=" + postgresContainer.getPassword())) {
+                int servletPort = ((WebServerApplicationContext) context).getWebServer().getPort();
+                HttpClient httpClient = HttpClient.newBuilder()
+                        .executor(Executors.newFixedThreadPool(16))
+                        .build();
+                String token = ThreadModeLoadBenchmark.token(httpClient, servletPort);
+
+                run(httpClient, "servlet", servletPort, token, clients, duration);
+                run(httpClient, "reactive", reactivePort, token, clients, duration);
+            }
+        }
+    }
+
+    private static void run(HttpClient httpClient, String stack, int port, String token,
+                            int clients, Duration duration) throws InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/customer/all"))
+                .header("Authorization", "Bearer " + token)
+                .build();
+
+        // warm up before measuring
+        ThreadModeLoadBenchmark.load(httpClient, request, Math.min(clients, 50), Duration.ofSeconds(5));
+        ThreadModeLoadBenchmark.Result result = ThreadModeLoadBenchmark.load(httpClient, request, clients, duration);
+        System.out.printf("%s, %d clients: %.0f req/s, %d errors, p50 %.1f ms, p99 %.1f ms%n",
+                stack, clients,
+                result.completed() / (duration.toNanos() / 1e9), result.errors(),
+                result.percentile(0.50) / 1e6, result.percentile(0.99) / 1e6);
+    }
+
+    private static int freePort() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
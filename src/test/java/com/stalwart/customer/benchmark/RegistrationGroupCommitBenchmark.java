@@ -0,0 +1,97 @@
+package com.stalwart.customer.benchmark;
+
+import com.stalwart.customer.mapper.CustomerCredentialsRowMapper;
+import com.stalwart.customer.mapper.CustomerRowMapper;
+import com.stalwart.customer.model.Customer;
+import com.stalwart.customer.model.Gender;
+import com.stalwart.customer.service.CustomerDataAccessService;
+import com.stalwart.customer.service.RegistrationGroupCommit;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.flywaydb.core.Flyway;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Registrations per second from 64 concurrent callers against a real Postgres, each inserted
+ * with its own autocommit statement and through {@link RegistrationGroupCommit}. The password
+ * is hashed once up front so only the write path is measured. Needs Docker.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.stalwart.customer.benchmark.RegistrationGroupCommitBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(64)
+@Fork(1)
+public class RegistrationGroupCommitBenchmark {
+
+    @Param({"false", "true"})
+    private boolean groupCommit;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private PostgreSQLContainer<?> postgresContainer;
+    private CustomerDataAccessService customerDao;
+    private RegistrationGroupCommit registrationGroupCommit;
+
+    @Setup
+    public void setUp() {
+        postgresContainer = new PostgreSQLContainer<>("postgres:latest")
+                .withDatabaseName("stalwart-benchmark")
+                .withUsername("pavan")
+                .withPassword("postgres");
+        postgresContainer.start();
+        Flyway.configure().dataSource(
+                postgresContainer.getJdbcUrl(),
+                postgresContainer.getUsername(),
+                postgresContainer.getPassword()
+        ).load().migrate();
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(DataSourceBuilder.create()
+                .driverClassName(postgresContainer.getDriverClassName())
+                .url(postgresContainer.getJdbcUrl())
+                .username(postgresContainer.getUsername())
+                .password(postgresContainer.getPassword())
+                .build());
+        customerDao = new CustomerDataAccessService(
+                jdbcTemplate, new CustomerRowMapper(), new CustomerCredentialsRowMapper());
+        registrationGroupCommit = new RegistrationGroupCommit(
+                customerDao, new SimpleMeterRegistry(), 100, Duration.ofMillis(2));
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        registrationGroupCommit.shutdown();
+        postgresContainer.stop();
+    }
+
+    @Benchmark
+    public boolean register() {
+        Customer customer = new Customer(
+                "benchmark",
+                "benchmark" + sequence.incrementAndGet() + "@stalwart.com",
+                "$2a$10$7EqJtq98hPqEX7fNZaFWoOhi5BWX4Z3X7LPQ1ZlS5xG5U6l9aX2mO",
+                30,
+                Gender.OTHER);
+        return groupCommit
+                ? registrationGroupCommit.add(customer)
+                : customerDao.addCustomer(customer);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RegistrationGroupCommitBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,160 @@
+package com.stalwart.customer.benchmark;
+
+import com.stalwart.customer.CustomerApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closed-loop HTTP load against the whole application, once on Tomcat's platform worker pool
+ * and once with {@code customer.threads.virtual=true}, printing throughput, error count and
+ * latency percentiles for each. Every request authenticates its token against the database
+ * and reads a customer, with the customer cache off so each one holds a JDBC connection.
+ * Needs Docker, and Java 21 for the virtual-thread run (it is skipped otherwise).
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.stalwart.customer.benchmark.ThreadModeLoadBenchmark
+ * -Dexec.args="2000 30"} for 2000 concurrent clients over 30 seconds.
+ */
+public class ThreadModeLoadBenchmark {
+
+    private static final String REGISTRATION =
+            "{\"name\":\"load\",\"email\":\"load@stalwart.com\",\"age\":30,\"password\":\"password\",\"gender\":\"OTHER\"}";
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        Duration duration = Duration.ofSeconds(args.length > 1 ? Long.parseLong(args[1]) : 20);
+
+        try (PostgreSQLContainer<?> postgresContainer = new PostgreSQLContainer<>("postgres:latest")
+                .withDatabaseName("stalwart-load")
+                .withUsername("pavan")
+                .withPassword("postgres")
+                .withCommand("postgres", "-c", "max_connections=200")) {
+            postgresContainer.start();
+
+            run(postgresContainer, false, clients, duration);
+            if (Runtime.version().feature() >= 21)
+                run(postgresContainer, true, clients, duration);
+            else
+                System.out.println("Skipping virtual threads: running on Java " + Runtime.version());
+        }
+    }
+
+    private static void run(PostgreSQLContainer<?> postgresContainer, boolean virtual,
+                            int clients, Duration duration) throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(CustomerApplication.class).run(
+                "--server.port=0",
+                "--customer.threads.virtual=" + virtual,
+                "--customer.cache.enabled=false",
+                "--customer.rate-limit.enabled=false",
+                "--customer.concurrency.enabled=false",
+                "--customer.change-listener.enabled=false",
+                "--spring.mail.host=localhost",
+                "--spring.datasource.url=" + postgresContainer.getJdbcUrl(),
+                "--spring.datasource.username=" + postgresContainer.getUsername(),
+                "--spring.datasource.password=" + postgresContainer.getPassword())) {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            HttpClient httpClient = HttpClient.newBuilder()
+                    .executor(Executors.newFixedThreadPool(16))
+                    .build();
+            String token = token(httpClient, port);
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/customer/all"))
+                    .header("Authorization", "Bearer " + token)
+                    .build();
+
+            // warm up before measuring
+            load(httpClient, request, Math.min(clients, 50), Duration.ofSeconds(5));
+            Result result = load(httpClient, request, clients, duration);
+            System.out.printf("%s threads, %d clients: %.0f req/s, %d errors, p50 %.1f ms, p99 %.1f ms%n",
+                    virtual ? "virtual" : "platform", clients,
+                    result.completed() / (duration.toNanos() / 1e9), result.errors(),
+                    result.percentile(0.50) / 1e6, result.percentile(0.99) / 1e6);
+        }
+    }
+
+    static String token(HttpClient httpClient, int port) throws Exception {
+        HttpResponse<Void> response = httpClient.send(
+                HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/customer"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(REGISTRATION))
+                        .build(),
+                HttpResponse.BodyHandlers.discarding());
+        return response.headers().firstValue("Authorization").orElseGet(() -> login(httpClient, port));
+    }
+
+    private static String login(HttpClient httpClient, int port) {
+        try {
+            HttpResponse<Void> response = httpClient.send(
+                    HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/auth/login"))
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofString(
+                                    "{\"username\":\"load@stalwart.com\",\"password\":\"password\"}"))
+                            .build(),
+                    HttpResponse.BodyHandlers.discarding());
+            return response.headers().firstValue("Authorization").orElseThrow();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static Result load(HttpClient httpClient, HttpRequest request, int clients, Duration duration)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + duration.toNanos();
+        AtomicLong errors = new AtomicLong();
+        List<long[]> latencies = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        List<Future<long[]>> futures = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            futures.add(executor.submit(() -> {
+                long[] samples = new long[1024];
+                int count = 0;
+                while (System.nanoTime() < deadline) {
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() != 200)
+                            errors.incrementAndGet();
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                    }
+                    if (count == samples.length)
+                        samples = Arrays.copyOf(samples, count * 2);
+                    samples[count++] = System.nanoTime() - start;
+                }
+                return Arrays.copyOf(samples, count);
+            }));
+        }
+        for (Future<long[]> future : futures) {
+            try {
+                latencies.add(future.get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        executor.shutdown();
+        return new Result(latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray(), errors.get());
+    }
+
+    record Result(long[] sortedLatencies, long errors) {
+
+        long completed() {
+            return sortedLatencies.length;
+        }
+
+        double percentile(double p) {
+            return sortedLatencies.length == 0 ? 0 : sortedLatencies[(int) Math.min(sortedLatencies.length - 1, p * sortedLatencies.length)];
+        }
+    }
+}
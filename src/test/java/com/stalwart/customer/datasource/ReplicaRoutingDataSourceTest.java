@@ -0,0 +1,99 @@
+package com.stalwart.customer.datasource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReplicaRoutingDataSourceTest {
+
+    private final DataSource primary = mock(DataSource.class);
+    private final Connection primaryConnection = mock(Connection.class);
+    private final DataSource replica = mock(DataSource.class);
+    private final Connection replicaConnection = mock(Connection.class);
+    private ReplicaRoutingDataSource underTest;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        ReplicaRoutingContext.clear();
+        if (underTest != null)
+            underTest.destroy();
+    }
+
+    @Test
+    void routesReadsToReplicaAndWritesToPrimary() throws Exception {
+        givenReplicaLag(0.0);
+        underTest = routingDataSource(Duration.ofSeconds(5));
+
+        assertThat(ReplicaRoutingContext.openForRead(underTest)).isSameAs(replicaConnection);
+        assertThat(underTest.getConnection()).isSameAs(primaryConnection);
+    }
+
+    @Test
+    void readsAfterAWriteStayOnPrimary() throws Exception {
+        givenReplicaLag(0.0);
+        underTest = routingDataSource(Duration.ofSeconds(5));
+        assertThat(ReplicaRoutingContext.openForRead(underTest)).isSameAs(replicaConnection);
+
+        ReplicaRoutingContext.markWrite();
+
+        assertThat(ReplicaRoutingContext.openForRead(underTest)).isSameAs(primaryConnection);
+        ReplicaRoutingContext.clear();
+        assertThat(ReplicaRoutingContext.openForRead(underTest)).isSameAs(replicaConnection);
+    }
+
+    @Test
+    void laggingReplicaFallsBackToPrimary() throws Exception {
+        givenReplicaLag(10_000.0);
+        underTest = new ReplicaRoutingDataSource(primary, List.of(replica), Duration.ofSeconds(5),
+                Duration.ofHours(1), new SimpleMeterRegistry());
+        Thread.sleep(200);
+
+        assertThat(ReplicaRoutingContext.openForRead(underTest)).isSameAs(primaryConnection);
+    }
+
+    @Test
+    void replicaWithoutWalReceiverFallsBackToPrimary() throws Exception {
+        givenReplicaLag(null);
+        underTest = new ReplicaRoutingDataSource(primary, List.of(replica), Duration.ofSeconds(5),
+                Duration.ofHours(1), new SimpleMeterRegistry());
+        Thread.sleep(200);
+
+        assertThat(ReplicaRoutingContext.openForRead(underTest)).isSameAs(primaryConnection);
+    }
+
+    private ReplicaRoutingDataSource routingDataSource(Duration maxLag) throws Exception {
+        ReplicaRoutingDataSource dataSource = new ReplicaRoutingDataSource(primary, List.of(replica), maxLag,
+                Duration.ofHours(1), new SimpleMeterRegistry());
+        // wait for the first lag check to mark the replica healthy
+        for (int i = 0; i < 100 && ReplicaRoutingContext.openForRead(dataSource) != replicaConnection; i++)
+            Thread.sleep(10);
+        return dataSource;
+    }
+
+    // null stands for a replica that has lost its connection to the primary
+    private void givenReplicaLag(Double lagMillis) throws SQLException {
+        Connection lagConnection = mock(Connection.class);
+        Statement statement = mock(Statement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+        when(primary.getConnection()).thenReturn(primaryConnection);
+        when(replica.getConnection()).thenReturn(lagConnection, replicaConnection);
+        when(lagConnection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(anyString())).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getDouble(1)).thenReturn(lagMillis == null ? 0 : lagMillis);
+        when(resultSet.wasNull()).thenReturn(lagMillis == null);
+    }
+}
@@ -0,0 +1,29 @@
+package com.stalwart.customer.exceptions;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.server.ResponseStatusException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DefaultExceptionHandlerTest {
+
+    private final DefaultExceptionHandler underTest = new DefaultExceptionHandler();
+
+    @Test
+    void catchAllUsesTheSameStatusAsTheReactiveStack() {
+        assertThat(handle(new UserNotValidException("Invalid Age")).getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(handle(new ResponseStatusException(HttpStatus.NOT_ACCEPTABLE)).getStatusCode()).isEqualTo(HttpStatus.NOT_ACCEPTABLE);
+        assertThat(handle(new IllegalStateException("boom")).getStatusCode()).isEqualTo(HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    private ResponseEntity<APIError> handle(Exception exception) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/customer");
+        ResponseEntity<APIError> response = underTest.handleException(exception, request, new MockHttpServletResponse());
+        assertThat(response.getBody().statuscode()).isEqualTo(response.getStatusCode().value());
+        return response;
+    }
+}
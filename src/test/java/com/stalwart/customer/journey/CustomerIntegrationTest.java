@@ -85,7 +85,8 @@ public class CustomerIntegrationTest {
                 Gender.MALE,
                 age,
                 List.of("ROLE_USER"),
-                email
+                email,
+                0
         );
 
         assertThat(allCustomers)
@@ -289,7 +290,8 @@ public class CustomerIntegrationTest {
                 request.getGender(),
                 request.getAge(),
                 List.of("ROLE_USER"),
-                request.getEmail()
+                request.getEmail(),
+                1
         );
         expected.setId(id);
         expected.setName(name);
@@ -0,0 +1,75 @@
+package com.stalwart.customer.jwt;
+
+import io.jsonwebtoken.JwtException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JWTUtilTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private JWTUtil underTest;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        underTest = new JWTUtil(meterRegistry, 100);
+    }
+
+    @Test
+    void verifyReturnsSubjectScopesAndExpiry() {
+        String token = underTest.issueToken("email", List.of("ROLE_USER"));
+
+        VerifiedToken verified = underTest.verify(token);
+
+        assertThat(verified.subject()).isEqualTo("email");
+        assertThat(verified.scopes()).containsExactly("ROLE_USER");
+        assertThat(verified.expiresAt()).isAfter(Instant.now());
+        assertThat(underTest.isTokenValid(token, "email")).isTrue();
+        assertThat(underTest.isTokenValid(token, "other")).isFalse();
+    }
+
+    @Test
+    void verifyReturnsCustomerIdWhenIssuedWithOne() {
+        String token = underTest.issueToken("email", 7, List.of("ROLE_USER"));
+
+        assertThat(underTest.verify(token).customerId()).isEqualTo(7);
+        assertThat(underTest.verify(underTest.issueToken("email", "ROLE_USER")).customerId()).isNull();
+    }
+
+    @Test
+    void repeatedTokensAreServedFromTheCache() {
+        String token = underTest.issueToken("email", "ROLE_USER");
+
+        VerifiedToken first = underTest.verify(token);
+        VerifiedToken second = underTest.verify(token);
+
+        assertThat(second).isSameAs(first);
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "jwt.verified").tag("result", "hit")
+                .functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void tamperedTokensAreRejected() {
+        String token = underTest.issueToken("email", "ROLE_USER");
+        String[] parts = token.split("\\.");
+        String forged = underTest.issueToken("other", "ROLE_USER").split("\\.")[1];
+
+        assertThatThrownBy(() -> underTest.verify(parts[0] + "." + forged + "." + parts[2]))
+                .isInstanceOf(JwtException.class);
+    }
+
+    @Test
+    void unsignedTokensAreRejected() {
+        String token = underTest.issueToken("email", "ROLE_USER");
+
+        assertThatThrownBy(() -> underTest.verify(token.substring(0, token.lastIndexOf('.') + 1)))
+                .isInstanceOf(JwtException.class);
+    }
+}
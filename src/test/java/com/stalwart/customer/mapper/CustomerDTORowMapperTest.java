@@ -0,0 +1,50 @@
+package com.stalwart.customer.mapper;
+
+import com.stalwart.customer.model.CustomerDTO;
+import com.stalwart.customer.model.Gender;
+import org.junit.jupiter.api.Test;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class CustomerDTORowMapperTest {
+
+    @Test
+    void mapRowResolvesColumnsOncePerResultSet() throws SQLException {
+        CustomerDTORowMapper customerDTORowMapper = new CustomerDTORowMapper();
+        ResultSet resultSet = mock(ResultSet.class);
+        when(resultSet.findColumn("id")).thenReturn(1);
+        when(resultSet.findColumn("name")).thenReturn(2);
+        when(resultSet.findColumn("email")).thenReturn(3);
+        when(resultSet.findColumn("gender")).thenReturn(4);
+        when(resultSet.findColumn("age")).thenReturn(5);
+        when(resultSet.findColumn("version")).thenReturn(6);
+        when(resultSet.getInt(1)).thenReturn(1);
+        when(resultSet.getString(2)).thenReturn("name");
+        when(resultSet.getString(3)).thenReturn("email");
+        when(resultSet.getString(4)).thenReturn("FEMALE");
+        when(resultSet.getInt(5)).thenReturn(22);
+        when(resultSet.getInt(6)).thenReturn(3);
+
+        CustomerDTO first = customerDTORowMapper.mapRow(resultSet, 0);
+        CustomerDTO second = customerDTORowMapper.mapRow(resultSet, 1);
+
+        CustomerDTO expected = new CustomerDTO(
+                1,
+                "name",
+                "email",
+                Gender.FEMALE,
+                22,
+                List.of("ROLE_USER"),
+                "email",
+                3);
+        assertThat(first).isEqualTo(expected);
+        assertThat(second).isEqualTo(expected);
+        verify(resultSet, times(1)).findColumn("id");
+        verify(resultSet, never()).getString("email");
+    }
+}
@@ -0,0 +1,83 @@
+package com.stalwart.customer.security;
+
+import com.stalwart.customer.exceptions.PasswordHashingOverloadedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdmissionControlledPasswordEncoderTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch started = new CountDownLatch(1);
+    private AdmissionControlledPasswordEncoder underTest;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        underTest.destroy();
+    }
+
+    @Test
+    void runsOnThePoolAndRecordsTimings() {
+        underTest = new AdmissionControlledPasswordEncoder(
+                new BlockingEncoder(), meterRegistry, 1, 1, Duration.ofSeconds(2));
+        release.countDown();
+
+        assertThat(underTest.encode("password")).isEqualTo("hashed:password");
+        assertThat(underTest.matches("password", "hashed:password")).isTrue();
+
+        assertThat(meterRegistry.get("customer.password.hash").tag("operation", "encode").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("customer.password.hash").tag("operation", "matches").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("customer.password.queue.wait").timer().count()).isEqualTo(2);
+    }
+
+    @Test
+    void shedsWorkBeyondTheQueue() throws InterruptedException {
+        underTest = new AdmissionControlledPasswordEncoder(
+                new BlockingEncoder(), meterRegistry, 1, 1, Duration.ofSeconds(2));
+
+        CompletableFuture<String> running = CompletableFuture.supplyAsync(() -> underTest.encode("first"));
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<String> queued = CompletableFuture.supplyAsync(() -> underTest.encode("second"));
+        while (meterRegistry.get("customer.password.queue.size").gauge().value() < 1)
+            Thread.onSpinWait();
+
+        assertThatThrownBy(() -> underTest.encode("third"))
+                .isInstanceOf(PasswordHashingOverloadedException.class)
+                .satisfies(e -> assertThat(((PasswordHashingOverloadedException) e).getRetryAfter())
+                        .isEqualTo(Duration.ofSeconds(2)));
+        assertThat(meterRegistry.get("customer.password.rejected").counter().count()).isEqualTo(1);
+
+        release.countDown();
+        assertThat(running.join()).isEqualTo("hashed:first");
+        assertThat(queued.join()).isEqualTo("hashed:second");
+    }
+
+    private class BlockingEncoder implements PasswordEncoder {
+        @Override
+        public String encode(CharSequence rawPassword) {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "hashed:" + rawPassword;
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            return encode(rawPassword).equals(encodedPassword);
+        }
+    }
+}
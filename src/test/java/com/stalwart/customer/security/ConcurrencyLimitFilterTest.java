@@ -0,0 +1,69 @@
+package com.stalwart.customer.security;
+
+import com.stalwart.customer.exceptions.ConcurrencyLimitExceededException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ConcurrencyLimitFilterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final HandlerExceptionResolver handlerExceptionResolver = mock(HandlerExceptionResolver.class);
+    private final ConcurrencyLimiter bulkLimiter =
+            new ConcurrencyLimiter("bulk", meterRegistry, 1, 1, 1, Duration.ofSeconds(30));
+    private final ConcurrencyLimitFilter underTest = new ConcurrencyLimitFilter(handlerExceptionResolver, true,
+            Duration.ofSeconds(1),
+            new ConcurrencyLimiter("customer", meterRegistry, 10, 1, 10, Duration.ofMillis(250)),
+            new ConcurrencyLimiter("auth", meterRegistry, 10, 1, 10, Duration.ofSeconds(1)),
+            bulkLimiter);
+
+    @Test
+    void streamedExportHoldsItsPermitUntilTheResponseCompletes() throws Exception {
+        MockHttpServletRequest export = get("/api/customer/export");
+        // the controller returns a StreamingResponseBody, which goes async
+        FilterChain streaming = (request, response) -> request.startAsync();
+        underTest.doFilter(export, new MockHttpServletResponse(), streaming);
+        assertThat(bulkLimiter.getInFlight()).isEqualTo(1);
+
+        MockFilterChain rejected = new MockFilterChain();
+        underTest.doFilter(get("/api/customer/export"), new MockHttpServletResponse(), rejected);
+        assertThat(rejected.getRequest()).isNull();
+        verify(handlerExceptionResolver).resolveException(any(), any(), isNull(), any(ConcurrencyLimitExceededException.class));
+
+        ((MockAsyncContext) export.getAsyncContext()).complete();
+        assertThat(bulkLimiter.getInFlight()).isZero();
+
+        MockFilterChain admitted = new MockFilterChain();
+        underTest.doFilter(get("/api/customer/batch"), new MockHttpServletResponse(), admitted);
+        assertThat(admitted.getRequest()).isNotNull();
+    }
+
+    @Test
+    void bulkRoutesDoNotUseTheCustomerLimit() throws Exception {
+        underTest.doFilter(get("/api/customer/export"), new MockHttpServletResponse(),
+                (request, response) -> request.startAsync());
+
+        MockFilterChain lookup = new MockFilterChain();
+        underTest.doFilter(get("/api/customer/1"), new MockHttpServletResponse(), lookup);
+
+        assertThat(lookup.getRequest()).isNotNull();
+        verifyNoInteractions(handlerExceptionResolver);
+    }
+
+    private static MockHttpServletRequest get(String uri) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+        request.setAsyncSupported(true);
+        return request;
+    }
+}
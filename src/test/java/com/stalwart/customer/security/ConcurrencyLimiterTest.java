@@ -0,0 +1,82 @@
+package com.stalwart.customer.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConcurrencyLimiterTest {
+
+    private static final long FAST = Duration.ofMillis(10).toNanos();
+    private static final long SLOW = Duration.ofSeconds(1).toNanos();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ConcurrencyLimiter underTest =
+            new ConcurrencyLimiter("customer", meterRegistry, 10, 2, 20, Duration.ofMillis(100));
+
+    @Test
+    void rejectsAtOnceWhenTheLimitIsReached() {
+        for (int i = 0; i < 10; i++)
+            assertThat(underTest.tryAcquire()).isTrue();
+
+        assertThat(underTest.tryAcquire()).isFalse();
+        assertThat(underTest.getInFlight()).isEqualTo(10);
+        assertThat(meterRegistry.get("customer.concurrency.rejected").tag("group", "customer")
+                .counter().count()).isEqualTo(1);
+
+        underTest.release(FAST);
+        assertThat(underTest.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void slowResponsesShrinkTheLimitDownToTheMinimum() {
+        long now = 0;
+        for (int i = 0; i < 100; i++) {
+            underTest.tryAcquire();
+            underTest.release(SLOW, now += SLOW);
+        }
+
+        assertThat(underTest.getLimit()).isEqualTo(2);
+        assertThat(meterRegistry.get("customer.concurrency.limit").tag("group", "customer")
+                .gauge().value()).isEqualTo(2);
+    }
+
+    @Test
+    void slowResponsesWithinOneLatencyWindowBackOffOnce() {
+        for (int i = 0; i < 10; i++)
+            underTest.tryAcquire();
+        for (int i = 0; i < 10; i++)
+            underTest.release(SLOW, i);
+
+        assertThat(underTest.getLimit()).isEqualTo(9);
+
+        underTest.tryAcquire();
+        underTest.release(SLOW, Duration.ofMillis(100).toNanos());
+        assertThat(underTest.getLimit()).isEqualTo(8);
+    }
+
+    @Test
+    void fastResponsesUnderLoadGrowTheLimitUpToTheMaximum() {
+        for (int round = 0; round < 500; round++) {
+            int admitted = 0;
+            while (underTest.tryAcquire())
+                admitted++;
+            for (int i = 0; i < admitted; i++)
+                underTest.release(FAST);
+        }
+
+        assertThat(underTest.getLimit()).isEqualTo(20);
+    }
+
+    @Test
+    void fastResponsesWithoutLoadLeaveTheLimitAlone() {
+        for (int i = 0; i < 100; i++) {
+            underTest.tryAcquire();
+            underTest.release(FAST);
+        }
+
+        assertThat(underTest.getLimit()).isEqualTo(10);
+    }
+}
@@ -0,0 +1,114 @@
+package com.stalwart.customer.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stalwart.customer.exceptions.PayloadTooLargeException;
+import com.stalwart.customer.exceptions.RateLimitExceededException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerExceptionResolver;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class RateLimitFilterTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final HandlerExceptionResolver handlerExceptionResolver = mock(HandlerExceptionResolver.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RateLimitFilter underTest = new RateLimitFilter(new ObjectMapper(), handlerExceptionResolver,
+            meterRegistry, true, 256,
+            new RateLimiter(60, 10, 1000, now::get),
+            new RateLimiter(60, 2, 1000, now::get));
+
+    @Test
+    void throttlesLoginPerEmailAndKeepsTheBodyReadable() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            MockFilterChain chain = new MockFilterChain();
+            underTest.doFilter(login("10.0.0." + i), new MockHttpServletResponse(), chain);
+
+            assertThat(chain.getRequest()).isNotNull();
+            assertThat(new String(chain.getRequest().getInputStream().readAllBytes(), StandardCharsets.UTF_8))
+                    .contains("Stalwart@stalwart.com");
+        }
+
+        MockFilterChain chain = new MockFilterChain();
+        underTest.doFilter(login("10.0.0.9"), new MockHttpServletResponse(), chain);
+
+        assertThat(chain.getRequest()).isNull();
+        verify(handlerExceptionResolver).resolveException(any(), any(), isNull(), any(RateLimitExceededException.class));
+        assertThat(meterRegistry.get("customer.rate-limit.rejected").tag("route", "login").tag("key", "email")
+                .counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void throttlesForgotPasswordPerIp() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            MockFilterChain chain = new MockFilterChain();
+            underTest.doFilter(forgotPassword("user" + i + "@stalwart.com"), new MockHttpServletResponse(), chain);
+            assertThat(chain.getRequest()).isNotNull();
+        }
+
+        MockFilterChain chain = new MockFilterChain();
+        underTest.doFilter(forgotPassword("another@stalwart.com"), new MockHttpServletResponse(), chain);
+
+        assertThat(chain.getRequest()).isNull();
+        assertThat(meterRegistry.get("customer.rate-limit.rejected").tag("route", "forgot-password").tag("key", "ip")
+                .counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void rejectsBodiesOverTheCap() throws Exception {
+        MockHttpServletRequest declared = login("10.0.0.1");
+        declared.setContent(new byte[257]);
+        MockFilterChain chain = new MockFilterChain();
+        underTest.doFilter(declared, new MockHttpServletResponse(), chain);
+        assertThat(chain.getRequest()).isNull();
+
+        // no Content-Length, as with a chunked body
+        MockHttpServletRequest undeclared = new MockHttpServletRequest("POST", "/api/auth/login") {
+            @Override
+            public long getContentLengthLong() {
+                return -1;
+            }
+        };
+        undeclared.setContent(new byte[10_000]);
+        chain = new MockFilterChain();
+        underTest.doFilter(undeclared, new MockHttpServletResponse(), chain);
+        assertThat(chain.getRequest()).isNull();
+
+        verify(handlerExceptionResolver, times(2))
+                .resolveException(any(), any(), isNull(), any(PayloadTooLargeException.class));
+    }
+
+    @Test
+    void leavesOtherRoutesAlone() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/customer/all");
+            MockFilterChain chain = new MockFilterChain();
+            underTest.doFilter(request, new MockHttpServletResponse(), chain);
+            assertThat(chain.getRequest()).isNotNull();
+        }
+    }
+
+    private static MockHttpServletRequest login(String remoteAddr) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/auth/login");
+        request.setRemoteAddr(remoteAddr);
+        request.setContentType("application/json");
+        request.setContent("{\"username\":\"Stalwart@stalwart.com\",\"password\":\"password\"}".getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+
+    private static MockHttpServletRequest forgotPassword(String email) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/auth/forgot-password");
+        request.setRemoteAddr("10.0.0.1");
+        request.setParameter("email", email);
+        return request;
+    }
+}
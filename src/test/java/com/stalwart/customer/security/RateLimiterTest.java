@@ -0,0 +1,46 @@
+package com.stalwart.customer.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimiterTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final RateLimiter underTest = new RateLimiter(60, 3, 1000, now::get);
+
+    @Test
+    void allowsABurstThenOnePermitPerInterval() {
+        for (int i = 0; i < 3; i++)
+            assertThat(underTest.tryAcquire("key")).isZero();
+
+        assertThat(underTest.tryAcquire("key")).isEqualTo(Duration.ofSeconds(1));
+
+        now.addAndGet(Duration.ofSeconds(1).toNanos());
+        assertThat(underTest.tryAcquire("key")).isZero();
+        assertThat(underTest.tryAcquire("key")).isPositive();
+    }
+
+    @Test
+    void keysHaveIndependentBuckets() {
+        for (int i = 0; i < 3; i++)
+            underTest.tryAcquire("first");
+
+        assertThat(underTest.tryAcquire("first")).isPositive();
+        assertThat(underTest.tryAcquire("second")).isZero();
+    }
+
+    @Test
+    void idleKeysRefillTheirBurst() {
+        for (int i = 0; i < 3; i++)
+            underTest.tryAcquire("key");
+
+        now.addAndGet(Duration.ofSeconds(3).toNanos());
+
+        for (int i = 0; i < 3; i++)
+            assertThat(underTest.tryAcquire("key")).isZero();
+    }
+}
@@ -0,0 +1,64 @@
+package com.stalwart.customer.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SecurityConfigTest {
+
+    private final SecurityConfig underTest = new SecurityConfig();
+
+    @Test
+    void calibrationNeverGoesBelowTheBcryptDefault() {
+        assertThat(PasswordHashCalibration.bcryptStrength(Duration.ofMillis(1)))
+                .isEqualTo(PasswordHashCalibration.MIN_BCRYPT_STRENGTH);
+    }
+
+    @Test
+    void calibrationPredictsSlowStrengthsInsteadOfMeasuringThem() {
+        Duration target = Duration.ofSeconds(2);
+        long start = System.nanoTime();
+
+        int strength = PasswordHashCalibration.bcryptStrength(target);
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(target);
+        assertThat(strength).isGreaterThan(PasswordHashCalibration.MIN_BCRYPT_STRENGTH);
+    }
+
+    @Test
+    void legacyBcryptHashesStillMatchAndAreUpgraded() {
+        PasswordEncoder passwordEncoder = underTest.hashingPasswordEncoder("bcrypt", Duration.ofMillis(1), 0, 310_000);
+        String legacy = new BCryptPasswordEncoder(4).encode("password");
+
+        assertThat(passwordEncoder.matches("password", legacy)).isTrue();
+        assertThat(passwordEncoder.upgradeEncoding(legacy)).isTrue();
+
+        String upgraded = passwordEncoder.encode("password");
+        assertThat(upgraded).startsWith("{bcrypt}$2a$10$");
+        assertThat(passwordEncoder.upgradeEncoding(upgraded)).isFalse();
+    }
+
+    @Test
+    void pbkdf2CanBeSelected() {
+        PasswordEncoder passwordEncoder = underTest.hashingPasswordEncoder("pbkdf2", Duration.ofMillis(1), 0, 1_000);
+        String bcrypt = new BCryptPasswordEncoder(4).encode("password");
+
+        String hash = passwordEncoder.encode("password");
+
+        assertThat(hash).startsWith("{pbkdf2}");
+        assertThat(passwordEncoder.matches("password", hash)).isTrue();
+        assertThat(passwordEncoder.matches("password", bcrypt)).isTrue();
+        assertThat(passwordEncoder.upgradeEncoding("{bcrypt}" + bcrypt)).isTrue();
+    }
+
+    @Test
+    void unknownAlgorithmsAreRejected() {
+        assertThatThrownBy(() -> underTest.hashingPasswordEncoder("md5", Duration.ofMillis(1), 10, 1_000))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
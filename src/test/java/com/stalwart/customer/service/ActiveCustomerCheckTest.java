@@ -0,0 +1,58 @@
+package com.stalwart.customer.service;
+
+import com.stalwart.customer.dao.CustomerDao;
+import com.stalwart.customer.model.CustomerChangeEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ActiveCustomerCheckTest {
+
+    @Mock
+    private CustomerDao customerDao;
+    private ActiveCustomerCheck underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new ActiveCustomerCheck(customerDao, new SimpleMeterRegistry(), Duration.ofMinutes(1), 100);
+    }
+
+    @Test
+    void answersAreRememberedUntilRecheck() {
+        when(customerDao.existsWithEmail("email")).thenReturn(true);
+
+        assertThat(underTest.isActive("email")).isTrue();
+        assertThat(underTest.isActive("email")).isTrue();
+
+        verify(customerDao, times(1)).existsWithEmail("email");
+    }
+
+    @Test
+    void deleteEventsCutOffTheCustomer() {
+        when(customerDao.existsWithEmail("email")).thenReturn(true, false);
+
+        assertThat(underTest.isActive("email")).isTrue();
+        underTest.onCustomerChange(new CustomerChangeEvent("DELETE", 1, "email", System.currentTimeMillis()));
+
+        assertThat(underTest.isActive("email")).isFalse();
+    }
+
+    @Test
+    void resyncForgetsEverything() {
+        when(customerDao.existsWithEmail("email")).thenReturn(false, true);
+
+        assertThat(underTest.isActive("email")).isFalse();
+        underTest.onResync();
+
+        assertThat(underTest.isActive("email")).isTrue();
+    }
+}
@@ -0,0 +1,62 @@
+package com.stalwart.customer.service;
+
+import com.stalwart.customer.AbstractFirstTest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AuthDataAccessServiceTest extends AbstractFirstTest {
+
+    private AuthDataAccessService underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new AuthDataAccessService(getJDBCTemplate());
+    }
+
+    @Test
+    void storedCodeCanBeConsumedOnce() {
+        String email = UUID.randomUUID() + "@stalwart.com";
+        underTest.storeOTP(email, "123456", Duration.ofMinutes(1));
+
+        assertThat(underTest.consumeOTP(email, "654321")).isFalse();
+        assertThat(underTest.consumeOTP(email, "123456")).isTrue();
+        assertThat(underTest.consumeOTP(email, "123456")).isFalse();
+    }
+
+    @Test
+    void storingAgainReplacesTheCode() {
+        String email = UUID.randomUUID() + "@stalwart.com";
+        underTest.storeOTP(email, "123456", Duration.ofMinutes(1));
+        underTest.storeOTP(email, "654321", Duration.ofMinutes(1));
+
+        assertThat(underTest.consumeOTP(email, "123456")).isFalse();
+        assertThat(underTest.consumeOTP(email, "654321")).isTrue();
+    }
+
+    @Test
+    void expiredCodesAreRejectedAndSwept() {
+        String email = UUID.randomUUID() + "@stalwart.com";
+        underTest.storeOTP(email, "123456", Duration.ofMillis(-1));
+
+        assertThat(underTest.consumeOTP(email, "123456")).isFalse();
+        assertThat(underTest.deleteExpiredOTPs(1000)).isGreaterThanOrEqualTo(1);
+        assertThat(getJDBCTemplate().queryForObject(
+                "select count(*) from otp_details where email = ?", Integer.class, email)).isZero();
+    }
+
+    @Test
+    void tableCanBeMadeUnlogged() {
+        String query = "select relpersistence from pg_class where oid = 'otp_details'::regclass";
+
+        underTest.setOTPTableUnlogged(true);
+        assertThat(getJDBCTemplate().queryForObject(query, String.class)).isEqualTo("u");
+
+        underTest.setOTPTableUnlogged(false);
+        assertThat(getJDBCTemplate().queryForObject(query, String.class)).isEqualTo("p");
+    }
+}
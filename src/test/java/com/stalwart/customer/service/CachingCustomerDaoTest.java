@@ -0,0 +1,246 @@
+package com.stalwart.customer.service;
+
+import com.stalwart.customer.mapper.CustomerDTOMapper;
+import com.stalwart.customer.model.Customer;
+import com.stalwart.customer.model.CustomerDTO;
+import com.stalwart.customer.model.Gender;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CachingCustomerDaoTest {
+
+    @Mock
+    private CustomerDataAccessService customerDataAccessService;
+    @Mock
+    private EmailBloomFilter emailBloomFilter;
+    private SimpleMeterRegistry meterRegistry;
+    private CachingCustomerDao underTest;
+
+    private final Customer customer = new Customer(1, "name", "email", "password", 22, Gender.MALE);
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        lenient().when(emailBloomFilter.mightContain(anyString())).thenReturn(true);
+        underTest = new CachingCustomerDao(customerDataAccessService, emailBloomFilter, new CustomerDTOMapper(), meterRegistry, 100, Duration.ofMinutes(1));
+    }
+
+    @Test
+    void getCustomerByIdIsCached() {
+        when(customerDataAccessService.getCustomerById(1)).thenReturn(Optional.of(customer));
+
+        assertThat(underTest.getCustomerById(1)).contains(customer);
+        assertThat(underTest.getCustomerById(1)).contains(customer);
+
+        verify(customerDataAccessService, times(1)).getCustomerById(1);
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "customer.by-id").tag("result", "hit")
+                .functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void emailLookupSharesTheIdCache() {
+        when(customerDataAccessService.getCustomerByEmail("email")).thenReturn(Optional.of(customer));
+
+        assertThat(underTest.getCustomerByEmail("email")).contains(customer);
+        assertThat(underTest.getCustomerByEmail("email")).contains(customer);
+        assertThat(underTest.getCustomerById(1)).contains(customer);
+        assertThat(underTest.existsWithEmail("email")).isTrue();
+
+        verify(customerDataAccessService, times(1)).getCustomerByEmail("email");
+        verifyNoMoreInteractions(customerDataAccessService);
+    }
+
+    @Test
+    void updateInvalidatesBothLookups() {
+        Customer updated = new Customer(1, "name", "new_email", "password", 22, Gender.MALE);
+        when(customerDataAccessService.getCustomerByEmail("email")).thenReturn(Optional.of(customer), Optional.empty());
+        when(customerDataAccessService.getCustomerById(1)).thenReturn(Optional.of(updated));
+
+        underTest.getCustomerByEmail("email");
+        Customer changes = new Customer();
+        changes.setId(1);
+        changes.setEmail("new_email");
+        underTest.updateCustomer(changes);
+
+        assertThat(underTest.getCustomerById(1)).contains(updated);
+        // the email index still points at id 1, but the cached row no longer has that email
+        assertThat(underTest.getCustomerByEmail("email")).isEmpty();
+    }
+
+    @Test
+    void deleteByEmailInvalidatesId() {
+        when(customerDataAccessService.getCustomerById(1)).thenReturn(Optional.of(customer), Optional.empty());
+        when(customerDataAccessService.deleteCustomerByEmail("email")).thenReturn(Optional.of(1));
+
+        underTest.getCustomerById(1);
+        underTest.deleteCustomerByEmail("email");
+
+        assertThat(underTest.getCustomerById(1)).isEmpty();
+    }
+
+    @Test
+    void bloomFilterNegativesSkipTheDatabase() {
+        when(emailBloomFilter.mightContain("unknown")).thenReturn(false);
+
+        assertThat(underTest.existsWithEmail("unknown")).isFalse();
+        assertThat(underTest.existingEmails(List.of("unknown"))).isEmpty();
+
+        verifyNoInteractions(customerDataAccessService);
+    }
+
+    @Test
+    void emailLookupsIgnoreTheBloomFilter() {
+        // registered on another node, the notification has not arrived yet
+        lenient().when(emailBloomFilter.mightContain("remote")).thenReturn(false);
+        Customer remote = new Customer(2, "remote", "remote", "password", 30, Gender.FEMALE);
+        when(customerDataAccessService.getCustomerDTOsByEmails(List.of("remote")))
+                .thenReturn(List.of(new CustomerDTOMapper().apply(remote)));
+        when(customerDataAccessService.getCustomerByEmail("remote")).thenReturn(Optional.of(remote));
+
+        assertThat(underTest.getCustomerDTOsByEmails(List.of("remote"))).hasSize(1);
+        assertThat(underTest.getCustomerCredentialsByEmail("remote")).isPresent();
+    }
+
+    @Test
+    void addCustomerFeedsTheBloomFilter() {
+        when(customerDataAccessService.addCustomer(customer)).thenReturn(true);
+
+        underTest.addCustomer(customer);
+
+        verify(emailBloomFilter, atLeastOnce()).put("email");
+    }
+
+    @Test
+    void cachedCustomersAreCopies() {
+        when(customerDataAccessService.getCustomerById(1)).thenReturn(Optional.of(customer));
+
+        underTest.getCustomerById(1).orElseThrow().setName("mutated");
+
+        assertThat(underTest.getCustomerById(1)).hasValueSatisfying(c ->
+                assertThat(c.getName()).isEqualTo("name"));
+    }
+
+    @Test
+    void dtoLookupsAreServedFromTheCachedRow() {
+        when(customerDataAccessService.getCustomerById(1)).thenReturn(Optional.of(customer));
+
+        underTest.getCustomerById(1);
+
+        assertThat(underTest.getCustomerDTOById(1)).hasValueSatisfying(dto -> {
+            assertThat(dto.getId()).isEqualTo(1);
+            assertThat(dto.getUsername()).isEqualTo("email");
+        });
+        assertThat(underTest.getCustomerDTOByEmail("email")).isPresent();
+
+        verify(customerDataAccessService, times(1)).getCustomerById(1);
+        verifyNoMoreInteractions(customerDataAccessService);
+    }
+
+    @Test
+    void batchLookupsOnlyQueryTheMisses() {
+        CustomerDTO other = new CustomerDTOMapper().apply(new Customer(2, "other", "other", "password", 30, Gender.FEMALE));
+        when(customerDataAccessService.getCustomerById(1)).thenReturn(Optional.of(customer));
+        when(customerDataAccessService.getCustomerDTOsByIds(List.of(2, 3))).thenReturn(List.of(other));
+        when(emailBloomFilter.mightContain("unknown")).thenReturn(false);
+        when(customerDataAccessService.existingEmails(List.of("other"))).thenReturn(Set.of("other"));
+
+        underTest.getCustomerById(1);
+
+        assertThat(underTest.getCustomerDTOsByIds(List.of(1, 2, 3)))
+                .extracting(CustomerDTO::getId)
+                .containsExactlyInAnyOrder(1, 2);
+        assertThat(underTest.existingEmails(List.of("email", "other", "unknown")))
+                .containsExactlyInAnyOrder("email", "other");
+    }
+
+    @Test
+    void batchWritesInATransactionInvalidateAgainAfterCompletion() {
+        Customer deleted = new Customer(1, "name", "email", "password", 22, Gender.MALE);
+        when(customerDataAccessService.getCustomerById(1)).thenReturn(Optional.of(deleted), Optional.empty());
+        when(customerDataAccessService.deleteCustomersById(List.of(1))).thenReturn(new boolean[]{true});
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            underTest.deleteCustomersById(List.of(1));
+            // another request reads the still committed row before the commit
+            assertThat(underTest.getCustomerById(1)).isPresent();
+
+            complete(TransactionSynchronization.STATUS_COMMITTED);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertThat(underTest.getCustomerById(1)).isEmpty();
+    }
+
+    @Test
+    void singleUpdatesInATransactionInvalidateAgainAfterCompletion() {
+        Customer patched = new Customer(1, "patched", "email", "password", 22, Gender.MALE);
+        when(customerDataAccessService.getCustomerById(1)).thenReturn(Optional.of(customer), Optional.of(patched));
+        Customer changes = new Customer();
+        changes.setId(1);
+        changes.setName("patched");
+        when(customerDataAccessService.updateCustomer(changes, 0)).thenReturn(Optional.of(patched));
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            underTest.updateCustomer(changes, 0);
+            // another request reads the still committed row before the commit
+            assertThat(underTest.getCustomerById(1)).hasValueSatisfying(c -> assertThat(c.getName()).isEqualTo("name"));
+
+            complete(TransactionSynchronization.STATUS_COMMITTED);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertThat(underTest.getCustomerById(1)).hasValueSatisfying(c -> assertThat(c.getName()).isEqualTo("patched"));
+        verify(emailBloomFilter, never()).put(anyString());
+    }
+
+    @Test
+    void batchInsertsInATransactionReachTheBloomFilterOnlyOnCommit() {
+        when(customerDataAccessService.addCustomers(anyList())).thenReturn(new boolean[]{true});
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            underTest.addCustomers(List.of(new Customer("name", "rolled_back", "password", 22, Gender.MALE)));
+            complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        verify(emailBloomFilter, never()).put(anyString());
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            underTest.addCustomers(List.of(new Customer("name", "committed", "password", 22, Gender.MALE)));
+            verify(emailBloomFilter, never()).put(anyString());
+            complete(TransactionSynchronization.STATUS_COMMITTED);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        verify(emailBloomFilter).put("committed");
+    }
+
+    private static void complete(int status) {
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (status == TransactionSynchronization.STATUS_COMMITTED)
+                synchronization.afterCommit();
+            synchronization.afterCompletion(status);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.stalwart.customer.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CsvRecordReaderTest {
+
+    @Test
+    void readsPlainAndQuotedFields() throws IOException {
+        CsvRecordReader reader = new CsvRecordReader(new StringReader(
+                "name,email\n\"Doe, Jane\",\"say \"\"hi\"\"\"\n,\n"));
+
+        assertThat(reader.next()).containsExactly("name", "email");
+        assertThat(reader.next()).containsExactly("Doe, Jane", "say \"hi\"");
+        assertThat(reader.next()).containsExactly("", "");
+        assertThat(reader.next()).isNull();
+    }
+
+    @Test
+    void quotedFieldsMaySpanLines() throws IOException {
+        CsvRecordReader reader = new CsvRecordReader(new StringReader(
+                "a,\"first\nsecond\"\r\nb,c"));
+
+        assertThat(reader.next()).containsExactly("a", "first\nsecond");
+        assertThat(reader.getLine()).isEqualTo(1);
+        assertThat(reader.next()).containsExactly("b", "c");
+        assertThat(reader.getLine()).isEqualTo(3);
+        assertThat(reader.next()).isNull();
+    }
+
+    @Test
+    void appendFieldRoundTrips() throws IOException {
+        StringBuilder csv = new StringBuilder();
+        CsvRecordReader.appendField(csv, "Doe, \"Jane\"\nJr");
+        csv.append(',');
+        CsvRecordReader.appendField(csv, "plain");
+
+        List<String> fields = new CsvRecordReader(new StringReader(csv.toString())).next();
+
+        assertThat(fields).containsExactly("Doe, \"Jane\"\nJr", "plain");
+    }
+}
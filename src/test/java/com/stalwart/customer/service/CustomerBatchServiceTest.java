@@ -0,0 +1,168 @@
+package com.stalwart.customer.service;
+
+import com.stalwart.customer.dao.CustomerDao;
+import com.stalwart.customer.exceptions.InvalidRequestException;
+import com.stalwart.customer.exceptions.PasswordHashingOverloadedException;
+import com.stalwart.customer.model.Customer;
+import com.stalwart.customer.model.CustomerBatchRequest;
+import com.stalwart.customer.model.CustomerBatchResult;
+import com.stalwart.customer.model.CustomerOperation;
+import com.stalwart.customer.model.CustomerOperationResult;
+import com.stalwart.customer.model.CustomerRegistrationRequest;
+import com.stalwart.customer.model.Gender;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CustomerBatchServiceTest {
+
+    @Mock
+    private CustomerDao customerDao;
+    @Mock
+    private PasswordEncoder passwordEncoder;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Mock
+    private TransactionStatus transactionStatus;
+    private CustomerBatchService underTest;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(transactionManager.getTransaction(any())).thenReturn(transactionStatus);
+        lenient().when(passwordEncoder.encode(anyString())).thenReturn("hash");
+        underTest = new CustomerBatchService(customerDao, passwordEncoder, transactionManager, 10, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        underTest.shutdown();
+    }
+
+    @Test
+    void consecutiveOperationsOfOneTypeShareABatch() {
+        when(customerDao.addCustomers(anyList())).thenAnswer(invocation -> {
+            List<Customer> customers = invocation.getArgument(0);
+            customers.get(0).setId(7);
+            customers.get(1).setId(8);
+            return new boolean[]{true, true};
+        });
+        when(customerDao.updateCustomers(anyList())).thenReturn(new boolean[]{true});
+        when(customerDao.deleteCustomersById(List.of(3, 4))).thenReturn(new boolean[]{true, true});
+
+        CustomerBatchResult result = underTest.execute(new CustomerBatchRequest(null, List.of(
+                create("one@email"),
+                create("two@email"),
+                new CustomerOperation(CustomerOperation.Type.UPDATE, 2, request("new@email")),
+                new CustomerOperation(CustomerOperation.Type.DELETE, 3, null),
+                new CustomerOperation(CustomerOperation.Type.DELETE, 4, null))));
+
+        assertThat(result.committed()).isTrue();
+        assertThat(result.applied()).isEqualTo(5);
+        assertThat(result.results()).extracting(CustomerOperationResult::status).containsExactly(201, 201, 200, 200, 200);
+        assertThat(result.results()).extracting(CustomerOperationResult::id).containsExactly(7, 8, 2, 3, 4);
+        verify(customerDao, times(1)).addCustomers(anyList());
+        verify(customerDao, times(1)).deleteCustomersById(anyList());
+        verify(transactionManager).commit(transactionStatus);
+    }
+
+    @Test
+    void allOrNothingRollsBackOnFirstFailure() {
+        when(customerDao.deleteCustomersById(List.of(3))).thenReturn(new boolean[]{false});
+
+        CustomerBatchResult result = underTest.execute(new CustomerBatchRequest(CustomerBatchRequest.Mode.ALL_OR_NOTHING, List.of(
+                new CustomerOperation(CustomerOperation.Type.DELETE, 3, null),
+                create("one@email"))));
+
+        assertThat(result.committed()).isFalse();
+        assertThat(result.results()).extracting(CustomerOperationResult::status).containsExactly(404, 424);
+        verify(transactionStatus).setRollbackOnly();
+        verify(customerDao, never()).addCustomers(anyList());
+    }
+
+    @Test
+    void bestEffortReplaysAFailedBatchOneByOne() {
+        when(customerDao.updateCustomers(anyList())).thenAnswer(invocation -> {
+            List<Customer> changes = invocation.getArgument(0);
+            if (changes.stream().anyMatch(c -> "taken@email".equals(c.getEmail())))
+                throw new DuplicateKeyException("customer_email_unique");
+            boolean[] applied = new boolean[changes.size()];
+            Arrays.fill(applied, true);
+            return applied;
+        });
+
+        CustomerBatchResult result = underTest.execute(new CustomerBatchRequest(CustomerBatchRequest.Mode.BEST_EFFORT, List.of(
+                new CustomerOperation(CustomerOperation.Type.UPDATE, 1, request("taken@email")),
+                new CustomerOperation(CustomerOperation.Type.UPDATE, 2, request("free@email")),
+                new CustomerOperation(CustomerOperation.Type.DELETE, null, null))));
+
+        assertThat(result.committed()).isTrue();
+        assertThat(result.results()).extracting(CustomerOperationResult::status).containsExactly(409, 200, 400);
+        assertThat(result.failed()).isEqualTo(2);
+        verify(customerDao, times(3)).updateCustomers(anyList());
+        verify(transactionStatus, times(2)).rollbackToSavepoint(any());
+    }
+
+    @Test
+    void invalidOperationFailsAllOrNothingBatchWithoutTransaction() {
+        CustomerBatchResult result = underTest.execute(new CustomerBatchRequest(null, List.of(
+                create("one@email"),
+                new CustomerOperation(CustomerOperation.Type.CREATE, null, new CustomerRegistrationRequest()))));
+
+        assertThat(result.committed()).isFalse();
+        assertThat(result.results()).extracting(CustomerOperationResult::status).containsExactly(424, 400);
+        verifyNoInteractions(transactionManager, customerDao);
+    }
+
+    @Test
+    void shedPasswordHashFailsOnlyItsOwnCreate() {
+        when(passwordEncoder.encode("shed")).thenThrow(new PasswordHashingOverloadedException(Duration.ofSeconds(1)));
+        when(customerDao.addCustomers(anyList())).thenReturn(new boolean[]{true});
+        CustomerRegistrationRequest shed = request("shed@email");
+        shed.setPassword("shed");
+
+        CustomerBatchResult result = underTest.execute(new CustomerBatchRequest(CustomerBatchRequest.Mode.BEST_EFFORT, List.of(
+                create("one@email"),
+                new CustomerOperation(CustomerOperation.Type.CREATE, null, shed))));
+
+        assertThat(result.committed()).isTrue();
+        assertThat(result.results()).extracting(CustomerOperationResult::status).containsExactly(201, 503);
+        verify(customerDao).addCustomers(argThat(customers -> customers.size() == 1
+                && customers.get(0).getPassword().equals("hash")));
+    }
+
+    @Test
+    void willThrowForTooManyOperations() {
+        List<CustomerOperation> operations = Collections.nCopies(11, create("one@email"));
+
+        assertThatThrownBy(() -> underTest.execute(new CustomerBatchRequest(null, operations)))
+                .isInstanceOf(InvalidRequestException.class)
+                .hasMessage("at most 10 operations can be sent in one batch");
+    }
+
+    private static CustomerOperation create(String email) {
+        return new CustomerOperation(CustomerOperation.Type.CREATE, null, request(email));
+    }
+
+    private static CustomerRegistrationRequest request(String email) {
+        return new CustomerRegistrationRequest("name", email, 22, "password", Gender.MALE);
+    }
+}
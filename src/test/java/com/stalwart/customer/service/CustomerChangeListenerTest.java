@@ -0,0 +1,97 @@
+package com.stalwart.customer.service;
+
+import com.stalwart.customer.AbstractFirstTest;
+import com.stalwart.customer.mapper.CustomerCredentialsRowMapper;
+import com.stalwart.customer.mapper.CustomerRowMapper;
+import com.stalwart.customer.model.Customer;
+import com.stalwart.customer.model.CustomerChangeEvent;
+import com.stalwart.customer.model.Gender;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CustomerChangeListenerTest extends AbstractFirstTest {
+
+    private final BlockingQueue<CustomerChangeEvent> events = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Boolean> resyncs = new LinkedBlockingQueue<>();
+    private CustomerDataAccessService customerDataAccessService;
+    private CustomerChangeListener underTest;
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        customerDataAccessService = new CustomerDataAccessService(getJDBCTemplate(), new CustomerRowMapper(), new CustomerCredentialsRowMapper());
+
+        DataSourceProperties properties = new DataSourceProperties();
+        properties.setUrl(postgresContainer.getJdbcUrl());
+        properties.setUsername(postgresContainer.getUsername());
+        properties.setPassword(postgresContainer.getPassword());
+
+        CustomerChangeSubscriber subscriber = new CustomerChangeSubscriber() {
+            @Override
+            public void onCustomerChange(CustomerChangeEvent event) {
+                events.add(event);
+            }
+
+            @Override
+            public void onResync() {
+                resyncs.add(true);
+            }
+        };
+        underTest = new CustomerChangeListener(properties, List.of(subscriber), new SimpleMeterRegistry(), true, 100, 200);
+        underTest.start();
+        // the first resync marks the moment the LISTEN is in place
+        assertThat(resyncs.poll(10, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @AfterEach
+    void tearDown() {
+        underTest.stop();
+    }
+
+    @Test
+    void publishesUpdatesAndDeletes() throws InterruptedException {
+        String email = faker.internet().safeEmailAddress() + "." + UUID.randomUUID();
+        Customer customer = new Customer(faker.name().fullName(), email, "password", 22, Gender.MALE);
+        customerDataAccessService.addCustomer(customer);
+
+        Customer changes = new Customer();
+        changes.setId(customer.getId());
+        changes.setAge(30);
+        customerDataAccessService.updateCustomer(changes);
+
+        CustomerChangeEvent update = events.poll(10, TimeUnit.SECONDS);
+        assertThat(update).isNotNull();
+        assertThat(update.operation()).isEqualTo("UPDATE");
+        assertThat(update.id()).isEqualTo(customer.getId());
+        assertThat(update.email()).isEqualTo(email);
+
+        customerDataAccessService.deleteCustomerById(customer.getId());
+
+        CustomerChangeEvent delete = events.poll(10, TimeUnit.SECONDS);
+        assertThat(delete).isNotNull();
+        assertThat(delete.operation()).isEqualTo("DELETE");
+        assertThat(delete.id()).isEqualTo(customer.getId());
+    }
+
+    @Test
+    void reconnectsAndResyncsWhenTheListenConnectionDies() throws InterruptedException {
+        getJDBCTemplate().queryForList(
+                "select pg_terminate_backend(pid) from pg_stat_activity " +
+                "where query in ('listen " + CustomerChangeListener.CHANNEL + "', 'select 1') and pid <> pg_backend_pid()");
+
+        // once for the lost connection, once after listening again
+        assertThat(resyncs.poll(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(resyncs.poll(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(underTest.isConnected()).isTrue();
+    }
+}
@@ -1,29 +1,41 @@
 package com.stalwart.customer.service;
 
 import com.stalwart.customer.AbstractFirstTest;
+import com.stalwart.customer.mapper.CustomerCredentialsRowMapper;
 import com.stalwart.customer.mapper.CustomerRowMapper;
 import com.stalwart.customer.model.Customer;
+import com.stalwart.customer.model.CustomerDTO;
 import com.stalwart.customer.model.Gender;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
 
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 
 class CustomerDataAccessServiceTest extends AbstractFirstTest {
 
     private CustomerDataAccessService customerDataAccessService;
     private final CustomerRowMapper customerRowMapper = new CustomerRowMapper();
+    private final CustomerCredentialsRowMapper customerCredentialsRowMapper = new CustomerCredentialsRowMapper();
 
 
     @BeforeEach
     void setUp(){
         customerDataAccessService = new CustomerDataAccessService(
                 getJDBCTemplate(),
-                customerRowMapper
+                customerRowMapper,
+                customerCredentialsRowMapper
         );
     }
 
@@ -40,6 +52,25 @@ class CustomerDataAccessServiceTest extends AbstractFirstTest {
         assertThat(expectedCustomers).isNotEmpty();
     }
 
+    @Test
+    void getCustomersAfterId() {
+        for (int i = 0; i < 3; i++) {
+            customerDataAccessService.addCustomer(new Customer(
+                    faker.name().fullName(),
+                    faker.internet().safeEmailAddress() + "." + UUID.randomUUID(),
+                    "password", 22, Gender.MALE
+            ));
+        }
+
+        List<Customer> firstPage = customerDataAccessService.getCustomersAfterId(0, 2);
+        assertThat(firstPage).hasSize(2);
+        assertThat(firstPage.get(0).getId()).isLessThan(firstPage.get(1).getId());
+
+        int lastId = firstPage.get(1).getId();
+        List<Customer> nextPage = customerDataAccessService.getCustomersAfterId(lastId, 2);
+        assertThat(nextPage).isNotEmpty().allSatisfy(c -> assertThat(c.getId()).isGreaterThan(lastId));
+    }
+
     @Test
     void getCustomerById() {
         String email = faker.internet().safeEmailAddress() + "." + UUID.randomUUID();
@@ -68,6 +99,71 @@ class CustomerDataAccessServiceTest extends AbstractFirstTest {
         });
     }
 
+    @Test
+    void getCustomerDTOById() {
+        String email = faker.internet().safeEmailAddress() + "." + UUID.randomUUID();
+        Customer customer = new Customer(
+                faker.name().fullName(),
+                email,
+                "password", 22,Gender.FEMALE
+                );
+
+        customerDataAccessService.addCustomer(customer);
+
+        Optional<CustomerDTO> selectedCustomer = customerDataAccessService.getCustomerDTOById(customer.getId());
+
+        assertThat(selectedCustomer).isPresent().hasValueSatisfying(c -> {
+           assertThat(c.getId()).isEqualTo(customer.getId());
+           assertThat(c.getName()).isEqualTo(customer.getName());
+           assertThat(c.getEmail()).isEqualTo(email);
+           assertThat(c.getUsername()).isEqualTo(email);
+           assertThat(c.getGender()).isEqualTo(Gender.FEMALE);
+           assertThat(c.getAge()).isEqualTo(customer.getAge());
+           assertThat(c.getRoles()).containsExactly("ROLE_USER");
+           assertThat(c.getVersion()).isZero();
+        });
+    }
+
+    @Test
+    void getCustomerCredentialsByEmail() {
+        String email = faker.internet().safeEmailAddress() + "." + UUID.randomUUID();
+        Customer customer = new Customer(
+                faker.name().fullName(),
+                email,
+                "password", 22,Gender.MALE
+                );
+
+        customerDataAccessService.addCustomer(customer);
+
+        Optional<Customer> credentials = customerDataAccessService.getCustomerCredentialsByEmail(email);
+
+        assertThat(credentials).isPresent().hasValueSatisfying(c -> {
+           assertThat(c.getId()).isEqualTo(customer.getId());
+           assertThat(c.getUsername()).isEqualTo(email);
+           assertThat(c.getPassword()).isEqualTo("password");
+           assertThat(c.getName()).isNull();
+        });
+    }
+
+    @Test
+    void updatePasswordOnlyReplacesTheExpectedHash() {
+        String email = faker.internet().safeEmailAddress() + "." + UUID.randomUUID();
+        Customer customer = new Customer(
+                faker.name().fullName(),
+                email,
+                "old", 22,Gender.MALE
+                );
+        customerDataAccessService.addCustomer(customer);
+
+        assertThat(customerDataAccessService.updatePassword(customer.getId(), "stale", "new")).isFalse();
+        assertThat(customerDataAccessService.updatePassword(customer.getId(), "old", "new")).isTrue();
+
+        assertThat(customerDataAccessService.getCustomerById(customer.getId())).hasValueSatisfying(c -> {
+            assertThat(c.getPassword()).isEqualTo("new");
+            assertThat(c.getVersion()).isZero();
+        });
+    }
+
     @Test
     void getCustomerWithWrongId(){
         int id = -1 ;
@@ -316,6 +412,31 @@ class CustomerDataAccessServiceTest extends AbstractFirstTest {
         });
     }
 
+    @Test
+    void updateCustomerWithVersion(){
+        String email = faker.internet().safeEmailAddress() + "." + UUID.randomUUID();
+        Customer customer = new Customer(
+                faker.name().fullName(),
+                email,
+                "password", 22,Gender.MALE
+                );
+        customerDataAccessService.addCustomer(customer);
+
+        Customer changes = new Customer();
+        changes.setId(customer.getId());
+        changes.setAge(40);
+
+        Optional<Customer> updated = customerDataAccessService.updateCustomer(changes, 0);
+        assertThat(updated).isPresent().hasValueSatisfying(c -> {
+            assertThat(c.getAge()).isEqualTo(40);
+            assertThat(c.getName()).isEqualTo(customer.getName());
+            assertThat(c.getVersion()).isEqualTo(1);
+        });
+
+        Optional<Customer> stale = customerDataAccessService.updateCustomer(changes, 0);
+        assertThat(stale).isEmpty();
+    }
+
     @Test
     void existsWithEmail() {
 
@@ -362,6 +483,192 @@ class CustomerDataAccessServiceTest extends AbstractFirstTest {
 
     }
 
+    @Test
+    void addCustomerIsSingleStatement() {
+        AtomicInteger statements = new AtomicInteger();
+        CustomerDataAccessService underTest = countingDataAccessService(statements);
+        String email = faker.internet().safeEmailAddress() + "." + UUID.randomUUID();
+        Customer customer = new Customer(faker.name().fullName(), email, "password", 22, Gender.MALE);
+
+        assertThat(underTest.addCustomer(customer)).isTrue();
+        assertThat(customer.getId()).isPositive();
+        assertThat(statements).hasValue(1);
+
+        Customer duplicate = new Customer(faker.name().fullName(), email, "password", 22, Gender.MALE);
+        assertThat(underTest.addCustomer(duplicate)).isFalse();
+        assertThat(statements).hasValue(2);
+    }
+
+    @Test
+    void deleteIsSingleStatement() {
+        String email = faker.internet().safeEmailAddress() + "." + UUID.randomUUID();
+        Customer customer = new Customer(faker.name().fullName(), email, "password", 22, Gender.MALE);
+        customerDataAccessService.addCustomer(customer);
+
+        AtomicInteger statements = new AtomicInteger();
+        CustomerDataAccessService underTest = countingDataAccessService(statements);
+
+        assertThat(underTest.deleteCustomerByEmail(email)).contains(customer.getId());
+        assertThat(statements).hasValue(1);
+        assertThat(underTest.deleteCustomerByEmail(email)).isEmpty();
+        assertThat(underTest.deleteCustomerById(customer.getId())).isFalse();
+        assertThat(statements).hasValue(3);
+    }
+
+    @Test
+    void addCustomersInsertsTheBatchWithOneStatement() {
+        AtomicInteger statements = new AtomicInteger();
+        CustomerDataAccessService underTest = countingDataAccessService(statements);
+        List<Customer> customers = List.of(
+                new Customer(faker.name().fullName(), newEmail(), "password", 22, Gender.MALE),
+                new Customer(faker.name().fullName(), newEmail(), "secret", 31, Gender.FEMALE),
+                new Customer(faker.name().fullName(), newEmail(), "other", 45, Gender.OTHER));
+
+        boolean[] inserted = underTest.addCustomers(customers);
+
+        assertThat(inserted).containsExactly(true, true, true);
+        assertThat(statements).hasValue(1);
+        assertThat(customers).extracting(Customer::getId).doesNotHaveDuplicates().allSatisfy(id -> assertThat(id).isPositive());
+        for (Customer customer : customers) {
+            assertThat(customerDataAccessService.getCustomerById(customer.getId())).hasValueSatisfying(c -> {
+                assertThat(c.getName()).isEqualTo(customer.getName());
+                assertThat(c.getEmail()).isEqualTo(customer.getEmail());
+                assertThat(c.getAge()).isEqualTo(customer.getAge());
+                assertThat(c.getGender()).isEqualTo(customer.getGender());
+                assertThat(c.getPassword()).isEqualTo(customer.getPassword());
+            });
+        }
+    }
+
+    @Test
+    void addCustomersSkipsTakenAndRepeatedEmails() {
+        Customer existing = new Customer(faker.name().fullName(), newEmail(), "password", 22, Gender.MALE);
+        customerDataAccessService.addCustomer(existing);
+        String email = newEmail();
+        Customer first = new Customer("first", email, "password", 22, Gender.MALE);
+        Customer taken = new Customer("taken", existing.getEmail(), "password", 22, Gender.MALE);
+        Customer repeated = new Customer("repeated", email, "password", 22, Gender.MALE);
+        Customer other = new Customer("other", newEmail(), "password", 22, Gender.MALE);
+
+        boolean[] inserted = customerDataAccessService.addCustomers(List.of(first, taken, repeated, other));
+
+        assertThat(inserted).containsExactly(true, false, false, true);
+        assertThat(first.getId()).isPositive();
+        assertThat(taken.getId()).isZero();
+        assertThat(repeated.getId()).isZero();
+        assertThat(other.getId()).isPositive();
+        assertThat(customerDataAccessService.getCustomerByEmail(email))
+                .hasValueSatisfying(c -> assertThat(c.getName()).isEqualTo("first"));
+        assertThat(customerDataAccessService.getCustomerById(existing.getId()))
+                .hasValueSatisfying(c -> assertThat(c.getName()).isEqualTo(existing.getName()));
+    }
+
+    @Test
+    void getCustomerDTOsByIdsAndEmails() {
+        Customer first = new Customer(faker.name().fullName(), newEmail(), "password", 22, Gender.MALE);
+        Customer second = new Customer(faker.name().fullName(), newEmail(), "password", 30, Gender.FEMALE);
+        customerDataAccessService.addCustomers(List.of(first, second));
+
+        assertThat(customerDataAccessService.getCustomerDTOsByIds(List.of(first.getId(), second.getId(), -1)))
+                .extracting(CustomerDTO::getId, CustomerDTO::getEmail)
+                .containsExactlyInAnyOrder(tuple(first.getId(), first.getEmail()), tuple(second.getId(), second.getEmail()));
+        assertThat(customerDataAccessService.getCustomerDTOsByEmails(List.of(second.getEmail(), newEmail())))
+                .singleElement()
+                .satisfies(c -> {
+                    assertThat(c.getId()).isEqualTo(second.getId());
+                    assertThat(c.getGender()).isEqualTo(Gender.FEMALE);
+                    assertThat(c.getAge()).isEqualTo(30);
+                });
+        assertThat(customerDataAccessService.getCustomerDTOsByIds(List.of())).isEmpty();
+        assertThat(customerDataAccessService.getCustomerDTOsByEmails(List.of())).isEmpty();
+    }
+
+    @Test
+    void existingEmails() {
+        Customer customer = new Customer(faker.name().fullName(), newEmail(), "password", 22, Gender.MALE);
+        customerDataAccessService.addCustomer(customer);
+        String unknown = newEmail();
+
+        assertThat(customerDataAccessService.existingEmails(List.of(customer.getEmail(), unknown)))
+                .containsExactly(customer.getEmail());
+        assertThat(customerDataAccessService.existingEmails(List.of())).isEmpty();
+    }
+
+    @Test
+    void updateCustomersOnlyChangesTheGivenFields() {
+        Customer first = new Customer("first", newEmail(), "password", 22, Gender.MALE);
+        Customer second = new Customer("second", newEmail(), "password", 30, Gender.FEMALE);
+        customerDataAccessService.addCustomers(List.of(first, second));
+        Customer rename = new Customer();
+        rename.setId(first.getId());
+        rename.setName("renamed");
+        Customer age = new Customer();
+        age.setId(second.getId());
+        age.setAge(31);
+        Customer missing = new Customer();
+        missing.setId(-1);
+        missing.setName("missing");
+
+        boolean[] applied = customerDataAccessService.updateCustomers(List.of(rename, age, missing));
+
+        assertThat(applied).containsExactly(true, true, false);
+        assertThat(customerDataAccessService.getCustomerById(first.getId())).hasValueSatisfying(c -> {
+            assertThat(c.getName()).isEqualTo("renamed");
+            assertThat(c.getEmail()).isEqualTo(first.getEmail());
+            assertThat(c.getAge()).isEqualTo(22);
+            assertThat(c.getVersion()).isEqualTo(1);
+        });
+        assertThat(customerDataAccessService.getCustomerById(second.getId())).hasValueSatisfying(c -> {
+            assertThat(c.getName()).isEqualTo("second");
+            assertThat(c.getAge()).isEqualTo(31);
+        });
+    }
+
+    @Test
+    void deleteCustomersById() {
+        Customer customer = new Customer(faker.name().fullName(), newEmail(), "password", 22, Gender.MALE);
+        customerDataAccessService.addCustomer(customer);
+
+        boolean[] deleted = customerDataAccessService.deleteCustomersById(List.of(customer.getId(), -1));
+
+        assertThat(deleted).containsExactly(true, false);
+        assertThat(customerDataAccessService.existsCustomerWithId(customer.getId())).isFalse();
+    }
+
+    private static String newEmail() {
+        return faker.internet().safeEmailAddress() + "." + UUID.randomUUID();
+    }
+
+    private CustomerDataAccessService countingDataAccessService(AtomicInteger statements) {
+        DataSource dataSource = getJDBCTemplate().getDataSource();
+        DataSource counting = (DataSource) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[]{DataSource.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(dataSource, method, args);
+                    if (!method.getName().equals("getConnection"))
+                        return result;
+                    Connection connection = (Connection) result;
+                    return Proxy.newProxyInstance(
+                            getClass().getClassLoader(),
+                            new Class<?>[]{Connection.class},
+                            (connectionProxy, connectionMethod, connectionArgs) -> {
+                                if (connectionMethod.getName().matches("prepareStatement|createStatement|prepareCall"))
+                                    statements.incrementAndGet();
+                                return invoke(connection, connectionMethod, connectionArgs);
+                            });
+                });
+        return new CustomerDataAccessService(new JdbcTemplate(counting), customerRowMapper, customerCredentialsRowMapper);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
     @Test
     void existsCustomerWithWrongId(){
         int id = -1;
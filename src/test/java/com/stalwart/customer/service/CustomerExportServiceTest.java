@@ -0,0 +1,138 @@
+package com.stalwart.customer.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stalwart.customer.AbstractFirstTest;
+import com.stalwart.customer.controller.CustomerController;
+import com.stalwart.customer.jwt.JWTUtil;
+import com.stalwart.customer.mapper.CustomerCredentialsRowMapper;
+import com.stalwart.customer.mapper.CustomerRowMapper;
+import com.stalwart.customer.model.Customer;
+import com.stalwart.customer.model.DataFormat;
+import com.stalwart.customer.model.Gender;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class CustomerExportServiceTest extends AbstractFirstTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private CustomerExportService underTest;
+    private Customer customer;
+
+    @BeforeEach
+    void setUp() {
+        JdbcTemplate jdbcTemplate = getJDBCTemplate();
+        // a small fetch size so the NDJSON cursor has to fetch more than once
+        underTest = new CustomerExportService(jdbcTemplate.getDataSource(), objectMapper, 2);
+
+        CustomerDataAccessService customerDao = new CustomerDataAccessService(
+                jdbcTemplate, new CustomerRowMapper(), new CustomerCredentialsRowMapper());
+        for (int i = 0; i < 3; i++)
+            customerDao.addCustomer(newCustomer("Export " + i));
+        // a name that needs quoting in CSV
+        customer = newCustomer("Doe, \"Jane\"");
+        customerDao.addCustomer(customer);
+    }
+
+    @Test
+    void exportsCsvWithHeader() throws IOException {
+        List<String> lines = lines(export(DataFormat.CSV, false));
+
+        assertThat(lines.get(0)).isEqualTo("id,name,email,gender,age");
+        assertThat(lines).contains("%d,\"Doe, \"\"Jane\"\"\",%s,FEMALE,31".formatted(customer.getId(), customer.getEmail()));
+    }
+
+    @Test
+    void exportsNdjson() throws IOException {
+        List<String> lines = lines(export(DataFormat.NDJSON, false));
+
+        assertThat(lines.size()).isGreaterThanOrEqualTo(4);
+        JsonNode exported = null;
+        for (String line : lines) {
+            JsonNode node = objectMapper.readTree(line);
+            if (node.get("id").asInt() == customer.getId())
+                exported = node;
+        }
+        assertThat(exported).isNotNull();
+        assertThat(exported.get("name").asText()).isEqualTo("Doe, \"Jane\"");
+        assertThat(exported.get("email").asText()).isEqualTo(customer.getEmail());
+        assertThat(exported.get("gender").asText()).isEqualTo("FEMALE");
+        assertThat(exported.get("age").asInt()).isEqualTo(31);
+        assertThat(exported.has("password")).isFalse();
+    }
+
+    @Test
+    void gzipWrapsTheSameContent() throws IOException {
+        for (DataFormat format : DataFormat.values()) {
+            byte[] gzipped = export(format, true);
+
+            assertThat(gunzip(gzipped)).isEqualTo(export(format, false));
+        }
+    }
+
+    @Test
+    void exportEndpointSetsHeadersAndEncoding() throws Exception {
+        CustomerController controller = new CustomerController(
+                mock(CustomerService.class),
+                mock(JWTUtil.class),
+                underTest,
+                mock(CustomerImportService.class),
+                mock(CustomerBatchService.class));
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+
+        MvcResult started = mockMvc.perform(get("/api/customer/export")
+                        .param("format", "ndjson")
+                        .param("gzip", "true"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MvcResult result = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "application/x-ndjson"))
+                .andExpect(header().string("Content-Encoding", "gzip"))
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"customers.ndjson\""))
+                .andReturn();
+
+        String body = new String(gunzip(result.getResponse().getContentAsByteArray()), StandardCharsets.UTF_8);
+        assertThat(body).contains("\"email\":\"" + customer.getEmail() + "\"");
+    }
+
+    private byte[] export(DataFormat format, boolean gzip) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        underTest.export(format, gzip, out);
+        return out.toByteArray();
+    }
+
+    private static List<String> lines(byte[] content) {
+        return new String(content, StandardCharsets.UTF_8).lines().toList();
+    }
+
+    private static byte[] gunzip(byte[] content) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(content))) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static Customer newCustomer(String name) {
+        return new Customer(name, faker.internet().safeEmailAddress() + "." + UUID.randomUUID(), "password", 31, Gender.FEMALE);
+    }
+}
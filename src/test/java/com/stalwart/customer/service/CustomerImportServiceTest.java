@@ -0,0 +1,125 @@
+package com.stalwart.customer.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.stalwart.customer.AbstractFirstTest;
+import com.stalwart.customer.mapper.CustomerCredentialsRowMapper;
+import com.stalwart.customer.mapper.CustomerRowMapper;
+import com.stalwart.customer.model.Customer;
+import com.stalwart.customer.model.CustomerImportReject;
+import com.stalwart.customer.model.CustomerImportResult;
+import com.stalwart.customer.model.DataFormat;
+import com.stalwart.customer.model.Gender;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class CustomerImportServiceTest extends AbstractFirstTest {
+
+    @Mock
+    private EmailBloomFilter emailBloomFilter;
+    private CustomerDataAccessService customerDao;
+    private CustomerImportService underTest;
+
+    @BeforeEach
+    void setUp() {
+        JdbcTemplate jdbcTemplate = getJDBCTemplate();
+        customerDao = new CustomerDataAccessService(
+                jdbcTemplate, new CustomerRowMapper(), new CustomerCredentialsRowMapper());
+        // batches of two so a file spans several batches
+        underTest = new CustomerImportService(jdbcTemplate.getDataSource(), new BCryptPasswordEncoder(4),
+                emailBloomFilter, new ObjectMapper(), 2, 2, 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        underTest.shutdown();
+    }
+
+    @Test
+    void importsQuotedCsvFields() throws IOException {
+        String email = email();
+        String csv = "name,email,age,gender,password\n" +
+                "\"Doe, \"\"Jane\"\"\nJr\"," + email + ",31,female,secret\n";
+
+        CustomerImportResult result = underTest.importCustomers(DataFormat.CSV, false, body(csv));
+
+        assertThat(result.received()).isEqualTo(1);
+        assertThat(result.imported()).isEqualTo(1);
+        Customer imported = customerDao.getCustomerByEmail(email).orElseThrow();
+        assertThat(imported.getName()).isEqualTo("Doe, \"Jane\"\nJr");
+        assertThat(imported.getGender()).isEqualTo(Gender.FEMALE);
+        assertThat(new BCryptPasswordEncoder().matches("secret", imported.getPassword())).isTrue();
+        verify(emailBloomFilter).put(email);
+    }
+
+    @Test
+    void countsConflictsAndRejectsPerRow() throws IOException {
+        String existing = email();
+        customerDao.addCustomer(new Customer("existing", existing, "password", 40, Gender.MALE));
+        String first = email();
+        String second = email();
+        String csv = "name,email,age,gender,password\n" +
+                "one," + first + ",20,male,password\n" +
+                "taken," + existing + ",21,male,password\n" +
+                "again," + first + ",22,male,password\n" +
+                "bad," + email() + ",abc,male,password\n" +
+                "two," + second + ",23,other,password\n";
+
+        CustomerImportResult result = underTest.importCustomers(DataFormat.CSV, false, body(csv));
+
+        assertThat(result.received()).isEqualTo(5);
+        assertThat(result.imported()).isEqualTo(2);
+        assertThat(result.rejected()).isEqualTo(3);
+        assertThat(result.rejects())
+                .extracting(CustomerImportReject::line, CustomerImportReject::reason)
+                .containsExactlyInAnyOrder(
+                        tuple(3L, "Given email %s already exists".formatted(existing)),
+                        tuple(4L, "Given email %s already exists".formatted(first)),
+                        tuple(5L, "Invalid age or gender"));
+        assertThat(customerDao.existsWithEmail(second)).isTrue();
+    }
+
+    @Test
+    void importsGzippedNdjson() throws IOException {
+        String email = email();
+        String ndjson = "{\"name\":\"json\",\"email\":\"" + email + "\",\"age\":30,\"gender\":\"OTHER\",\"password\":\"password\"}\n" +
+                "not json\n";
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+            out.write(ndjson.getBytes(StandardCharsets.UTF_8));
+        }
+
+        CustomerImportResult result = underTest.importCustomers(
+                DataFormat.NDJSON, true, new ByteArrayInputStream(gzipped.toByteArray()));
+
+        assertThat(result.imported()).isEqualTo(1);
+        assertThat(result.rejects()).extracting(CustomerImportReject::reason).containsExactly("Malformed JSON");
+        assertThat(customerDao.existsWithEmail(email)).isTrue();
+    }
+
+    private static InputStream body(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String email() {
+        return faker.internet().safeEmailAddress() + "." + UUID.randomUUID();
+    }
+}
@@ -1,13 +1,18 @@
 package com.stalwart.customer.service;
 
 import com.stalwart.customer.dao.CustomerDao;
+import com.stalwart.customer.exceptions.CustomerVersionConflictException;
+import com.stalwart.customer.exceptions.InvalidRequestException;
 import com.stalwart.customer.exceptions.UserAlreadyExistsException;
 import com.stalwart.customer.exceptions.UserNotFoundException;
 import com.stalwart.customer.exceptions.UserNotValidException;
 import com.stalwart.customer.mapper.CustomerDTOMapper;
 import com.stalwart.customer.model.Customer;
 import com.stalwart.customer.model.CustomerDTO;
+import com.stalwart.customer.model.CustomerLookup;
+import com.stalwart.customer.model.CustomerPage;
 import com.stalwart.customer.model.CustomerRegistrationRequest;
+import com.stalwart.customer.model.CustomerUpdateRequest;
 import com.stalwart.customer.model.Gender;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -17,9 +22,15 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -37,7 +48,7 @@ class CustomerServiceTest {
     private CustomerDTOMapper customerDTOMapper = new CustomerDTOMapper();
     @BeforeEach
     void setUp() {
-        underTest = new CustomerService(customerDao, passwordEncoder, customerDTOMapper);
+        underTest = new CustomerService(customerDao, passwordEncoder, customerDTOMapper, (RegistrationGroupCommit) null);
     }
 
     @AfterEach
@@ -48,14 +59,88 @@ class CustomerServiceTest {
     @Test
     void getAllCustomers() {
         underTest.getAllCustomers();
-        verify(customerDao).getAllCustomers();
+        verify(customerDao).getAllCustomerDTOs();
+    }
+
+    @Test
+    void getCustomersPage() {
+        List<CustomerDTO> customers = Stream.of(
+                new Customer(1, "one", "one@email", "password", 22, Gender.MALE),
+                new Customer(2, "two", "two@email", "password", 23, Gender.FEMALE),
+                new Customer(3, "three", "three@email", "password", 24, Gender.OTHER)
+        ).map(customerDTOMapper).toList();
+        when(customerDao.getCustomerDTOsAfterId(0, 3)).thenReturn(customers);
+
+        CustomerPage firstPage = underTest.getCustomersPage(null, 2);
+
+        assertThat(firstPage.customers()).extracting(CustomerDTO::getId).containsExactly(1, 2);
+        assertThat(firstPage.nextCursor()).isNotNull();
+
+        when(customerDao.getCustomerDTOsAfterId(2, 3)).thenReturn(customers.subList(2, 3));
+
+        CustomerPage secondPage = underTest.getCustomersPage(firstPage.nextCursor(), 2);
+
+        assertThat(secondPage.customers()).extracting(CustomerDTO::getId).containsExactly(3);
+        assertThat(secondPage.nextCursor()).isNull();
+    }
+
+    @Test
+    void willThrowForInvalidCursor() {
+        assertThatThrownBy(() -> underTest.getCustomersPage("not-a-cursor", 10))
+                .isInstanceOf(InvalidRequestException.class)
+                .hasMessage("Invalid cursor not-a-cursor");
+        verify(customerDao, never()).getCustomerDTOsAfterId(anyInt(), anyInt());
+    }
+
+    @Test
+    void willThrowForInvalidPageSize() {
+        assertThatThrownBy(() -> underTest.getCustomersPage(null, CustomerService.MAX_PAGE_SIZE + 1))
+                .isInstanceOf(InvalidRequestException.class)
+                .hasMessage("limit should be between 1 and %s".formatted(CustomerService.MAX_PAGE_SIZE));
+    }
+
+    @Test
+    void getCustomersByIdsKeepsRequestOrder() {
+        List<CustomerDTO> customers = Stream.of(
+                new Customer(1, "one", "one@email", "password", 22, Gender.MALE),
+                new Customer(3, "three", "three@email", "password", 24, Gender.OTHER)
+        ).map(customerDTOMapper).toList();
+        when(customerDao.getCustomerDTOsByIds(Set.of(3, 2, 1))).thenReturn(customers);
+
+        List<CustomerLookup<Integer>> result = underTest.getCustomersByIds(List.of(3, 2, 1, 3));
+
+        assertThat(result).extracting(CustomerLookup::key).containsExactly(3, 2, 1, 3);
+        assertThat(result).extracting(CustomerLookup::found).containsExactly(true, false, true, true);
+        assertThat(result.get(0).customer()).isEqualTo(customers.get(1));
+        assertThat(result.get(1).customer()).isNull();
+        verify(customerDao, times(1)).getCustomerDTOsByIds(any());
+    }
+
+    @Test
+    void existsWithEmailsUsesOneQuery() {
+        when(customerDao.existingEmails(Set.of("a@email", "b@email"))).thenReturn(Set.of("b@email"));
+
+        Map<String, Boolean> result = underTest.existsWithEmails(List.of("b@email", "a@email"));
+
+        assertThat(result).containsExactly(Map.entry("b@email", true), Map.entry("a@email", false));
+        verify(customerDao, never()).existsWithEmail(anyString());
+    }
+
+    @Test
+    void willThrowForTooLargeBatch() {
+        List<Integer> ids = Collections.nCopies(CustomerService.MAX_BATCH_SIZE + 1, 1);
+
+        assertThatThrownBy(() -> underTest.getCustomersByIds(ids))
+                .isInstanceOf(InvalidRequestException.class)
+                .hasMessage("at most %s keys can be looked up at once".formatted(CustomerService.MAX_BATCH_SIZE));
+        verifyNoInteractions(customerDao);
     }
 
     @Test
     void addCustomer() {
         String email = "email.com";
 
-        when(customerDao.existsWithEmail(email)).thenReturn(false);
+        when(customerDao.addCustomer(any())).thenReturn(true);
         CustomerRegistrationRequest customer = new CustomerRegistrationRequest(
                 "name",
                 email,
@@ -80,6 +165,7 @@ class CustomerServiceTest {
         assertThat(capturedCustomer.getAge()).isEqualTo(customer.getAge());
         assertThat(capturedCustomer.getPassword()).isEqualTo(passwordHash);
         assertThat(capturedCustomer.getGender()).isEqualTo(customer.getGender());
+        verifyNoMoreInteractions(customerDao);
 
     }
 
@@ -87,7 +173,7 @@ class CustomerServiceTest {
     void willThrowEmailExists() {
         String email = "email.com";
 
-        when(customerDao.existsWithEmail(email)).thenReturn(true);
+        when(customerDao.addCustomer(any())).thenReturn(false);
         CustomerRegistrationRequest customer = new CustomerRegistrationRequest(
                 "name",
                 email,
@@ -99,7 +185,7 @@ class CustomerServiceTest {
         assertThatThrownBy(()->underTest.addCustomer(customer))
                 .isInstanceOf(UserAlreadyExistsException.class)
                 .hasMessage("Given email %s already exists".formatted(email));
-        verify(customerDao, never()).addCustomer(any());
+        verify(customerDao, never()).existsWithEmail(any());
     }
 
     @Test
@@ -147,9 +233,9 @@ class CustomerServiceTest {
                 22,
                 Gender.MALE);
 
-        Mockito.when(customerDao.getCustomerById(id)).thenReturn(Optional.of(customer));
-
         CustomerDTO expected = customerDTOMapper.apply(customer);
+        Mockito.when(customerDao.getCustomerDTOById(id)).thenReturn(Optional.of(expected));
+
         CustomerDTO actual = underTest.getCustomerById(id);
 
         assertThat(actual).isEqualTo(expected);
@@ -160,7 +246,7 @@ class CustomerServiceTest {
 
         int id = 1;
 
-        Mockito.when(customerDao.getCustomerById(id)).thenReturn(Optional.empty());
+        Mockito.when(customerDao.getCustomerDTOById(id)).thenReturn(Optional.empty());
 
         assertThatThrownBy(()->underTest.getCustomerById(id))
                 .isInstanceOf(UserNotFoundException.class)
@@ -171,10 +257,11 @@ class CustomerServiceTest {
     void deleteCustomerById() {
         int id = 1;
 
-        when(customerDao.existsCustomerWithId(id)).thenReturn(true);
+        when(customerDao.deleteCustomerById(id)).thenReturn(true);
 
         underTest.deleteCustomerById(id);
         verify(customerDao).deleteCustomerById(id);
+        verifyNoMoreInteractions(customerDao);
 
     }
 
@@ -182,12 +269,12 @@ class CustomerServiceTest {
     void willThrowWhenUserNotExists(){
 
         int id = 1;
-        when(customerDao.existsCustomerWithId(id)).thenReturn(false);
+        when(customerDao.deleteCustomerById(id)).thenReturn(false);
 
         assertThatThrownBy(()->underTest.deleteCustomerById(id))
                 .isInstanceOf(UserNotFoundException.class)
                 .hasMessage("user not found with id %s".formatted(id));
-        verify(customerDao, never()).deleteCustomerById(id);
+        verify(customerDao, never()).existsCustomerWithId(id);
 
     }
 
@@ -203,10 +290,10 @@ class CustomerServiceTest {
                 22,
                 Gender.MALE);
 
-        Mockito.when(customerDao.getCustomerByEmail(email)).thenReturn(Optional.of(customer));
+        CustomerDTO expected = customerDTOMapper.apply(customer);
+        Mockito.when(customerDao.getCustomerDTOByEmail(email)).thenReturn(Optional.of(expected));
 
         CustomerDTO actual = underTest.getCustomerByEmail(email);
-        CustomerDTO expected = customerDTOMapper.apply(customer);
 
         assertThat(actual).isEqualTo(expected);
     }
@@ -215,7 +302,7 @@ class CustomerServiceTest {
     void willThrowUNFForEmail(){
         String email = "email";
 
-        Mockito.when(customerDao.getCustomerByEmail(email)).thenReturn(Optional.empty());
+        Mockito.when(customerDao.getCustomerDTOByEmail(email)).thenReturn(Optional.empty());
 
         assertThatThrownBy(()->underTest.getCustomerByEmail(email))
                 .isInstanceOf(UserNotFoundException.class)
@@ -226,17 +313,18 @@ class CustomerServiceTest {
     void deleteCustomerWithEmail() {
         String email = "email";
 
-        when(customerDao.existsWithEmail(email)).thenReturn(true);
+        when(customerDao.deleteCustomerByEmail(email)).thenReturn(Optional.of(1));
 
         underTest.deleteCustomerWithEmail(email);
         verify(customerDao).deleteCustomerByEmail(email);
+        verifyNoMoreInteractions(customerDao);
     }
 
     @Test
     void willThrowUNFDeleteCustomerWithEmail() {
         String email = "email";
 
-        when(customerDao.existsWithEmail(email)).thenReturn(false);
+        when(customerDao.deleteCustomerByEmail(email)).thenReturn(Optional.empty());
 
         assertThatThrownBy(()->underTest.deleteCustomerWithEmail(email))
                 .isInstanceOf(UserNotFoundException.class)
@@ -410,4 +498,63 @@ class CustomerServiceTest {
                 .isInstanceOf(UserAlreadyExistsException.class)
                 .hasMessage("Given email %s already exists".formatted(updatedCustomer.getEmail()));
     }
-}
\ No newline at end of file
+
+    @Test
+    void canPatchCustomer() {
+        int id = 1;
+        Customer updated = new Customer(id, "new_name", "emil", "password", 22, Gender.MALE);
+        updated.setVersion(4);
+
+        when(customerDao.updateCustomer(any(Customer.class), eq(3))).thenReturn(Optional.of(updated));
+
+        CustomerDTO actual = underTest.patchCustomer(id, new CustomerUpdateRequest("new_name", null, null, 3));
+
+        ArgumentCaptor<Customer> customerArgumentCaptor = ArgumentCaptor.forClass(Customer.class);
+        verify(customerDao).updateCustomer(customerArgumentCaptor.capture(), eq(3));
+        Customer changes = customerArgumentCaptor.getValue();
+        assertThat(changes.getId()).isEqualTo(id);
+        assertThat(changes.getName()).isEqualTo("new_name");
+        assertThat(changes.getEmail()).isNull();
+        assertThat(changes.getAge()).isEqualTo(0);
+
+        assertThat(actual).isEqualTo(customerDTOMapper.apply(updated));
+        verifyNoMoreInteractions(customerDao);
+    }
+
+    @Test
+    void willThrowConflictForStaleVersion() {
+        int id = 1;
+        Customer current = new Customer(id, "name", "emil", "password", 22, Gender.MALE);
+        current.setVersion(5);
+
+        when(customerDao.updateCustomer(any(Customer.class), eq(3))).thenReturn(Optional.empty());
+        when(customerDao.getCustomerById(id)).thenReturn(Optional.of(current));
+
+        assertThatThrownBy(() -> underTest.patchCustomer(id, new CustomerUpdateRequest(null, null, 30, 3)))
+                .isInstanceOf(CustomerVersionConflictException.class)
+                .hasMessage("customer 1 is at version 5, not 3");
+    }
+
+    @Test
+    void willThrowUNFForPatch() {
+        int id = 1;
+
+        when(customerDao.updateCustomer(any(Customer.class), isNull())).thenReturn(Optional.empty());
+        when(customerDao.getCustomerById(id)).thenReturn(Optional.empty());
+
+        assertThatThrownBy(() -> underTest.patchCustomer(id, new CustomerUpdateRequest("name", null, null, null)))
+                .isInstanceOf(UserNotFoundException.class)
+                .hasMessage("user not found with id %s".formatted(id));
+    }
+
+    @Test
+    void willThrowUAEForPatch() {
+        int id = 1;
+
+        when(customerDao.updateCustomer(any(Customer.class), isNull())).thenThrow(new DuplicateKeyException("duplicate"));
+
+        assertThatThrownBy(() -> underTest.patchCustomer(id, new CustomerUpdateRequest(null, "taken", null, null)))
+                .isInstanceOf(UserAlreadyExistsException.class)
+                .hasMessage("Given email taken already exists");
+    }
+}
@@ -0,0 +1,43 @@
+package com.stalwart.customer.service;
+
+import com.stalwart.customer.dao.CustomerDao;
+import com.stalwart.customer.model.Customer;
+import com.stalwart.customer.model.Gender;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CustomerUserDetailsServiceTest {
+
+    @Mock
+    private CustomerDao customerDao;
+    private CustomerUserDetailsService underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new CustomerUserDetailsService(customerDao);
+    }
+
+    @AfterEach
+    void tearDown() {
+        underTest.shutdown();
+    }
+
+    @Test
+    void updatePasswordWritesInTheBackground() {
+        Customer customer = new Customer(1, "name", "email", "old", 22, Gender.MALE);
+
+        UserDetails updated = underTest.updatePassword(customer, "new");
+
+        assertThat(updated.getPassword()).isEqualTo("new");
+        verify(customerDao, timeout(5000)).updatePassword(1, "old", "new");
+    }
+}
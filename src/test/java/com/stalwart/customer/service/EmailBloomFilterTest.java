@@ -0,0 +1,31 @@
+package com.stalwart.customer.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EmailBloomFilterTest {
+
+    @Test
+    void hasNoFalseNegativesAndBoundedFalsePositives() {
+        int insertions = 10_000;
+        EmailBloomFilter.Bits bits = EmailBloomFilter.Bits.create(insertions, 0.01);
+
+        String[] emails = IntStream.range(0, insertions)
+                .mapToObj(i -> "customer" + i + "@stalwart.com")
+                .toArray(String[]::new);
+        for (String email : emails)
+            bits.put(email);
+
+        for (String email : emails)
+            assertThat(bits.mightContain(email)).isTrue();
+
+        long falsePositives = IntStream.range(0, insertions)
+                .filter(i -> bits.mightContain(UUID.randomUUID() + "@stalwart.com"))
+                .count();
+        assertThat(falsePositives).isLessThan(insertions * 3 / 100);
+    }
+}
@@ -0,0 +1,55 @@
+package com.stalwart.customer.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HmacOTPServiceTest {
+
+    private static final String EMAIL = "stalwart@stalwart.com";
+    private static final String FINGERPRINT = "$2a$10$hash";
+    private static final long NOW = 1_700_000_000_000L;
+
+    private HmacOTPService underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new HmacOTPService(new SimpleMeterRegistry(), "test-secret", Duration.ofSeconds(30), 1, 1000);
+    }
+
+    @Test
+    void acceptsACodeWithinTheWindowOnlyOnce() {
+        String otp = underTest.generate(EMAIL, FINGERPRINT, NOW);
+
+        assertThat(otp).hasSize(6).containsOnlyDigits();
+        assertThat(underTest.verify(EMAIL, FINGERPRINT, otp, NOW + 30_000)).isTrue();
+        assertThat(underTest.verify(EMAIL, FINGERPRINT, otp, NOW + 30_000)).isFalse();
+    }
+
+    @Test
+    void rejectsACodeOutsideTheWindow() {
+        String otp = underTest.generate(EMAIL, FINGERPRINT, NOW);
+
+        assertThat(underTest.verify(EMAIL, FINGERPRINT, otp, NOW + underTest.validity().toMillis())).isFalse();
+    }
+
+    @Test
+    void rejectsACodeAfterThePasswordChanges() {
+        String otp = underTest.generate(EMAIL, FINGERPRINT, NOW);
+
+        assertThat(underTest.verify(EMAIL, "$2a$10$other", otp, NOW)).isFalse();
+    }
+
+    @Test
+    void codesVerifyOnAnyNodeSharingTheSecret() {
+        HmacOTPService otherNode = new HmacOTPService(new SimpleMeterRegistry(), "test-secret", Duration.ofSeconds(30), 1, 1000);
+        String otp = underTest.generate(EMAIL, FINGERPRINT, NOW);
+
+        assertThat(otherNode.verify(EMAIL, FINGERPRINT, otp, NOW)).isTrue();
+        assertThat(underTest.verify("other@stalwart.com", FINGERPRINT, otp, NOW)).isFalse();
+    }
+}
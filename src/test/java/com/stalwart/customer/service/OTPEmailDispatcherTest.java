@@ -0,0 +1,136 @@
+package com.stalwart.customer.service;
+
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import com.stalwart.customer.dao.OutboxDao;
+import com.stalwart.customer.model.OutboxMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Transport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OTPEmailDispatcherTest {
+
+    private final AtomicInteger connections = new AtomicInteger();
+    private GreenMail greenMail;
+    private JavaMailSenderImpl javaMailSender;
+    private InMemoryOutbox outbox;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        greenMail = new GreenMail(ServerSetupTest.SMTP);
+        greenMail.start();
+        javaMailSender = new JavaMailSenderImpl() {
+            @Override
+            protected Transport connectTransport() throws MessagingException {
+                connections.incrementAndGet();
+                return super.connectTransport();
+            }
+        };
+        javaMailSender.setHost("localhost");
+        javaMailSender.setPort(ServerSetupTest.SMTP.getPort());
+        outbox = new InMemoryOutbox();
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        greenMail.stop();
+    }
+
+    @Test
+    void deliversEveryQueuedEmailAndEmptiesTheOutbox() {
+        OTPEmailDispatcher underTest = dispatcher(javaMailSender, 5);
+        int count = 500;
+        for (int i = 0; i < count; i++)
+            outbox.enqueue("customer" + i + "@stalwart.com", "OTP for Password Reset", "Your OTP is: " + i);
+
+        underTest.dispatch();
+        underTest.shutdown();
+
+        assertThat(greenMail.getReceivedMessages()).hasSize(count);
+        assertThat(outbox.messages).isEmpty();
+        assertThat(meterRegistry.get("customer.mail.outbox.sent").counter().count()).isEqualTo(count);
+        // five batches of 100, each split between the two senders
+        assertThat(connections).hasValue(10);
+    }
+
+    @Test
+    void reschedulesFailedEmailsWithBackoffAndDropsThemAfterMaxAttempts() {
+        JavaMailSenderImpl unreachable = new JavaMailSenderImpl();
+        unreachable.setHost("localhost");
+        unreachable.setPort(ServerSetupTest.SMTP.getPort() + 1);
+        OTPEmailDispatcher underTest = dispatcher(unreachable, 2);
+        outbox.enqueue("customer@stalwart.com", "OTP for Password Reset", "Your OTP is: 123456");
+
+        underTest.dispatch();
+
+        assertThat(outbox.messages).hasSize(1);
+        assertThat(outbox.messages.values().iterator().next().attempts()).isEqualTo(1);
+        assertThat(outbox.delays).containsExactly(Duration.ofSeconds(1));
+
+        outbox.makeAllDue();
+        underTest.dispatch();
+        underTest.shutdown();
+
+        assertThat(outbox.messages).isEmpty();
+        assertThat(meterRegistry.get("customer.mail.outbox.failed").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("customer.mail.outbox.dropped").counter().count()).isEqualTo(1);
+    }
+
+    private OTPEmailDispatcher dispatcher(JavaMailSenderImpl sender, int maxAttempts) {
+        return new OTPEmailDispatcher(outbox, sender, meterRegistry,
+                100, 2, maxAttempts, Duration.ofSeconds(1), Duration.ofMinutes(1), "no-reply@stalwart.com");
+    }
+
+    private static class InMemoryOutbox implements OutboxDao {
+
+        private final Map<Long, OutboxMessage> messages = new LinkedHashMap<>();
+        private final Set<Long> leased = new HashSet<>();
+        private final List<Duration> delays = new ArrayList<>();
+        private long nextId = 1;
+
+        @Override
+        public synchronized void enqueue(String recipient, String subject, String body) {
+            long id = nextId++;
+            messages.put(id, new OutboxMessage(id, recipient, subject, body, 0));
+        }
+
+        @Override
+        public synchronized List<OutboxMessage> claim(int limit, Duration lease) {
+            List<OutboxMessage> claimed = messages.values().stream()
+                    .filter(message -> !leased.contains(message.id()))
+                    .limit(limit)
+                    .toList();
+            claimed.forEach(message -> leased.add(message.id()));
+            return claimed;
+        }
+
+        @Override
+        public synchronized void delete(List<Long> ids) {
+            ids.forEach(messages::remove);
+        }
+
+        @Override
+        public synchronized void reschedule(long id, String error, Duration delay) {
+            OutboxMessage message = messages.get(id);
+            messages.put(id, new OutboxMessage(id, message.recipient(), message.subject(), message.body(),
+                    message.attempts() + 1));
+            delays.add(delay);
+        }
+
+        synchronized void makeAllDue() {
+            leased.clear();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.stalwart.customer.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OTPServiceTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void codeIsSingleUse() {
+        OTPService underTest = new OTPService(meterRegistry, Duration.ofMinutes(1), 100);
+        underTest.storeOtp("email", "123456");
+
+        assertThat(underTest.validateOtp("email", "654321", System.currentTimeMillis())).isFalse();
+        assertThat(underTest.validateOtp("email", "123456", System.currentTimeMillis())).isTrue();
+        assertThat(underTest.validateOtp("email", "123456", System.currentTimeMillis())).isFalse();
+    }
+
+    @Test
+    void expiredCodesAreRejectedAndEvicted() throws InterruptedException {
+        OTPService underTest = new OTPService(meterRegistry, Duration.ofMillis(50), 100);
+        underTest.storeOtp("email", "123456");
+
+        assertThat(underTest.validateOtp("email", "123456", System.currentTimeMillis() + 100)).isFalse();
+        Thread.sleep(100);
+        assertThat(underTest.validateOtp("email", "123456", System.currentTimeMillis())).isFalse();
+
+        // the timing wheel evicts in buckets of about a second
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (underTest.size() > 0 && System.nanoTime() < deadline)
+            Thread.sleep(50);
+        assertThat(underTest.size()).isZero();
+    }
+
+    @Test
+    void sizeIsCapped() {
+        OTPService underTest = new OTPService(meterRegistry, Duration.ofMinutes(1), 100);
+
+        for (int i = 0; i < 1_000; i++)
+            underTest.storeOtp("email" + i, "123456");
+
+        assertThat(underTest.size()).isLessThanOrEqualTo(100);
+        assertThat(meterRegistry.get("cache.evictions").tag("cache", "customer.otp")
+                .functionCounter().count()).isGreaterThanOrEqualTo(900);
+    }
+
+    @Test
+    void concurrentSubmissionsConsumeACodeOnce() throws Exception {
+        OTPService underTest = new OTPService(meterRegistry, Duration.ofMinutes(1), 100_000);
+        int threads = 16;
+        int rounds = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int round = 0; round < rounds; round++) {
+                String email = "email" + round;
+                underTest.storeOtp(email, "123456");
+
+                CyclicBarrier start = new CyclicBarrier(threads);
+                AtomicInteger successes = new AtomicInteger();
+                List<Future<?>> submissions = new ArrayList<>();
+                for (int i = 0; i < threads; i++) {
+                    submissions.add(executor.submit(() -> {
+                        start.await();
+                        // other threads keep writing unrelated codes meanwhile
+                        underTest.storeOtp(email + "-" + Thread.currentThread().getId(), "000000");
+                        if (underTest.validateOtp(email, "123456", System.currentTimeMillis()))
+                            successes.incrementAndGet();
+                        return null;
+                    }));
+                }
+                for (Future<?> submission : submissions)
+                    submission.get(10, TimeUnit.SECONDS);
+
+                assertThat(successes.get()).as("successful validations in round %s", round).isEqualTo(1);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
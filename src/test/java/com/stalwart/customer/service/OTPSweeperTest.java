@@ -0,0 +1,30 @@
+package com.stalwart.customer.service;
+
+import com.stalwart.customer.dao.AuthenticationDao;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OTPSweeperTest {
+
+    @Mock
+    private AuthenticationDao authenticationDao;
+
+    @Test
+    void sweepsInBatchesUntilAShortOne() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        OTPSweeper underTest = new OTPSweeper(authenticationDao, meterRegistry, 100, false);
+        when(authenticationDao.deleteExpiredOTPs(100)).thenReturn(100, 100, 7);
+
+        underTest.sweep();
+
+        verify(authenticationDao, times(3)).deleteExpiredOTPs(100);
+        assertThat(meterRegistry.get("customer.otp.swept").counter().count()).isEqualTo(207);
+    }
+}
@@ -0,0 +1,131 @@
+package com.stalwart.customer.service;
+
+import com.stalwart.customer.dao.ReactiveCustomerDao;
+import com.stalwart.customer.exceptions.CustomerVersionConflictException;
+import com.stalwart.customer.exceptions.InvalidRequestException;
+import com.stalwart.customer.exceptions.UserAlreadyExistsException;
+import com.stalwart.customer.exceptions.UserNotFoundException;
+import com.stalwart.customer.model.Customer;
+import com.stalwart.customer.model.CustomerDTO;
+import com.stalwart.customer.model.CustomerPage;
+import com.stalwart.customer.model.CustomerRegistrationRequest;
+import com.stalwart.customer.model.CustomerUpdateRequest;
+import com.stalwart.customer.model.Gender;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReactiveCustomerServiceTest {
+
+    @Mock
+    private ReactiveCustomerDao customerDao;
+    @Mock
+    private PasswordEncoder passwordEncoder;
+    private ReactiveCustomerService underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new ReactiveCustomerService(customerDao, passwordEncoder);
+    }
+
+    @Test
+    void addCustomerStoresTheEncodedPassword() {
+        CustomerRegistrationRequest request = new CustomerRegistrationRequest("name", "email", 20, "password", Gender.MALE);
+        when(passwordEncoder.encode("password")).thenReturn("encoded");
+        when(customerDao.addCustomer(any())).thenReturn(Mono.just(7));
+
+        assertThat(underTest.addCustomer(request).block()).isEqualTo(7);
+
+        ArgumentCaptor<Customer> captor = ArgumentCaptor.forClass(Customer.class);
+        verify(customerDao).addCustomer(captor.capture());
+        assertThat(captor.getValue().getPassword()).isEqualTo("encoded");
+    }
+
+    @Test
+    void addCustomerFailsWhenTheEmailIsTaken() {
+        CustomerRegistrationRequest request = new CustomerRegistrationRequest("name", "email", 20, "password", Gender.MALE);
+        when(customerDao.addCustomer(any())).thenReturn(Mono.empty());
+
+        assertThatThrownBy(() -> underTest.addCustomer(request).block())
+                .isInstanceOf(UserAlreadyExistsException.class);
+    }
+
+    @Test
+    void addCustomerValidatesBeforeHashing() {
+        CustomerRegistrationRequest request = new CustomerRegistrationRequest("name", "email", 0, "password", Gender.MALE);
+
+        assertThatThrownBy(() -> underTest.addCustomer(request).block())
+                .hasMessage("Invalid Age");
+        verifyNoInteractions(passwordEncoder, customerDao);
+    }
+
+    @Test
+    void getCustomerByIdFailsWhenMissing() {
+        when(customerDao.getCustomerDTOById(1)).thenReturn(Mono.empty());
+
+        assertThatThrownBy(() -> underTest.getCustomerById(1).block())
+                .isInstanceOf(UserNotFoundException.class);
+    }
+
+    @Test
+    void deleteCustomerByIdFailsWhenMissing() {
+        when(customerDao.deleteCustomerById(1)).thenReturn(Mono.just(false));
+
+        assertThatThrownBy(() -> underTest.deleteCustomerById(1).block())
+                .isInstanceOf(UserNotFoundException.class);
+    }
+
+    @Test
+    void getCustomersPageReturnsACursorWhenMoreRowsExist() {
+        when(customerDao.getCustomerDTOsAfterId(0, 3)).thenReturn(Flux.just(dto(1), dto(2), dto(3)));
+
+        CustomerPage page = underTest.getCustomersPage(null, 2).block();
+
+        assertThat(page.customers()).extracting(CustomerDTO::getId).containsExactly(1, 2);
+        assertThat(page.nextCursor()).isNotNull();
+    }
+
+    @Test
+    void getCustomersPageRejectsABadLimit() {
+        assertThatThrownBy(() -> underTest.getCustomersPage(null, 0).block())
+                .isInstanceOf(InvalidRequestException.class);
+    }
+
+    @Test
+    void patchCustomerReportsAStaleVersion() {
+        when(customerDao.updateCustomer(any(), eq(1))).thenReturn(Mono.empty());
+        when(customerDao.getCustomerDTOById(5)).thenReturn(Mono.just(dto(5)));
+
+        assertThatThrownBy(() -> underTest.patchCustomer(5, new CustomerUpdateRequest("new", null, null, 1)).block())
+                .isInstanceOf(CustomerVersionConflictException.class)
+                .hasMessageContaining("at version 2");
+    }
+
+    @Test
+    void patchCustomerMapsDuplicateEmails() {
+        when(customerDao.updateCustomer(any(), eq(null))).thenReturn(Mono.error(new DuplicateKeyException("dup")));
+
+        assertThatThrownBy(() -> underTest.patchCustomer(5, new CustomerUpdateRequest(null, "taken", null, null)).block())
+                .isInstanceOf(UserAlreadyExistsException.class);
+    }
+
+    private static CustomerDTO dto(int id) {
+        return new CustomerDTO(id, "name", "email" + id, Gender.MALE, 20, List.of("ROLE_USER"), "email" + id, 2);
+    }
+}
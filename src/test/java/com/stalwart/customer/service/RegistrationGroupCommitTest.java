@@ -0,0 +1,87 @@
+package com.stalwart.customer.service;
+
+import com.stalwart.customer.dao.CustomerDao;
+import com.stalwart.customer.model.Customer;
+import com.stalwart.customer.model.Gender;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RegistrationGroupCommitTest {
+
+    @Mock
+    private CustomerDao customerDao;
+    private final ExecutorService callers = Executors.newFixedThreadPool(3);
+    private RegistrationGroupCommit underTest;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        callers.shutdownNow();
+        underTest.shutdown();
+    }
+
+    @Test
+    void concurrentRegistrationsShareOneInsert() {
+        underTest = new RegistrationGroupCommit(customerDao, new SimpleMeterRegistry(), 3, Duration.ofSeconds(5));
+        when(customerDao.addCustomers(anyList())).thenAnswer(invocation -> {
+            List<Customer> customers = invocation.getArgument(0);
+            boolean[] inserted = new boolean[customers.size()];
+            for (int i = 0; i < customers.size(); i++) {
+                inserted[i] = !customers.get(i).getEmail().equals("taken");
+                customers.get(i).setId(i + 1);
+            }
+            return inserted;
+        });
+
+        CompletableFuture<Boolean> first = add("first");
+        CompletableFuture<Boolean> taken = add("taken");
+        CompletableFuture<Boolean> third = add("third");
+
+        assertThat(first.join()).isTrue();
+        assertThat(taken.join()).isFalse();
+        assertThat(third.join()).isTrue();
+        verify(customerDao, times(1)).addCustomers(anyList());
+    }
+
+    @Test
+    void failedBatchIsRetriedOneByOne() {
+        underTest = new RegistrationGroupCommit(customerDao, new SimpleMeterRegistry(), 2, Duration.ofSeconds(5));
+        when(customerDao.addCustomers(anyList())).thenAnswer(invocation -> {
+            List<Customer> customers = invocation.getArgument(0);
+            if (customers.stream().anyMatch(customer -> customer.getEmail().equals("bad")))
+                throw new DataIntegrityViolationException("bad row");
+            return new boolean[]{true};
+        });
+
+        CompletableFuture<Boolean> bad = add("bad");
+        CompletableFuture<Boolean> good = add("good");
+
+        assertThat(good.join()).isTrue();
+        assertThatThrownBy(bad::join)
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(DataIntegrityViolationException.class);
+        verify(customerDao, times(3)).addCustomers(anyList());
+    }
+
+    private CompletableFuture<Boolean> add(String email) {
+        Customer customer = new Customer("name", email, "password", 22, Gender.MALE);
+        return CompletableFuture.supplyAsync(() -> underTest.add(customer), callers);
+    }
+}